@@ -0,0 +1,83 @@
+package dev.relism.jdae.agent;
+
+import dev.relism.jdae.core.bytecode.RewriteBackend;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Options of the agent, given as {@code -javaagent:jdae-agent.jar=key=value,key=value}.
+ * <ul>
+ *     <li>{@code include}: package prefixes separated by {@code ;}, e.g. {@code com.example;org.acme}; other classes
+ *     are never looked at. By default every class outside the JDK is.</li>
+ *     <li>{@code removeOriginal}: as for the Maven plugin, default {@code true}.</li>
+ *     <li>{@code rewriteBackend}: {@code ASM} (default) or {@code RAW}.</li>
+ *     <li>{@code cacheSize}: number of expanded classes kept in memory, default {@code 4096}.</li>
+ *     <li>{@code stats}: print the time spent in the agent when the JVM exits, default {@code false}.</li>
+ * </ul>
+ */
+final class AgentOptions {
+    /** Internal-name prefixes of classes that are never expanded. */
+    private static final String[] EXCLUDED = {"java/", "javax/", "jdk/", "sun/", "com/sun/", "dev/relism/jdae/"};
+
+    final String[] include;
+    final boolean removeOriginal;
+    final RewriteBackend rewriteBackend;
+    final int cacheSize;
+    final boolean stats;
+
+    private AgentOptions(String[] include, boolean removeOriginal, RewriteBackend rewriteBackend, int cacheSize, boolean stats) {
+        this.include = include;
+        this.removeOriginal = removeOriginal;
+        this.rewriteBackend = rewriteBackend;
+        this.cacheSize = cacheSize;
+        this.stats = stats;
+    }
+
+    static AgentOptions parse(String args) {
+        String[] include = new String[0];
+        boolean removeOriginal = true;
+        RewriteBackend rewriteBackend = RewriteBackend.ASM;
+        int cacheSize = 4096;
+        boolean stats = false;
+        if (args != null && !args.isBlank()) {
+            for (String option : args.split(",")) {
+                int eq = option.indexOf('=');
+                if (eq < 0) {
+                    throw new IllegalArgumentException("Invalid jdae-agent option '" + option + "', expected key=value");
+                }
+                String key = option.substring(0, eq).trim();
+                String value = option.substring(eq + 1).trim();
+                switch (key) {
+                    case "include" -> {
+                        List<String> prefixes = new ArrayList<>();
+                        for (String p : value.split(";")) {
+                            if (!p.isBlank()) prefixes.add(p.trim().replace('.', '/'));
+                        }
+                        include = prefixes.toArray(String[]::new);
+                    }
+                    case "removeOriginal" -> removeOriginal = Boolean.parseBoolean(value);
+                    case "rewriteBackend" -> rewriteBackend = RewriteBackend.valueOf(value);
+                    case "cacheSize" -> cacheSize = Integer.parseInt(value);
+                    case "stats" -> stats = Boolean.parseBoolean(value);
+                    default -> throw new IllegalArgumentException("Unknown jdae-agent option '" + key + "'");
+                }
+            }
+        }
+        return new AgentOptions(include, removeOriginal, rewriteBackend, cacheSize, stats);
+    }
+
+    /**
+     * Whether the class with the given internal name may be expanded.
+     */
+    boolean includes(String internalName) {
+        for (String prefix : EXCLUDED) {
+            if (internalName.startsWith(prefix)) return false;
+        }
+        if (include.length == 0) return true;
+        for (String prefix : include) {
+            if (internalName.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,277 @@
+package dev.relism.jdae.agent;
+
+import dev.relism.jdae.core.bytecode.AnnotationPrefilter;
+import dev.relism.jdae.core.bytecode.BytecodeExpander;
+import dev.relism.jdae.core.bytecode.ClassScanner;
+import dev.relism.jdae.core.bytecode.ExpanderCandidate;
+import dev.relism.jdae.core.expansion.ExpanderRegistry;
+import dev.relism.jdae.core.expansion.ExpansionEngine;
+import dev.relism.jdae.core.incremental.ExpanderFingerprints;
+import dev.relism.jdae.core.incremental.ExpansionStateCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.ClassDefinition;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.lang.ref.SoftReference;
+import java.security.ProtectionDomain;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Expands the annotations of classes as they are loaded. Safe for concurrent class loading.
+ * <p>
+ * Most classes are rejected by name or because their constant pool has no annotation attribute,
+ * before any per-loader state exists. The rest go through the {@link ClassScanner} of their class
+ * loader, whose prefilter rejects classes without expander annotations. Expanded bytes are kept in
+ * memory by hash of the original bytes, so a class loaded again by a new loader, as on hot reload,
+ * is not expanded again while the fingerprints of its expanders are unchanged.
+ * <p>
+ * The JVM does not call a transformer for the classes loaded while it runs, such as those named by the
+ * {@code Class} members of the class being expanded. They are defined as they are, then expanded and redefined
+ * before the expansion that loaded them goes on. The classes being defined on a thread cannot be loaded by
+ * their expanders, which read such members as {@code ClassRef} from a {@code ViewExpander}.
+ */
+final class ExpansionTransformer implements ClassFileTransformer {
+    private final AgentOptions options;
+    /** Null if the JVM cannot redefine classes; classes loaded during an expansion then stay unexpanded. */
+    private final Instrumentation instrumentation;
+    private final ClassLoader platformLoader = ClassLoader.getPlatformClassLoader();
+    /** Guarded by itself. Pipelines are held softly because they reference their loader. */
+    private final Map<ClassLoader, SoftReference<Pipeline>> pipelines = new WeakHashMap<>();
+    private final Map<String, Expansion> expansions = new ConcurrentHashMap<>();
+    /** Binary names of the classes the current thread is expanding, innermost last. */
+    private final ThreadLocal<Deque<String>> defining = ThreadLocal.withInitial(ArrayDeque::new);
+    /** Class loaders whose pipeline the current thread is creating. */
+    private final ThreadLocal<Set<ClassLoader>> creating = ThreadLocal.withInitial(HashSet::new);
+
+    private final LongAdder classes = new LongAdder();
+    private final LongAdder scanned = new LongAdder();
+    private final LongAdder expanded = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+
+    ExpansionTransformer(AgentOptions options, Instrumentation instrumentation) {
+        this.options = options;
+        this.instrumentation = instrumentation.isRedefineClassesSupported() ? instrumentation : null;
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                            ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        long start = System.nanoTime();
+        classes.increment();
+        try {
+            if (loader == null || loader == platformLoader || className == null || classBeingRedefined != null
+                    || !options.includes(className) || !AnnotationPrefilter.hasAnnotations(classfileBuffer)) {
+                return null;
+            }
+            scanned.increment();
+            Pipeline pipeline = pipeline(loader);
+            if (pipeline == null) {
+                return null;
+            }
+            String name = className.replace('/', '.');
+            pipeline.seen.add(name);
+            return expand(pipeline, name, classfileBuffer);
+        } catch (Throwable e) {
+            // an exception thrown here is swallowed by the JVM; report it and load the class unchanged
+            Throwable cause = e.getCause();
+            System.err.println("[jdae-agent] Failed to expand " + className + ": " + e
+                    + (cause != null ? " (" + cause.getMessage() + ")" : ""));
+            return null;
+        } finally {
+            nanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Expands a class loaded while another one is expanded, which the JVM defined without calling the transformer,
+     * and redefines it. Classes already seen by the transformer are left alone.
+     */
+    void expandLoaded(Class<?> cls) {
+        ClassLoader loader = cls.getClassLoader();
+        if (instrumentation == null || loader == null || loader == platformLoader || cls.isArray()
+                || !options.includes(cls.getName().replace('.', '/'))) {
+            return;
+        }
+        Pipeline pipeline = pipeline(loader);
+        if (pipeline == null || !pipeline.seen.add(cls.getName())) {
+            return;
+        }
+        try {
+            byte[] bytes;
+            try (InputStream in = loader.getResourceAsStream(cls.getName().replace('.', '/') + ".class")) {
+                if (in == null) {
+                    return;
+                }
+                bytes = in.readAllBytes();
+            }
+            if (!AnnotationPrefilter.hasAnnotations(bytes) || !instrumentation.isModifiableClass(cls)) {
+                return;
+            }
+            scanned.increment();
+            byte[] output = expand(pipeline, cls.getName(), bytes);
+            if (output != null) {
+                instrumentation.redefineClasses(new ClassDefinition(cls, output));
+            }
+        } catch (IOException | ClassNotFoundException | UnmodifiableClassException | RuntimeException | LinkageError e) {
+            Throwable cause = e.getCause();
+            System.err.println("[jdae-agent] Failed to expand " + cls.getName() + ": " + e
+                    + (cause != null ? " (" + cause.getMessage() + ")" : ""));
+        }
+    }
+
+    private byte[] expand(Pipeline pipeline, String name, byte[] bytes) {
+        Deque<String> names = defining.get();
+        names.addLast(name);
+        Thread thread = Thread.currentThread();
+        ClassLoader contextLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(pipeline.expansionLoader);
+        try {
+            return expand(pipeline, bytes);
+        } finally {
+            thread.setContextClassLoader(contextLoader);
+            names.removeLast();
+        }
+    }
+
+    private byte[] expand(Pipeline pipeline, byte[] bytes) {
+        List<ExpanderCandidate> candidates = pipeline.scanner.scan(bytes);
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        String key = ExpansionStateCache.hash(bytes);
+        Expansion cached = expansions.get(key);
+        if (cached != null && cached.isValid(pipeline.fingerprints)) {
+            cacheHits.increment();
+            return cached.output != null ? cached.output.clone() : null;
+        }
+
+        Map<String, String> fingerprints = new TreeMap<>();
+        for (ExpanderCandidate c : candidates) {
+            fingerprints.computeIfAbsent(c.getAnnotationClassName(), pipeline.fingerprints::of);
+        }
+        byte[] modified = pipeline.engine.expand(bytes, candidates, options.removeOriginal);
+        byte[] output = modified == bytes || Arrays.equals(modified, bytes) ? null : modified;
+        if (expansions.size() < options.cacheSize) {
+            expansions.put(key, new Expansion(output != null ? output.clone() : null, fingerprints));
+        }
+        if (output != null) {
+            expanded.increment();
+        }
+        return output;
+    }
+
+    private Pipeline pipeline(ClassLoader loader) {
+        SoftReference<Pipeline> ref;
+        synchronized (pipelines) {
+            ref = pipelines.get(loader);
+        }
+        Pipeline pipeline = ref != null ? ref.get() : null;
+        if (pipeline != null) {
+            return pipeline;
+        }
+        Set<ClassLoader> loaders = creating.get();
+        if (!loaders.add(loader)) {
+            // a class loaded while this thread discovers the expanders of its loader: there are none to expand it with yet
+            return null;
+        }
+        // built outside the lock: reading the loader's indexes loads classes, and holding the lock meanwhile
+        // could deadlock with a thread that holds a class loading lock and waits for this one
+        Pipeline created;
+        try {
+            created = new Pipeline(loader, this);
+        } finally {
+            loaders.remove(loader);
+        }
+        synchronized (pipelines) {
+            ref = pipelines.get(loader);
+            pipeline = ref != null ? ref.get() : null;
+            if (pipeline == null) {
+                pipelines.put(loader, new SoftReference<>(created));
+                pipeline = created;
+            }
+        }
+        return pipeline;
+    }
+
+    String stats() {
+        return String.format("%d classes seen, %d scanned, %d expanded, %d from cache, %.1f ms in transformer",
+                classes.sum(), scanned.sum(), expanded.sum(), cacheHits.sum(), nanos.sum() / 1_000_000.0);
+    }
+
+    /**
+     * Expansion collaborators for the classes of one class loader.
+     */
+    private static final class Pipeline {
+        final ClassLoader expansionLoader;
+        final ClassScanner scanner;
+        final ExpansionEngine engine;
+        final ExpanderFingerprints fingerprints;
+        /** Binary names of the classes of the loader already looked at, on load or by {@code expandLoaded}. */
+        final Set<String> seen = ConcurrentHashMap.newKeySet();
+
+        Pipeline(ClassLoader loader, ExpansionTransformer transformer) {
+            ExpanderRegistry registry = new ExpanderRegistry(loader);
+            this.expansionLoader = new ExpansionLoader(loader, transformer);
+            this.scanner = new ClassScanner(registry::hasExpander);
+            this.engine = new ExpansionEngine(registry, expansionLoader,
+                    new BytecodeExpander(transformer.options.rewriteBackend));
+            this.fingerprints = new ExpanderFingerprints(loader, registry);
+        }
+    }
+
+    /**
+     * Loader used to resolve annotation members during expansion. It delegates to the loader of the
+     * class being expanded, but refuses the classes being defined on the current thread, that class and
+     * those whose loading led to it: they cannot be loaded before they are defined. The classes it loads
+     * are handed to {@link #expandLoaded}.
+     */
+    private static final class ExpansionLoader extends ClassLoader {
+        static {
+            registerAsParallelCapable();
+        }
+
+        private final ExpansionTransformer transformer;
+
+        ExpansionLoader(ClassLoader parent, ExpansionTransformer transformer) {
+            super(parent);
+            this.transformer = transformer;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (transformer.defining.get().contains(name)) {
+                throw new ClassNotFoundException(name + " is being loaded and cannot be used as a member value;"
+                        + " read it as a ClassRef from a ViewExpander instead");
+            }
+            Class<?> cls = super.loadClass(name, resolve);
+            transformer.expandLoaded(cls);
+            return cls;
+        }
+    }
+
+    /**
+     * Result of expanding one class; {@code output} is null if the class was left unchanged.
+     */
+    private record Expansion(byte[] output, Map<String, String> fingerprints) {
+        boolean isValid(ExpanderFingerprints current) {
+            for (Map.Entry<String, String> e : fingerprints.entrySet()) {
+                if (!e.getValue().equals(current.of(e.getKey()))) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package dev.relism.jdae.agent;
+
+import java.lang.instrument.Instrumentation;
+
+/**
+ * Java agent expanding annotations while classes are loaded, for development loops where running the
+ * Maven plugin after every change is too slow. Start the JVM with
+ * {@code -javaagent:jdae-agent.jar[=options]}; see {@link AgentOptions} for the options.
+ * <p>
+ * When attached to a running JVM, only classes loaded afterwards are expanded.
+ */
+public final class JDAEAgent {
+
+    private JDAEAgent() {
+    }
+
+    public static void premain(String args, Instrumentation instrumentation) {
+        install(args, instrumentation);
+    }
+
+    public static void agentmain(String args, Instrumentation instrumentation) {
+        install(args, instrumentation);
+    }
+
+    private static void install(String args, Instrumentation instrumentation) {
+        AgentOptions options = AgentOptions.parse(args);
+        ExpansionTransformer transformer = new ExpansionTransformer(options, instrumentation);
+        instrumentation.addTransformer(transformer, false);
+        if (options.stats) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.println("[jdae-agent] " + transformer.stats()),
+                    "jdae-agent-stats"));
+        }
+    }
+}
@@ -12,6 +12,44 @@ public interface AnnotationBuilder {
     // Preferred member setter
     AnnotationBuilder member(String name, Object val);
 
+    // Member setters that need no conversion of the value; reference types other than AnnotationValue go
+    // through member(String, Object), so that a null value is not ambiguous
+    default AnnotationBuilder member(String name, AnnotationValue val) {
+        return value(name, (Object) val);
+    }
+
+    default AnnotationBuilder member(String name, boolean val) {
+        return member(name, AnnotationValue.of(val));
+    }
+
+    default AnnotationBuilder member(String name, byte val) {
+        return member(name, AnnotationValue.of(val));
+    }
+
+    default AnnotationBuilder member(String name, char val) {
+        return member(name, AnnotationValue.of(val));
+    }
+
+    default AnnotationBuilder member(String name, short val) {
+        return member(name, AnnotationValue.of(val));
+    }
+
+    default AnnotationBuilder member(String name, int val) {
+        return member(name, AnnotationValue.of(val));
+    }
+
+    default AnnotationBuilder member(String name, long val) {
+        return member(name, AnnotationValue.of(val));
+    }
+
+    default AnnotationBuilder member(String name, float val) {
+        return member(name, AnnotationValue.of(val));
+    }
+
+    default AnnotationBuilder member(String name, double val) {
+        return member(name, AnnotationValue.of(val));
+    }
+
     AnnotationBuilder nested(String name, String annotationClassName, Consumer<AnnotationBuilder> consumer);
     AnnotationBuilder nested(String name, Class<?> annotationClass, Consumer<AnnotationBuilder> consumer);
 
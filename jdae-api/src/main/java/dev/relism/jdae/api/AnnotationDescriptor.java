@@ -1,42 +1,132 @@
 package dev.relism.jdae.api;
 
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
 
 /**
  * A runtime description of an annotation to be injected into bytecode.
+ * <p>
+ * Descriptors are immutable and hold their members as {@link AnnotationValue}s. Two descriptors are equal
+ * if they have the same type and the same members in the same order. {@link Builder#build()} and
+ * {@link #intern()} return one shared instance per distinct descriptor, so equal nested trees built
+ * many times take the memory of one and compare by reference.
  */
 public final class AnnotationDescriptor {
+    private static final Interner INTERNER = new Interner();
+
     private final String annotationClassName;
-    private final Map<String, Object> values;
+    private final Map<String, AnnotationValue> members;
+    private final int hash;
+
+    /**
+     * Converts the values with {@link AnnotationValue#of(Object)}.
+     */
+    public AnnotationDescriptor(String annotationClassName, Map<String, ?> values) {
+        this.annotationClassName = annotationClassName;
+        if (values == null || values.isEmpty()) {
+            this.members = Collections.emptyMap();
+        } else {
+            Map<String, AnnotationValue> copy = new LinkedHashMap<>(values.size() * 2);
+            values.forEach((k, v) -> copy.put(k, AnnotationValue.of(v)));
+            this.members = Collections.unmodifiableMap(copy);
+        }
+        this.hash = hash(annotationClassName, this.members);
+    }
 
-    public AnnotationDescriptor(String annotationClassName, Map<String, Object> values) {
+    // takes the map as is: either an unmodifiable copy, or the builder's members for a lookup only
+    private AnnotationDescriptor(String annotationClassName, Map<String, AnnotationValue> members, int hash) {
         this.annotationClassName = annotationClassName;
-        this.values = values != null ? new LinkedHashMap<>(values) : new LinkedHashMap<>();
+        this.members = members;
+        this.hash = hash;
     }
 
     public String getAnnotationClassName() {
         return annotationClassName;
     }
 
+    /**
+     * Member values in the order they were set.
+     */
+    public Map<String, AnnotationValue> getMembers() {
+        return members;
+    }
+
+    /**
+     * Member values as plain Java objects, see {@link AnnotationValue#toObject()}, in a new map on each call.
+     * Changing the map does not change the descriptor.
+     */
     public Map<String, Object> getValues() {
-        return values;
+        Map<String, Object> out = new LinkedHashMap<>(members.size() * 2);
+        members.forEach((k, v) -> out.put(k, v.toObject()));
+        return out;
+    }
+
+    /**
+     * The shared instance equal to this descriptor.
+     */
+    public AnnotationDescriptor intern() {
+        return INTERNER.intern(this);
     }
 
     public static Builder builder(String annotationClassName) {
         return new Builder(annotationClassName);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof AnnotationDescriptor other) || hash != other.hash
+                || !Objects.equals(annotationClassName, other.annotationClassName)
+                || members.size() != other.members.size()) {
+            return false;
+        }
+        // member order is kept in the class file, so it is part of the identity
+        Iterator<Map.Entry<String, AnnotationValue>> a = members.entrySet().iterator();
+        Iterator<Map.Entry<String, AnnotationValue>> b = other.members.entrySet().iterator();
+        while (a.hasNext()) {
+            Map.Entry<String, AnnotationValue> x = a.next();
+            Map.Entry<String, AnnotationValue> y = b.next();
+            if (!x.getKey().equals(y.getKey()) || !x.getValue().equals(y.getValue())) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "@" + annotationClassName + members;
+    }
+
+    private static int hash(String annotationClassName, Map<String, AnnotationValue> members) {
+        int h = Objects.hashCode(annotationClassName);
+        for (Map.Entry<String, AnnotationValue> e : members.entrySet()) {
+            h = 31 * (31 * h + e.getKey().hashCode()) + e.getValue().hashCode();
+        }
+        return h;
+    }
+
     public static final class Builder {
         private final String annotationClassName;
-        private final Map<String, Object> values = new LinkedHashMap<>();
+        private final Map<String, AnnotationValue> members = new LinkedHashMap<>();
 
         private Builder(String annotationClassName) {
             this.annotationClassName = annotationClassName;
         }
 
+        /**
+         * Sets a member given as a plain Java object, converted with {@link AnnotationValue#of(Object)}.
+         */
         public Builder value(String name, Object val) {
-            values.put(name, val);
+            members.put(name, AnnotationValue.of(val));
             return this;
         }
 
@@ -44,8 +134,64 @@ public final class AnnotationDescriptor {
             return value(name, val);
         }
 
+        public Builder member(String name, AnnotationValue val) {
+            members.put(name, Objects.requireNonNull(val, "val"));
+            return this;
+        }
+
         public AnnotationDescriptor build() {
-            return new AnnotationDescriptor(annotationClassName, values);
+            // look up the builder's own members first: a tree built before costs no copy
+            int hash = hash(annotationClassName, members);
+            AnnotationDescriptor shared = INTERNER.find(new AnnotationDescriptor(annotationClassName, members, hash));
+            if (shared != null) return shared;
+            return INTERNER.intern(new AnnotationDescriptor(annotationClassName,
+                    Collections.unmodifiableMap(new LinkedHashMap<>(members)), hash));
+        }
+    }
+
+    /**
+     * Weak set of the shared descriptors, striped by hash to keep parallel expansion workers apart.
+     * Entries go away with the last reference to them, so the set only holds descriptors still in use.
+     */
+    private static final class Interner {
+        private static final int STRIPES = 16;
+
+        private final Stripe[] stripes = new Stripe[STRIPES];
+
+        Interner() {
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new Stripe();
+            }
+        }
+
+        AnnotationDescriptor find(AnnotationDescriptor d) {
+            Stripe stripe = stripe(d);
+            synchronized (stripe) {
+                WeakReference<AnnotationDescriptor> ref = stripe.descriptors.get(d);
+                return ref != null ? ref.get() : null;
+            }
+        }
+
+        AnnotationDescriptor intern(AnnotationDescriptor d) {
+            Stripe stripe = stripe(d);
+            synchronized (stripe) {
+                WeakReference<AnnotationDescriptor> ref = stripe.descriptors.get(d);
+                AnnotationDescriptor shared = ref != null ? ref.get() : null;
+                if (shared != null) return shared;
+                stripe.descriptors.put(d, new WeakReference<>(d));
+                return d;
+            }
+        }
+
+        private Stripe stripe(AnnotationDescriptor d) {
+            return stripes[(d.hash ^ (d.hash >>> 16)) & (STRIPES - 1)];
+        }
+
+        /**
+         * The descriptors of one stripe, guarded by the stripe.
+         */
+        private static final class Stripe {
+            final Map<AnnotationDescriptor, WeakReference<AnnotationDescriptor>> descriptors = new WeakHashMap<>();
         }
     }
-}
\ No newline at end of file
+}
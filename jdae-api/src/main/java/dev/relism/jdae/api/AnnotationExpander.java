@@ -0,0 +1,9 @@
+package dev.relism.jdae.api;
+
+/**
+ * Common type of all expanders, referenced by {@code @Expander}. Expanders implement exactly one of
+ * {@link JDAEExpander}, {@link ViewExpander} and {@link BatchExpander}, which decides how the engine calls
+ * them. The type parameter A is the source annotation type.
+ */
+public sealed interface AnnotationExpander<A> permits JDAEExpander, ViewExpander, BatchExpander {
+}
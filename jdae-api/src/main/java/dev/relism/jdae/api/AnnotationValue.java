@@ -0,0 +1,615 @@
+package dev.relism.jdae.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A member value of an injected annotation, one type per kind of {@code element_value} in the class file.
+ * Primitive arrays keep their elements unboxed. Values are immutable.
+ */
+public sealed interface AnnotationValue {
+
+    /**
+     * The {@code element_value} tag of this value in the class file, e.g. {@code 'I'} or {@code '['}.
+     */
+    char tag();
+
+    /**
+     * The value as a plain Java object: a boxed primitive, {@code String}, {@link ClassRef}, {@link EnumRef},
+     * {@link AnnotationDescriptor}, a primitive array or an {@code Object[]} of these.
+     */
+    Object toObject();
+
+    static BooleanValue of(boolean value) {
+        return new BooleanValue(value);
+    }
+
+    static ByteValue of(byte value) {
+        return new ByteValue(value);
+    }
+
+    static CharValue of(char value) {
+        return new CharValue(value);
+    }
+
+    static ShortValue of(short value) {
+        return new ShortValue(value);
+    }
+
+    static IntValue of(int value) {
+        return new IntValue(value);
+    }
+
+    static LongValue of(long value) {
+        return new LongValue(value);
+    }
+
+    static FloatValue of(float value) {
+        return new FloatValue(value);
+    }
+
+    static DoubleValue of(double value) {
+        return new DoubleValue(value);
+    }
+
+    static StringValue of(String value) {
+        return new StringValue(value);
+    }
+
+    static TypeValue of(Class<?> type) {
+        return new TypeValue(new ClassRef(type.descriptorString()));
+    }
+
+    static EnumValue of(Enum<?> constant) {
+        return new EnumValue(new EnumRef(constant.getDeclaringClass().descriptorString(), constant.name()));
+    }
+
+    static NestedValue of(AnnotationDescriptor annotation) {
+        return new NestedValue(annotation);
+    }
+
+    static BooleanArrayValue of(boolean... values) {
+        return new BooleanArrayValue(values);
+    }
+
+    static ByteArrayValue of(byte... values) {
+        return new ByteArrayValue(values);
+    }
+
+    static CharArrayValue of(char... values) {
+        return new CharArrayValue(values);
+    }
+
+    static ShortArrayValue of(short... values) {
+        return new ShortArrayValue(values);
+    }
+
+    static IntArrayValue of(int... values) {
+        return new IntArrayValue(values);
+    }
+
+    static LongArrayValue of(long... values) {
+        return new LongArrayValue(values);
+    }
+
+    static FloatArrayValue of(float... values) {
+        return new FloatArrayValue(values);
+    }
+
+    static DoubleArrayValue of(double... values) {
+        return new DoubleArrayValue(values);
+    }
+
+    static ArrayValue of(String... values) {
+        List<AnnotationValue> elements = new ArrayList<>(values.length);
+        for (String s : values) elements.add(new StringValue(s));
+        return new ArrayValue(elements);
+    }
+
+    /**
+     * Converts a value given as a plain Java object, as accepted by {@link AnnotationBuilder#member(String, Object)}:
+     * an {@code AnnotationValue}, a boxed primitive, {@code String}, {@code Class}, {@link ClassRef}, an enum
+     * constant, {@link EnumRef}, {@link AnnotationDescriptor}, or an array or {@code List} of these.
+     *
+     * @throws IllegalArgumentException if the value is {@code null} or of another type
+     */
+    static AnnotationValue of(Object value) {
+        return switch (value) {
+            case null -> throw new IllegalArgumentException("Annotation member values cannot be null");
+            case AnnotationValue v -> v;
+            case String s -> new StringValue(s);
+            case Integer x -> new IntValue(x);
+            case Boolean x -> new BooleanValue(x);
+            case Long x -> new LongValue(x);
+            case Byte x -> new ByteValue(x);
+            case Character x -> new CharValue(x);
+            case Short x -> new ShortValue(x);
+            case Float x -> new FloatValue(x);
+            case Double x -> new DoubleValue(x);
+            case Class<?> c -> of(c);
+            case ClassRef ref -> new TypeValue(ref);
+            case EnumRef ref -> new EnumValue(ref);
+            case Enum<?> e -> of(e);
+            case AnnotationDescriptor d -> new NestedValue(d);
+            case List<?> list -> {
+                List<AnnotationValue> elements = new ArrayList<>(list.size());
+                for (Object o : list) elements.add(of(o));
+                yield new ArrayValue(elements);
+            }
+            case Object[] arr -> {
+                List<AnnotationValue> elements = new ArrayList<>(arr.length);
+                for (Object o : arr) elements.add(of(o));
+                yield new ArrayValue(elements);
+            }
+            case boolean[] arr -> new BooleanArrayValue(arr);
+            case byte[] arr -> new ByteArrayValue(arr);
+            case char[] arr -> new CharArrayValue(arr);
+            case short[] arr -> new ShortArrayValue(arr);
+            case int[] arr -> new IntArrayValue(arr);
+            case long[] arr -> new LongArrayValue(arr);
+            case float[] arr -> new FloatArrayValue(arr);
+            case double[] arr -> new DoubleArrayValue(arr);
+            default -> throw new IllegalArgumentException("Unsupported annotation value: " + value.getClass().getName());
+        };
+    }
+
+    /**
+     * An array member value, of any element type.
+     */
+    sealed interface Array extends AnnotationValue {
+        int length();
+
+        /**
+         * The elements as values; primitive elements are boxed into value objects.
+         */
+        List<AnnotationValue> elements();
+
+        @Override
+        default char tag() {
+            return '[';
+        }
+    }
+
+    record BooleanValue(boolean value) implements AnnotationValue {
+        public char tag() { return 'Z'; }
+        public Object toObject() { return value; }
+    }
+
+    record ByteValue(byte value) implements AnnotationValue {
+        public char tag() { return 'B'; }
+        public Object toObject() { return value; }
+    }
+
+    record CharValue(char value) implements AnnotationValue {
+        public char tag() { return 'C'; }
+        public Object toObject() { return value; }
+    }
+
+    record ShortValue(short value) implements AnnotationValue {
+        public char tag() { return 'S'; }
+        public Object toObject() { return value; }
+    }
+
+    record IntValue(int value) implements AnnotationValue {
+        public char tag() { return 'I'; }
+        public Object toObject() { return value; }
+    }
+
+    record LongValue(long value) implements AnnotationValue {
+        public char tag() { return 'J'; }
+        public Object toObject() { return value; }
+    }
+
+    record FloatValue(float value) implements AnnotationValue {
+        public char tag() { return 'F'; }
+        public Object toObject() { return value; }
+    }
+
+    record DoubleValue(double value) implements AnnotationValue {
+        public char tag() { return 'D'; }
+        public Object toObject() { return value; }
+    }
+
+    record StringValue(String value) implements AnnotationValue {
+        public StringValue {
+            Objects.requireNonNull(value, "value");
+        }
+
+        public char tag() { return 's'; }
+        public Object toObject() { return value; }
+    }
+
+    /**
+     * A class literal, such as {@code String.class}.
+     */
+    record TypeValue(ClassRef type) implements AnnotationValue {
+        public TypeValue {
+            Objects.requireNonNull(type, "type");
+        }
+
+        public char tag() { return 'c'; }
+        public Object toObject() { return type; }
+    }
+
+    record EnumValue(EnumRef constant) implements AnnotationValue {
+        public EnumValue {
+            Objects.requireNonNull(constant, "constant");
+        }
+
+        public char tag() { return 'e'; }
+        public Object toObject() { return constant; }
+    }
+
+    record NestedValue(AnnotationDescriptor annotation) implements AnnotationValue {
+        public NestedValue {
+            Objects.requireNonNull(annotation, "annotation");
+        }
+
+        public char tag() { return '@'; }
+        public Object toObject() { return annotation; }
+    }
+
+    /**
+     * An array of strings, class literals, enum constants or annotations, or of mixed primitive values.
+     */
+    record ArrayValue(List<AnnotationValue> elements) implements Array {
+        public ArrayValue {
+            elements = Collections.unmodifiableList(new ArrayList<>(elements));
+        }
+
+        public int length() { return elements.size(); }
+
+        public Object toObject() {
+            Object[] out = new Object[elements.size()];
+            for (int i = 0; i < out.length; i++) out[i] = elements.get(i).toObject();
+            return out;
+        }
+    }
+
+    final class BooleanArrayValue implements Array {
+        private final boolean[] values;
+
+        public BooleanArrayValue(boolean[] values) {
+            this.values = values.clone();
+        }
+
+        public int length() { return values.length; }
+        public boolean get(int index) { return values[index]; }
+        public boolean[] toArray() { return values.clone(); }
+
+        /**
+         * This array followed by the elements of {@code other}.
+         */
+        public BooleanArrayValue concat(BooleanArrayValue other) {
+            boolean[] out = Arrays.copyOf(values, values.length + other.values.length);
+            System.arraycopy(other.values, 0, out, values.length, other.values.length);
+            return new BooleanArrayValue(out);
+        }
+        public Object toObject() { return values.clone(); }
+
+        public List<AnnotationValue> elements() {
+            List<AnnotationValue> out = new ArrayList<>(values.length);
+            for (boolean v : values) out.add(new BooleanValue(v));
+            return out;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof BooleanArrayValue other && Arrays.equals(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values);
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(values);
+        }
+    }
+
+    final class ByteArrayValue implements Array {
+        private final byte[] values;
+
+        public ByteArrayValue(byte[] values) {
+            this.values = values.clone();
+        }
+
+        public int length() { return values.length; }
+        public byte get(int index) { return values[index]; }
+        public byte[] toArray() { return values.clone(); }
+
+        /**
+         * This array followed by the elements of {@code other}.
+         */
+        public ByteArrayValue concat(ByteArrayValue other) {
+            byte[] out = Arrays.copyOf(values, values.length + other.values.length);
+            System.arraycopy(other.values, 0, out, values.length, other.values.length);
+            return new ByteArrayValue(out);
+        }
+        public Object toObject() { return values.clone(); }
+
+        public List<AnnotationValue> elements() {
+            List<AnnotationValue> out = new ArrayList<>(values.length);
+            for (byte v : values) out.add(new ByteValue(v));
+            return out;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ByteArrayValue other && Arrays.equals(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values);
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(values);
+        }
+    }
+
+    final class CharArrayValue implements Array {
+        private final char[] values;
+
+        public CharArrayValue(char[] values) {
+            this.values = values.clone();
+        }
+
+        public int length() { return values.length; }
+        public char get(int index) { return values[index]; }
+        public char[] toArray() { return values.clone(); }
+
+        /**
+         * This array followed by the elements of {@code other}.
+         */
+        public CharArrayValue concat(CharArrayValue other) {
+            char[] out = Arrays.copyOf(values, values.length + other.values.length);
+            System.arraycopy(other.values, 0, out, values.length, other.values.length);
+            return new CharArrayValue(out);
+        }
+        public Object toObject() { return values.clone(); }
+
+        public List<AnnotationValue> elements() {
+            List<AnnotationValue> out = new ArrayList<>(values.length);
+            for (char v : values) out.add(new CharValue(v));
+            return out;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CharArrayValue other && Arrays.equals(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values);
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(values);
+        }
+    }
+
+    final class ShortArrayValue implements Array {
+        private final short[] values;
+
+        public ShortArrayValue(short[] values) {
+            this.values = values.clone();
+        }
+
+        public int length() { return values.length; }
+        public short get(int index) { return values[index]; }
+        public short[] toArray() { return values.clone(); }
+
+        /**
+         * This array followed by the elements of {@code other}.
+         */
+        public ShortArrayValue concat(ShortArrayValue other) {
+            short[] out = Arrays.copyOf(values, values.length + other.values.length);
+            System.arraycopy(other.values, 0, out, values.length, other.values.length);
+            return new ShortArrayValue(out);
+        }
+        public Object toObject() { return values.clone(); }
+
+        public List<AnnotationValue> elements() {
+            List<AnnotationValue> out = new ArrayList<>(values.length);
+            for (short v : values) out.add(new ShortValue(v));
+            return out;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ShortArrayValue other && Arrays.equals(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values);
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(values);
+        }
+    }
+
+    final class IntArrayValue implements Array {
+        private final int[] values;
+
+        public IntArrayValue(int[] values) {
+            this.values = values.clone();
+        }
+
+        public int length() { return values.length; }
+        public int get(int index) { return values[index]; }
+        public int[] toArray() { return values.clone(); }
+
+        /**
+         * This array followed by the elements of {@code other}.
+         */
+        public IntArrayValue concat(IntArrayValue other) {
+            int[] out = Arrays.copyOf(values, values.length + other.values.length);
+            System.arraycopy(other.values, 0, out, values.length, other.values.length);
+            return new IntArrayValue(out);
+        }
+        public Object toObject() { return values.clone(); }
+
+        public List<AnnotationValue> elements() {
+            List<AnnotationValue> out = new ArrayList<>(values.length);
+            for (int v : values) out.add(new IntValue(v));
+            return out;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof IntArrayValue other && Arrays.equals(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values);
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(values);
+        }
+    }
+
+    final class LongArrayValue implements Array {
+        private final long[] values;
+
+        public LongArrayValue(long[] values) {
+            this.values = values.clone();
+        }
+
+        public int length() { return values.length; }
+        public long get(int index) { return values[index]; }
+        public long[] toArray() { return values.clone(); }
+
+        /**
+         * This array followed by the elements of {@code other}.
+         */
+        public LongArrayValue concat(LongArrayValue other) {
+            long[] out = Arrays.copyOf(values, values.length + other.values.length);
+            System.arraycopy(other.values, 0, out, values.length, other.values.length);
+            return new LongArrayValue(out);
+        }
+        public Object toObject() { return values.clone(); }
+
+        public List<AnnotationValue> elements() {
+            List<AnnotationValue> out = new ArrayList<>(values.length);
+            for (long v : values) out.add(new LongValue(v));
+            return out;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof LongArrayValue other && Arrays.equals(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values);
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(values);
+        }
+    }
+
+    final class FloatArrayValue implements Array {
+        private final float[] values;
+
+        public FloatArrayValue(float[] values) {
+            this.values = values.clone();
+        }
+
+        public int length() { return values.length; }
+        public float get(int index) { return values[index]; }
+        public float[] toArray() { return values.clone(); }
+
+        /**
+         * This array followed by the elements of {@code other}.
+         */
+        public FloatArrayValue concat(FloatArrayValue other) {
+            float[] out = Arrays.copyOf(values, values.length + other.values.length);
+            System.arraycopy(other.values, 0, out, values.length, other.values.length);
+            return new FloatArrayValue(out);
+        }
+        public Object toObject() { return values.clone(); }
+
+        public List<AnnotationValue> elements() {
+            List<AnnotationValue> out = new ArrayList<>(values.length);
+            for (float v : values) out.add(new FloatValue(v));
+            return out;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof FloatArrayValue other && Arrays.equals(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values);
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(values);
+        }
+    }
+
+    final class DoubleArrayValue implements Array {
+        private final double[] values;
+
+        public DoubleArrayValue(double[] values) {
+            this.values = values.clone();
+        }
+
+        public int length() { return values.length; }
+        public double get(int index) { return values[index]; }
+        public double[] toArray() { return values.clone(); }
+
+        /**
+         * This array followed by the elements of {@code other}.
+         */
+        public DoubleArrayValue concat(DoubleArrayValue other) {
+            double[] out = Arrays.copyOf(values, values.length + other.values.length);
+            System.arraycopy(other.values, 0, out, values.length, other.values.length);
+            return new DoubleArrayValue(out);
+        }
+        public Object toObject() { return values.clone(); }
+
+        public List<AnnotationValue> elements() {
+            List<AnnotationValue> out = new ArrayList<>(values.length);
+            for (double v : values) out.add(new DoubleValue(v));
+            return out;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof DoubleArrayValue other && Arrays.equals(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values);
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(values);
+        }
+    }
+}
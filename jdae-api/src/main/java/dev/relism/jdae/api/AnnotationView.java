@@ -0,0 +1,62 @@
+package dev.relism.jdae.api;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Read-only view of a source annotation, read from the class file without loading the annotation type
+ * or any type it references. Members not set explicitly have the default declared by the annotation type.
+ * <p>
+ * Values are exposed as: {@code String}, boxed primitives, {@link ClassRef} for {@code Class<?>} members,
+ * {@link EnumRef} for enums, {@link AnnotationView} for nested annotations and unmodifiable {@code List}s
+ * of those for arrays.
+ */
+public interface AnnotationView {
+    /**
+     * Binary name of the annotation type.
+     */
+    String getAnnotationClassName();
+
+    /**
+     * Names of all members, including those left to their default.
+     */
+    Set<String> getMemberNames();
+
+    /**
+     * True if the member has a value, set explicitly or by default.
+     */
+    boolean has(String member);
+
+    /**
+     * True if the member was set explicitly on the annotated element.
+     */
+    boolean isExplicit(String member);
+
+    /**
+     * The member value, in the form described above.
+     *
+     * @throws ExpansionException if the member has no value
+     */
+    Object get(String member);
+
+    String getString(String member);
+
+    boolean getBoolean(String member);
+
+    int getInt(String member);
+
+    long getLong(String member);
+
+    double getDouble(String member);
+
+    ClassRef getClass(String member);
+
+    EnumRef getEnum(String member);
+
+    AnnotationView getAnnotation(String member);
+
+    /**
+     * Elements of an array member, each of the given type.
+     */
+    <T> List<T> getList(String member, Class<T> elementType);
+}
@@ -0,0 +1,38 @@
+package dev.relism.jdae.api;
+
+import java.util.List;
+
+/**
+ * Expander that receives every occurrence of its annotation type at once instead of one call per
+ * annotation, so it can set up once and do work that spans classes, such as assigning unique ids or
+ * filling a shared registry. The type parameter A is the source annotation type.
+ * <p>
+ * When a classes directory is expanded, the batch holds the occurrences in all classes expanded in that
+ * run, in the order of their class files; with incremental builds, the classes that used the annotation type
+ * before are expanded again along with the changed ones. Where classes are expanded one at a time, such as in
+ * jars or at load time, each batch holds the occurrences of a single class. Batch expanders are never memoized,
+ * {@code @Pure} is ignored.
+ */
+public non-sealed interface BatchExpander<A> extends AnnotationExpander<A> {
+    /**
+     * Expands the given occurrences, adding annotations through the context of each.
+     */
+    void expandAll(List<Occurrence<A>> occurrences);
+
+    /**
+     * One annotation to expand and the context of its target.
+     */
+    interface Occurrence<A> {
+        ExpansionContext getContext();
+
+        /**
+         * The annotation instance, created on first call. Loads the annotation type.
+         */
+        A getAnnotation();
+
+        /**
+         * The annotation read from the class file, see {@link AnnotationView}.
+         */
+        AnnotationView getView();
+    }
+}
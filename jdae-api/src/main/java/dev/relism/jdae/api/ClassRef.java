@@ -0,0 +1,79 @@
+package dev.relism.jdae.api;
+
+/**
+ * A {@code Class<?>} annotation member value, identified by its type descriptor without loading the class.
+ * It can be used as a member value of injected annotations.
+ */
+public final class ClassRef {
+    private final String descriptor;
+
+    public ClassRef(String descriptor) {
+        if (descriptor == null || descriptor.isEmpty()) {
+            throw new IllegalArgumentException("Type descriptor must not be empty");
+        }
+        this.descriptor = descriptor;
+    }
+
+    /**
+     * Reference to the class with the given binary name, e.g. {@code com.example.User} or {@code com.example.Outer$Inner}.
+     */
+    public static ClassRef of(String className) {
+        return new ClassRef("L" + className.replace('.', '/') + ";");
+    }
+
+    /**
+     * Type descriptor, e.g. {@code Lcom/example/User;}, {@code I} or {@code [Ljava/lang/String;}.
+     */
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * Name as returned by {@link Class#getName()} for classes, and the Java source form for primitives and arrays
+     * (e.g. {@code int}, {@code java.lang.String[]}).
+     */
+    public String getClassName() {
+        int dims = 0;
+        while (descriptor.charAt(dims) == '[') dims++;
+        String element = switch (descriptor.charAt(dims)) {
+            case 'Z' -> "boolean";
+            case 'B' -> "byte";
+            case 'C' -> "char";
+            case 'S' -> "short";
+            case 'I' -> "int";
+            case 'J' -> "long";
+            case 'F' -> "float";
+            case 'D' -> "double";
+            case 'V' -> "void";
+            default -> descriptor.substring(dims + 1, descriptor.length() - 1).replace('/', '.');
+        };
+        return element + "[]".repeat(dims);
+    }
+
+    public boolean isPrimitive() {
+        return descriptor.length() == 1;
+    }
+
+    public boolean isArray() {
+        return descriptor.charAt(0) == '[';
+    }
+
+    public boolean is(Class<?> type) {
+        return getClassName().equals(type.isArray() ? type.getCanonicalName() : type.getName());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ClassRef other && descriptor.equals(other.descriptor);
+    }
+
+    @Override
+    public int hashCode() {
+        return descriptor.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return getClassName() + ".class";
+    }
+}
@@ -0,0 +1,56 @@
+package dev.relism.jdae.api;
+
+/**
+ * An enum annotation member value, identified by the enum type descriptor and constant name without
+ * loading the enum. It can be used as a member value of injected annotations.
+ */
+public final class EnumRef {
+    private final String descriptor;
+    private final String constant;
+
+    public EnumRef(String descriptor, String constant) {
+        this.descriptor = descriptor;
+        this.constant = constant;
+    }
+
+    /**
+     * Reference to a constant of the enum with the given binary name.
+     */
+    public static EnumRef of(String enumClassName, String constant) {
+        return new EnumRef("L" + enumClassName.replace('.', '/') + ";", constant);
+    }
+
+    /**
+     * Descriptor of the enum type, e.g. {@code Lcom/example/Kind;}.
+     */
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    public String getEnumClassName() {
+        return descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+    }
+
+    public String getConstant() {
+        return constant;
+    }
+
+    public boolean is(Enum<?> value) {
+        return constant.equals(value.name()) && getEnumClassName().equals(value.getDeclaringClass().getName());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof EnumRef other && descriptor.equals(other.descriptor) && constant.equals(other.constant);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * descriptor.hashCode() + constant.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return getEnumClassName() + "." + constant;
+    }
+}
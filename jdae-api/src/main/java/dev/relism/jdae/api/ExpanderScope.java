@@ -0,0 +1,20 @@
+package dev.relism.jdae.api;
+
+/**
+ * How long an expander instance is reused, see {@link dev.relism.jdae.api.annotations.ExpanderLifecycle}.
+ */
+public enum ExpanderScope {
+    /**
+     * One instance serves every expansion, possibly from several threads at once.
+     * The expander must be stateless or thread-safe.
+     */
+    SINGLETON,
+    /**
+     * One instance per expansion thread, reused for every candidate that thread expands.
+     */
+    PER_THREAD,
+    /**
+     * A new instance for every annotation expanded.
+     */
+    PER_INVOCATION
+}
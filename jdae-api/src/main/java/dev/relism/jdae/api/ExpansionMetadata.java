@@ -1,5 +1,15 @@
 package dev.relism.jdae.api;
 
+import dev.relism.jdae.api.AnnotationValue.ArrayValue;
+import dev.relism.jdae.api.AnnotationValue.BooleanArrayValue;
+import dev.relism.jdae.api.AnnotationValue.ByteArrayValue;
+import dev.relism.jdae.api.AnnotationValue.CharArrayValue;
+import dev.relism.jdae.api.AnnotationValue.DoubleArrayValue;
+import dev.relism.jdae.api.AnnotationValue.FloatArrayValue;
+import dev.relism.jdae.api.AnnotationValue.IntArrayValue;
+import dev.relism.jdae.api.AnnotationValue.LongArrayValue;
+import dev.relism.jdae.api.AnnotationValue.ShortArrayValue;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
@@ -13,7 +23,7 @@ import java.util.Set;
  */
 public final class ExpansionMetadata {
     private final List<AnnotationDescriptor> generatedAnnotations = new ArrayList<>();
-    private final Map<String, Map<String, Object>> mergedByType = new LinkedHashMap<>();
+    private final Map<String, Map<String, AnnotationValue>> mergedByType = new LinkedHashMap<>();
 
     public void add(AnnotationDescriptor descriptor) {
         generatedAnnotations.add(descriptor);
@@ -21,11 +31,11 @@ public final class ExpansionMetadata {
 
     public void merge(AnnotationDescriptor descriptor) {
         String type = descriptor.getAnnotationClassName();
-        Map<String, Object> existing = mergedByType.computeIfAbsent(type, k -> new LinkedHashMap<>());
-        for (Map.Entry<String, Object> e : descriptor.getValues().entrySet()) {
+        Map<String, AnnotationValue> existing = mergedByType.computeIfAbsent(type, k -> new LinkedHashMap<>());
+        for (Map.Entry<String, AnnotationValue> e : descriptor.getMembers().entrySet()) {
             String key = e.getKey();
-            Object val = e.getValue();
-            Object prev = existing.get(key);
+            AnnotationValue val = e.getValue();
+            AnnotationValue prev = existing.get(key);
             if (prev == null) {
                 existing.put(key, val);
             } else {
@@ -34,33 +44,61 @@ public final class ExpansionMetadata {
         }
     }
 
-    private Object mergeValues(Object prev, Object next) {
-        if (prev == null) return next;
-        if (next == null) return prev;
-        // Concatenate arrays
-        if (prev.getClass().isArray() && next.getClass().isArray()) {
-            int len1 = java.lang.reflect.Array.getLength(prev);
-            int len2 = java.lang.reflect.Array.getLength(next);
-            Object[] out = new Object[len1 + len2];
-            for (int i = 0; i < len1; i++) out[i] = java.lang.reflect.Array.get(prev, i);
-            for (int j = 0; j < len2; j++) out[len1 + j] = java.lang.reflect.Array.get(next, j);
-            return out;
+    private AnnotationValue mergeValues(AnnotationValue prev, AnnotationValue next) {
+        // Concatenate arrays, keeping primitive elements unboxed when both have the same type
+        return switch (prev) {
+            case IntArrayValue a when next instanceof IntArrayValue b -> a.concat(b);
+            case LongArrayValue a when next instanceof LongArrayValue b -> a.concat(b);
+            case BooleanArrayValue a when next instanceof BooleanArrayValue b -> a.concat(b);
+            case ByteArrayValue a when next instanceof ByteArrayValue b -> a.concat(b);
+            case CharArrayValue a when next instanceof CharArrayValue b -> a.concat(b);
+            case ShortArrayValue a when next instanceof ShortArrayValue b -> a.concat(b);
+            case FloatArrayValue a when next instanceof FloatArrayValue b -> a.concat(b);
+            case DoubleArrayValue a when next instanceof DoubleArrayValue b -> a.concat(b);
+            case AnnotationValue.Array a when next instanceof AnnotationValue.Array b -> {
+                List<AnnotationValue> out = new ArrayList<>(a.length() + b.length());
+                out.addAll(a.elements());
+                out.addAll(b.elements());
+                yield new ArrayValue(out);
+            }
+            // Last writer wins for scalars and nested descriptors
+            default -> next;
+        };
+    }
+
+    /**
+     * Applies the {@link #add adds} and {@link #merge merges} made on {@code other} to this metadata,
+     * with the same result as making them here.
+     */
+    public void addAll(ExpansionMetadata other) {
+        generatedAnnotations.addAll(other.generatedAnnotations);
+        for (Map.Entry<String, Map<String, AnnotationValue>> e : other.mergedByType.entrySet()) {
+            merge(new AnnotationDescriptor(e.getKey(), e.getValue()));
         }
-        // Append lists
-        if (prev instanceof List<?> l1 && next instanceof List<?> l2) {
-            List<Object> out = new ArrayList<>(l1.size() + l2.size());
-            out.addAll(l1);
-            out.addAll(l2);
-            return out;
+    }
+
+    /**
+     * Annotations passed to {@link #add}, in order.
+     */
+    public List<AnnotationDescriptor> getAdded() {
+        return Collections.unmodifiableList(generatedAnnotations);
+    }
+
+    /**
+     * Annotations passed to {@link #merge}, one per type with the merged values.
+     */
+    public List<AnnotationDescriptor> getMerged() {
+        List<AnnotationDescriptor> out = new ArrayList<>(mergedByType.size());
+        for (Map.Entry<String, Map<String, AnnotationValue>> e : mergedByType.entrySet()) {
+            out.add(new AnnotationDescriptor(e.getKey(), e.getValue()));
         }
-        // Last writer wins for scalars and nested descriptors
-        return next;
+        return out;
     }
 
     public List<AnnotationDescriptor> getGeneratedAnnotations() {
         List<AnnotationDescriptor> out = new ArrayList<>(mergedByType.size() + generatedAnnotations.size());
         Set<String> mergedTypes = new LinkedHashSet<>();
-        for (Map.Entry<String, Map<String, Object>> e : mergedByType.entrySet()) {
+        for (Map.Entry<String, Map<String, AnnotationValue>> e : mergedByType.entrySet()) {
             out.add(new AnnotationDescriptor(e.getKey(), e.getValue()));
             mergedTypes.add(e.getKey());
         }
@@ -1,8 +1,9 @@
 package dev.relism.jdae.api;
 
 /**
- * Implemented by all expanders. The type parameter A is the source annotation type.
+ * Expander that receives an instance of the source annotation, once per annotation.
+ * The type parameter A is the source annotation type.
  */
-public interface JDAEExpander<A> {
+public non-sealed interface JDAEExpander<A> extends AnnotationExpander<A> {
     void expand(ExpansionContext ctx, A annotationInstance);
 }
\ No newline at end of file
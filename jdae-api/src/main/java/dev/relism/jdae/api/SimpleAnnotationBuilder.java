@@ -1,5 +1,7 @@
 package dev.relism.jdae.api;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
 
 /**
@@ -27,7 +29,7 @@ public class SimpleAnnotationBuilder implements AnnotationBuilder {
     public AnnotationBuilder nested(String name, String annotationClassName, Consumer<AnnotationBuilder> consumer) {
         SimpleAnnotationBuilder nested = new SimpleAnnotationBuilder(annotationClassName);
         consumer.accept(nested);
-        builder.value(name, nested.build());
+        builder.member(name, AnnotationValue.of(nested.build()));
         return this;
     }
 
@@ -38,11 +40,11 @@ public class SimpleAnnotationBuilder implements AnnotationBuilder {
 
     @Override
     public AnnotationBuilder nestedArray(String name, AnnotationBuilder... nestedBuilders) {
-        AnnotationDescriptor[] arr = new AnnotationDescriptor[nestedBuilders.length];
-        for (int i = 0; i < nestedBuilders.length; i++) {
-            arr[i] = nestedBuilders[i].build();
+        List<AnnotationValue> elements = new ArrayList<>(nestedBuilders.length);
+        for (AnnotationBuilder nested : nestedBuilders) {
+            elements.add(AnnotationValue.of(nested.build()));
         }
-        builder.value(name, arr);
+        builder.member(name, new AnnotationValue.ArrayValue(elements));
         return this;
     }
 
@@ -0,0 +1,40 @@
+package dev.relism.jdae.api;
+
+/**
+ * Attributes of the expansion target that a {@link dev.relism.jdae.api.annotations.Pure} expander may read
+ * from its {@link ExpansionContext}.
+ */
+public enum TargetAttribute {
+    /**
+     * {@link ExpansionContext#getTargetKind()}.
+     */
+    TARGET_KIND,
+    /**
+     * Name of the class declaring the target, or of the class itself.
+     */
+    CLASS_NAME,
+    /**
+     * Access flags of the class.
+     */
+    CLASS_ACCESS,
+    /**
+     * Super class of the class.
+     */
+    SUPERCLASS,
+    /**
+     * Interfaces of the class.
+     */
+    INTERFACES,
+    /**
+     * Name of the annotated field or method.
+     */
+    MEMBER_NAME,
+    /**
+     * Descriptor of the annotated field or method, which also determines the parameter and return types.
+     */
+    MEMBER_DESCRIPTOR,
+    /**
+     * Access flags of the annotated field or method.
+     */
+    MEMBER_ACCESS
+}
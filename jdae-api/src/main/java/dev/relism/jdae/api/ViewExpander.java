@@ -0,0 +1,10 @@
+package dev.relism.jdae.api;
+
+/**
+ * Expander that reads the source annotation through an {@link AnnotationView} instead of an annotation
+ * instance, so expansion does not load the annotation type, its enums or its class values.
+ * The type parameter A is the source annotation type.
+ */
+public non-sealed interface ViewExpander<A> extends AnnotationExpander<A> {
+    void expand(ExpansionContext ctx, AnnotationView annotation);
+}
@@ -1,6 +1,6 @@
 package dev.relism.jdae.api.annotations;
 
-import dev.relism.jdae.api.JDAEExpander;
+import dev.relism.jdae.api.AnnotationExpander;
 
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
@@ -18,7 +18,7 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.ANNOTATION_TYPE)
 public @interface Expander {
-    Class<? extends JDAEExpander<?>> value();
+    Class<? extends AnnotationExpander<?>> value();
     boolean keepOriginal() default true;
     String id() default "";
 }
\ No newline at end of file
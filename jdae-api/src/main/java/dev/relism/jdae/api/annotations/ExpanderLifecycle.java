@@ -0,0 +1,23 @@
+package dev.relism.jdae.api.annotations;
+
+import dev.relism.jdae.api.ExpanderScope;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares how instances of an expander class are reused. Expanders without it are created
+ * for every annotation they expand ({@link ExpanderScope#PER_INVOCATION}).
+ * Example:
+ * <pre>
+ * @ExpanderLifecycle(ExpanderScope.SINGLETON)
+ * public class MyExpander implements JDAEExpander&lt;ListResponse&gt; { ... }
+ * </pre>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface ExpanderLifecycle {
+    ExpanderScope value();
+}
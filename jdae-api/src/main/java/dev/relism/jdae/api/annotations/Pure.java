@@ -0,0 +1,27 @@
+package dev.relism.jdae.api.annotations;
+
+import dev.relism.jdae.api.TargetAttribute;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares that an expander's output depends only on the values of the expanded annotation and on the
+ * listed attributes of its target. The engine then expands equal annotations on equivalent targets
+ * once and reuses the generated annotations, without calling the expander again.
+ * <p>
+ * A pure expander must not read anything else from its context, keep state between calls or depend on
+ * the environment, and must not modify the values of the annotations it generated after building them.
+ * Example:
+ * <pre>
+ * @Pure(dependsOn = TargetAttribute.TARGET_KIND)
+ * public class ArrayResponseExpander implements JDAEExpander&lt;ArrayResponse&gt; { ... }
+ * </pre>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Pure {
+    TargetAttribute[] dependsOn() default {};
+}
@@ -0,0 +1,64 @@
+package dev.relism.jdae.benchmarks;
+
+import dev.relism.jdae.core.bytecode.ClassScanner;
+import dev.relism.jdae.core.expansion.AnnotationInstanceFactory;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AnnotationInstanceFactory#create} from a scanned annotation, and reading the members of the
+ * instance as an expander does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AnnotationInstanceBenchmark {
+    private AnnotationInstanceFactory factory;
+    private AnnotationNode node;
+    private Bench instance;
+
+    @Setup
+    public void setUp() {
+        factory = new AnnotationInstanceFactory(AnnotationInstanceBenchmark.class.getClassLoader());
+        byte[] classBytes = SyntheticClasses.generate("bench/Instantiated", 1, 1);
+        node = new ClassScanner(Bench.class.getName()::equals).scan(classBytes).get(0).getRawAnnotation();
+        instance = (Bench) factory.create(Bench.class.getName(), node);
+    }
+
+    @Benchmark
+    public Object create() {
+        return factory.create(Bench.class.getName(), node);
+    }
+
+    @Benchmark
+    public void createAndRead(Blackhole bh) {
+        read((Bench) factory.create(Bench.class.getName(), node), bh);
+    }
+
+    @Benchmark
+    public void read(Blackhole bh) {
+        read(instance, bh);
+    }
+
+    private static void read(Bench bench, Blackhole bh) {
+        bh.consume(bench.value());
+        bh.consume(bench.weight());
+        bh.consume(bench.tags());
+        bh.consume(bench.kind());
+    }
+}
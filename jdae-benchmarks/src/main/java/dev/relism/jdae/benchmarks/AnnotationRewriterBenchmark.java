@@ -0,0 +1,67 @@
+package dev.relism.jdae.benchmarks;
+
+import dev.relism.jdae.api.AnnotationDescriptor;
+import dev.relism.jdae.core.bytecode.AnnotationRewriter;
+import dev.relism.jdae.core.bytecode.ClassScanner;
+import dev.relism.jdae.core.bytecode.ExpanderCandidate;
+import dev.relism.jdae.core.bytecode.RewritePlan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AnnotationRewriter#rewrite} changing only the class annotation, and changing every annotated
+ * owner of the class in one plan.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AnnotationRewriterBenchmark {
+    @Param({"8", "64", "512"})
+    int members;
+
+    private final AnnotationRewriter rewriter = new AnnotationRewriter();
+    private byte[] classBytes;
+    private List<AnnotationDescriptor> injections;
+    private RewritePlan multiOwnerPlan;
+
+    @Setup
+    public void setUp() {
+        classBytes = SyntheticClasses.generate("bench/Rewritten", members, 2);
+        injections = List.of(AnnotationDescriptor.builder(Generated.class.getName())
+                .member("value", "generated")
+                .member("weight", 1)
+                .member("tags", new String[]{"a", "b"})
+                .build());
+        // a plan is read-only once built, so it can be applied repeatedly
+        multiOwnerPlan = new RewritePlan();
+        List<ExpanderCandidate> candidates = new ClassScanner(Bench.class.getName()::equals).scan(classBytes);
+        for (ExpanderCandidate c : candidates) {
+            multiOwnerPlan.add(c.getOwnerId(), List.of(c.getAnnotationClassName()), injections);
+        }
+    }
+
+    @Benchmark
+    public byte[] singleOwner() {
+        return rewriter.rewrite(classBytes, "bench/Rewritten", Bench.class.getName(), true, injections);
+    }
+
+    @Benchmark
+    public byte[] multiOwner() {
+        return rewriter.rewrite(classBytes, multiOwnerPlan);
+    }
+}
@@ -0,0 +1,22 @@
+package dev.relism.jdae.benchmarks;
+
+import dev.relism.jdae.api.annotations.Expander;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Expander annotation placed on the synthetic classes, with a member of each common kind.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.FIELD, ElementType.METHOD})
+@Expander(value = BenchExpander.class, keepOriginal = false)
+public @interface Bench {
+    String value();
+    int weight() default 1;
+    String[] tags() default {};
+    ElementType kind() default ElementType.TYPE;
+    Tag[] nested() default {};
+}
@@ -0,0 +1,25 @@
+package dev.relism.jdae.benchmarks;
+
+import dev.relism.jdae.api.ExpansionContext;
+import dev.relism.jdae.api.JDAEExpander;
+import dev.relism.jdae.api.annotations.Pure;
+
+/**
+ * Reads every member of {@link Bench} and injects one {@link Generated}, like a typical expander.
+ * Its output only depends on the annotation, so equal annotations are expanded once per build.
+ */
+@Pure
+public class BenchExpander implements JDAEExpander<Bench> {
+    @Override
+    public void expand(ExpansionContext ctx, Bench bench) {
+        int weight = bench.weight();
+        for (Tag tag : bench.nested()) {
+            weight += tag.values().length;
+        }
+        int total = weight;
+        ctx.addAnnotation(Generated.class, b -> b
+                .member("value", bench.value() + "/" + bench.kind())
+                .member("weight", total)
+                .member("tags", bench.tags()));
+    }
+}
@@ -0,0 +1,50 @@
+package dev.relism.jdae.benchmarks;
+
+import dev.relism.jdae.core.bytecode.ClassScanner;
+import dev.relism.jdae.core.bytecode.ExpanderCandidate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ClassScanner#scan} over classes with and without candidates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClassScannerBenchmark {
+    @Param({"8", "64", "512"})
+    int members;
+
+    /** 1 annotates every member, a large value leaves only the class annotation. */
+    @Param({"1", "1000000"})
+    int annotatedEvery;
+
+    private ClassScanner scanner;
+    private byte[] classBytes;
+
+    @Setup
+    public void setUp() {
+        scanner = new ClassScanner(SyntheticClasses.registry()::hasExpander);
+        classBytes = SyntheticClasses.generate("bench/Scanned", members, annotatedEvery);
+    }
+
+    @Benchmark
+    public List<ExpanderCandidate> scan() {
+        return scanner.scan(classBytes);
+    }
+}
@@ -0,0 +1,80 @@
+package dev.relism.jdae.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Writes a classes directory of synthetic classes, {@value #CLASSES_PER_PACKAGE} per package. The
+ * corpus only depends on the settings and the seed, so two runs with the same settings expand the
+ * same bytes.
+ */
+final class CorpusGenerator {
+    static final int CLASSES_PER_PACKAGE = 1000;
+
+    private final int classes;
+    private final int members;
+    private final double annotatedShare;
+    private final int nested;
+    private final int hugeEvery;
+    private final int hugeMembers;
+    private final long seed;
+
+    /**
+     * @param annotatedShare share of the members annotated with {@link Bench}; every class is annotated
+     * @param nested         {@link Tag}s nested in each {@link Bench}
+     * @param hugeEvery      every n-th class has {@code hugeMembers} members instead of {@code members}, 0 for none
+     */
+    CorpusGenerator(int classes, int members, double annotatedShare, int nested, int hugeEvery, int hugeMembers, long seed) {
+        this.classes = classes;
+        this.members = members;
+        this.annotatedShare = annotatedShare;
+        this.nested = nested;
+        this.hugeEvery = hugeEvery;
+        this.hugeMembers = hugeMembers;
+        this.seed = seed;
+    }
+
+    int getClasses() {
+        return classes;
+    }
+
+    /**
+     * The settings of this corpus, which results are only comparable under.
+     */
+    String describe() {
+        return "classes=" + classes + ",members=" + members + ",annotated=" + annotatedShare + ",nested=" + nested
+                + ",hugeEvery=" + hugeEvery + ",hugeMembers=" + hugeMembers + ",seed=" + seed;
+    }
+
+    /**
+     * Generates the corpus into {@code dir} and returns the number of bytes written.
+     */
+    long generate(Path dir) throws IOException {
+        for (int p = 0; p * CLASSES_PER_PACKAGE < classes; p++) {
+            Files.createDirectories(dir.resolve("corpus/p" + p));
+        }
+        AtomicLong bytes = new AtomicLong();
+        try {
+            IntStream.range(0, classes).parallel().forEach(i -> {
+                String name = "corpus/p" + (i / CLASSES_PER_PACKAGE) + "/C" + i;
+                SplittableRandom random = new SplittableRandom(seed + i);
+                int count = hugeEvery > 0 && i % hugeEvery == hugeEvery - 1 ? hugeMembers : members;
+                byte[] classBytes = SyntheticClasses.generate(name, count, m -> random.nextDouble() < annotatedShare, nested);
+                try {
+                    Files.write(dir.resolve(name + ".class"), classBytes);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                bytes.addAndGet(classBytes.length);
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return bytes.get();
+    }
+}
@@ -0,0 +1,54 @@
+package dev.relism.jdae.benchmarks;
+
+import dev.relism.jdae.core.bytecode.BytecodeExpander;
+import dev.relism.jdae.core.bytecode.ClassScanner;
+import dev.relism.jdae.core.bytecode.RewriteBackend;
+import dev.relism.jdae.core.expansion.ExpanderRegistry;
+import dev.relism.jdae.core.expansion.ExpansionEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class file expanded end to end: scanned, every candidate expanded and the class rewritten once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExpansionEngineBenchmark {
+    @Param({"8", "64", "512"})
+    int members;
+
+    @Param({"ASM", "RAW"})
+    RewriteBackend backend;
+
+    private ClassScanner scanner;
+    private ExpansionEngine engine;
+    private byte[] classBytes;
+
+    @Setup
+    public void setUp() {
+        ExpanderRegistry registry = SyntheticClasses.registry();
+        scanner = new ClassScanner(registry::hasExpander);
+        engine = new ExpansionEngine(registry, ExpansionEngineBenchmark.class.getClassLoader(), new BytecodeExpander(backend));
+        classBytes = SyntheticClasses.generate("bench/Expanded", members, 2);
+    }
+
+    @Benchmark
+    public byte[] expand() {
+        return engine.expand(classBytes, scanner.scan(classBytes), true);
+    }
+}
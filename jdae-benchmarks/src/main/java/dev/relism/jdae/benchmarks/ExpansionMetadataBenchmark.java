@@ -0,0 +1,58 @@
+package dev.relism.jdae.benchmarks;
+
+import dev.relism.jdae.api.AnnotationDescriptor;
+import dev.relism.jdae.api.ExpansionMetadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ExpansionMetadata#merge} of several expanders adding to the same annotations of one owner,
+ * as with {@code addOrModifyAnnotation}, followed by reading the merged result.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExpansionMetadataBenchmark {
+    @Param({"2", "16", "128"})
+    int merges;
+
+    private List<AnnotationDescriptor> descriptors;
+
+    @Setup
+    public void setUp() {
+        descriptors = new ArrayList<>(merges);
+        for (int i = 0; i < merges; i++) {
+            // spread over a few types so that both new and existing entries are merged
+            descriptors.add(AnnotationDescriptor.builder("bench.Merged" + (i % 4))
+                    .member("value", "v" + i)
+                    .member("tags", new String[]{"t" + i, "u" + i})
+                    .member("names", List.of("n" + i))
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public List<AnnotationDescriptor> merge() {
+        ExpansionMetadata metadata = new ExpansionMetadata();
+        for (AnnotationDescriptor d : descriptors) {
+            metadata.merge(d);
+        }
+        return metadata.getGeneratedAnnotations();
+    }
+}
@@ -0,0 +1,14 @@
+package dev.relism.jdae.benchmarks;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Annotation injected by {@link BenchExpander}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Generated {
+    String value();
+    int weight();
+    String[] tags();
+}
@@ -0,0 +1,99 @@
+package dev.relism.jdae.benchmarks;
+
+import dev.relism.jdae.core.bytecode.RewriteBackend;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Command line options of {@link ThroughputHarness}.
+ */
+final class HarnessOptions {
+    static final String USAGE = """
+            Usage: ThroughputHarness [options]
+              --classes <n>            classes in the corpus (default: 100000)
+              --members <n>            fields and methods per class (default: 16)
+              --annotated <share>      share of members annotated with an expander annotation (default: 0.25)
+              --nested <n>             nested annotations in each expander annotation (default: 2)
+              --huge-every <n>         every n-th class is huge, 0 for none (default: 1000)
+              --huge-members <n>       fields and methods per huge class (default: 4000)
+              --seed <n>               corpus seed (default: 1)
+              --parallelism <n>        expansion workers, as jdae.parallelism (default: 1)
+              --rewrite-backend <b>    ASM (default) or RAW
+              --warmup <n>             runs before measuring (default: 1)
+              --iterations <n>         measured runs (default: 3)
+              --work <dir>             directory for the corpus (default: a temporary directory)
+              --baseline <file>        compare with this baseline, or record it if it does not exist
+              --threshold <fraction>   largest accepted drop in classes per second (default: 0.10)
+              --update-baseline        overwrite the baseline with this run unless it regressed
+            """;
+
+    int classes = 100_000;
+    int members = 16;
+    double annotatedShare = 0.25;
+    int nested = 2;
+    int hugeEvery = 1000;
+    int hugeMembers = 4000;
+    long seed = 1;
+    int parallelism = 1;
+    RewriteBackend rewriteBackend = RewriteBackend.ASM;
+    int warmup = 1;
+    int iterations = 3;
+    Path workDirectory;
+    Path baseline;
+    double threshold = 0.10;
+    boolean updateBaseline;
+
+    static HarnessOptions parse(String[] args) {
+        HarnessOptions o = new HarnessOptions();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--classes" -> o.classes = Integer.parseInt(value(args, ++i, arg));
+                case "--members" -> o.members = Integer.parseInt(value(args, ++i, arg));
+                case "--annotated" -> o.annotatedShare = Double.parseDouble(value(args, ++i, arg));
+                case "--nested" -> o.nested = Integer.parseInt(value(args, ++i, arg));
+                case "--huge-every" -> o.hugeEvery = Integer.parseInt(value(args, ++i, arg));
+                case "--huge-members" -> o.hugeMembers = Integer.parseInt(value(args, ++i, arg));
+                case "--seed" -> o.seed = Long.parseLong(value(args, ++i, arg));
+                case "--parallelism" -> o.parallelism = Integer.parseInt(value(args, ++i, arg));
+                case "--rewrite-backend" -> o.rewriteBackend = RewriteBackend.valueOf(value(args, ++i, arg));
+                case "--warmup" -> o.warmup = Integer.parseInt(value(args, ++i, arg));
+                case "--iterations" -> o.iterations = Integer.parseInt(value(args, ++i, arg));
+                case "--work" -> o.workDirectory = Paths.get(value(args, ++i, arg));
+                case "--baseline" -> o.baseline = Paths.get(value(args, ++i, arg));
+                case "--threshold" -> o.threshold = Double.parseDouble(value(args, ++i, arg));
+                case "--update-baseline" -> o.updateBaseline = true;
+                default -> throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        if (o.classes < 1 || o.iterations < 1 || o.members < 0 || o.warmup < 0) {
+            throw new IllegalArgumentException("--classes and --iterations must be positive");
+        }
+        // each generated member adds its names, a field reference, its weight and the names of its nested annotations
+        long constants = (long) Math.max(o.members, o.hugeEvery > 0 ? o.hugeMembers : 0) * (5 + 2L * o.nested);
+        if (constants > 60_000) {
+            throw new IllegalArgumentException("Too many members or nested annotations per class for a constant pool");
+        }
+        return o;
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[i];
+    }
+
+    CorpusGenerator corpus() {
+        return new CorpusGenerator(classes, members, annotatedShare, nested, hugeEvery, hugeMembers, seed);
+    }
+
+    /**
+     * Everything a result depends on besides the machine and the code, so that a baseline is only
+     * compared with runs of the same kind.
+     */
+    String describe() {
+        return corpus().describe() + ",parallelism=" + parallelism + ",rewriteBackend=" + rewriteBackend;
+    }
+}
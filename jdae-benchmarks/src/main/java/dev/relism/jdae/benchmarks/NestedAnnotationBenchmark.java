@@ -0,0 +1,84 @@
+package dev.relism.jdae.benchmarks;
+
+import dev.relism.jdae.api.AnnotationDescriptor;
+import dev.relism.jdae.core.bytecode.AnnotationRewriter;
+import dev.relism.jdae.core.bytecode.ClassScanner;
+import dev.relism.jdae.core.bytecode.ExpanderCandidate;
+import dev.relism.jdae.core.bytecode.RewritePlan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every annotated member of a class has its {@code @Bench} replaced by the same nested tree, a
+ * {@code @Bench} holding an array of {@code @Tag}s, built anew per member as an expander does.
+ * {@code build} only builds the trees, {@code buildAndRewrite} also injects them with one plan.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NestedAnnotationBenchmark {
+    @Param({"64", "512"})
+    int members;
+
+    @Param({"4", "32"})
+    int tags;
+
+    private final AnnotationRewriter rewriter = new AnnotationRewriter();
+    private byte[] classBytes;
+    private List<String> owners;
+
+    @Setup
+    public void setUp() {
+        classBytes = SyntheticClasses.generate("bench/Nested", members, 1);
+        owners = new ClassScanner(Bench.class.getName()::equals).scan(classBytes).stream()
+                .map(ExpanderCandidate::getOwnerId)
+                .toList();
+    }
+
+    @Benchmark
+    public AnnotationDescriptor build() {
+        AnnotationDescriptor last = null;
+        for (int i = 0; i < owners.size(); i++) {
+            last = tree();
+        }
+        return last;
+    }
+
+    @Benchmark
+    public byte[] buildAndRewrite() {
+        RewritePlan plan = new RewritePlan();
+        for (String owner : owners) {
+            plan.add(owner, List.of(Bench.class.getName()), List.of(tree()));
+        }
+        return rewriter.rewrite(classBytes, plan);
+    }
+
+    private AnnotationDescriptor tree() {
+        AnnotationDescriptor[] nested = new AnnotationDescriptor[tags];
+        for (int t = 0; t < tags; t++) {
+            nested[t] = AnnotationDescriptor.builder(Tag.class.getName())
+                    .member("name", "tag" + t)
+                    .build();
+        }
+        return AnnotationDescriptor.builder(Bench.class.getName())
+                .member("value", "expanded")
+                .member("weight", 1)
+                .member("nested", nested)
+                .build();
+    }
+}
@@ -0,0 +1,108 @@
+package dev.relism.jdae.benchmarks;
+
+import dev.relism.jdae.core.expansion.ExpanderRegistry;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.lang.annotation.ElementType;
+import java.util.function.IntPredicate;
+
+/**
+ * Generates class files of a given size to run the benchmarks over, so that results do not depend
+ * on whatever classes happen to be on the classpath.
+ */
+final class SyntheticClasses {
+    static final String BENCH_DESC = Type.getDescriptor(Bench.class);
+    static final String TAG_DESC = Type.getDescriptor(Tag.class);
+
+    private SyntheticClasses() {
+    }
+
+    /**
+     * A class with {@code members} fields and as many methods, the class and every {@code annotatedEvery}-th
+     * member annotated with {@link Bench}. The other members carry {@link Deprecated}, which no expander handles.
+     */
+    static byte[] generate(String internalName, int members, int annotatedEvery) {
+        return generate(internalName, members, i -> i % annotatedEvery == 0, 0);
+    }
+
+    /**
+     * A class with {@code members} fields and as many methods, the class and the members matching
+     * {@code annotated} annotated with {@link Bench} holding {@code nested} {@link Tag}s each.
+     */
+    static byte[] generate(String internalName, int members, IntPredicate annotated, int nested) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V21, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, internalName, null, "java/lang/Object", null);
+        bench(cw.visitAnnotation(BENCH_DESC, true), "class", 0, ElementType.TYPE, nested);
+
+        MethodVisitor init = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        for (int i = 0; i < members; i++) {
+            boolean annotatedMember = annotated.test(i);
+            FieldVisitor fv = cw.visitField(Opcodes.ACC_PRIVATE, "f" + i, "I", null, null);
+            if (annotatedMember) {
+                bench(fv.visitAnnotation(BENCH_DESC, true), "f" + i, i, ElementType.FIELD, nested);
+            } else {
+                fv.visitAnnotation("Ljava/lang/Deprecated;", true).visitEnd();
+            }
+            fv.visitEnd();
+
+            MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "m" + i, "(I)I", null, null);
+            if (annotatedMember) {
+                bench(mv.visitAnnotation(BENCH_DESC, true), "m" + i, i, ElementType.METHOD, nested);
+            } else {
+                mv.visitAnnotation("Ljava/lang/Deprecated;", true).visitEnd();
+            }
+            mv.visitCode();
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitFieldInsn(Opcodes.GETFIELD, internalName, "f" + i, "I");
+            mv.visitVarInsn(Opcodes.ILOAD, 1);
+            mv.visitInsn(Opcodes.IADD);
+            mv.visitInsn(Opcodes.IRETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * A registry over the benchmark class loader with {@link Bench} registered up front.
+     */
+    static ExpanderRegistry registry() {
+        ExpanderRegistry registry = new ExpanderRegistry(SyntheticClasses.class.getClassLoader());
+        registry.register(Bench.class.getName(), BenchExpander.class);
+        return registry;
+    }
+
+    private static void bench(AnnotationVisitor av, String value, int weight, ElementType kind, int nested) {
+        av.visit("value", value);
+        av.visit("weight", weight);
+        AnnotationVisitor tags = av.visitArray("tags");
+        tags.visit(null, "generated");
+        tags.visit(null, value);
+        tags.visitEnd();
+        av.visitEnum("kind", Type.getDescriptor(ElementType.class), kind.name());
+        if (nested > 0) {
+            AnnotationVisitor array = av.visitArray("nested");
+            for (int n = 0; n < nested; n++) {
+                AnnotationVisitor tag = array.visitAnnotation(null, TAG_DESC);
+                tag.visit("name", value + "-" + n);
+                tag.visit("values", new int[]{n, weight});
+                tag.visitEnd();
+            }
+            array.visitEnd();
+        }
+        av.visitEnd();
+    }
+}
@@ -0,0 +1,13 @@
+package dev.relism.jdae.benchmarks;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Nested annotation of {@link Bench}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Tag {
+    String name();
+    int[] values() default {};
+}
@@ -0,0 +1,218 @@
+package dev.relism.jdae.benchmarks;
+
+import dev.relism.jdae.core.bytecode.BytecodeExpander;
+import dev.relism.jdae.core.bytecode.ClassScanner;
+import dev.relism.jdae.core.expansion.ExpanderRegistry;
+import dev.relism.jdae.core.expansion.ExpansionEngine;
+import dev.relism.jdae.core.expansion.ExpansionMemo;
+import dev.relism.jdae.core.incremental.ExpanderFingerprints;
+import dev.relism.jdae.core.incremental.ExpansionStateCache;
+import dev.relism.jdae.core.metrics.ExpansionMetrics;
+import dev.relism.jdae.core.pipeline.ClassDirectoryExpander;
+import dev.relism.jdae.core.pipeline.ClassDirectoryExpander.Outcome;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/**
+ * Runs the pipeline of the {@code expand-annotations} goal over a generated corpus: a fresh project
+ * class loader, registry and incremental state, the walk of the classes directory, expansion of every
+ * file on the configured number of workers and saving the state. Unlike the JMH benchmarks this
+ * includes file I/O and class loading.
+ * <p>
+ * Reports classes per second, peak heap and bytes allocated per class. With {@code --baseline} the
+ * run is compared with an earlier one, and the exit code is 1 if classes per second dropped by more
+ * than the threshold, which fails a build running the harness.
+ */
+public final class ThroughputHarness {
+
+    private ThroughputHarness() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        HarnessOptions options;
+        try {
+            options = HarnessOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(HarnessOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+        Path work = options.workDirectory != null
+                ? Files.createDirectories(options.workDirectory)
+                : Files.createTempDirectory("jdae-throughput");
+        CorpusGenerator corpus = options.corpus();
+        System.out.println("Corpus: " + corpus.describe());
+
+        Result[] results = new Result[options.iterations];
+        for (int run = 0; run < options.warmup + options.iterations; run++) {
+            boolean warmup = run < options.warmup;
+            Path runDirectory = work.resolve("run-" + run);
+            long corpusBytes = corpus.generate(runDirectory);
+            Result result;
+            try {
+                result = measure(options, runDirectory);
+            } finally {
+                delete(runDirectory);
+            }
+            if (result.expanded != corpus.getClasses()) {
+                throw new IllegalStateException("Expected every class to be expanded, but " + result.expanded
+                        + " of " + corpus.getClasses() + " were");
+            }
+            System.out.printf("%s %d: %.0f classes/s, %.1f MB peak heap, %s allocated per class (%.1f MB of classes)%n",
+                    warmup ? "Warmup" : "Run", warmup ? run + 1 : run - options.warmup + 1,
+                    result.classesPerSecond(corpus.getClasses()), result.peakHeapBytes / 1e6,
+                    result.allocatedBytes < 0 ? "n/a" : (result.allocatedBytes / corpus.getClasses()) + " bytes",
+                    corpusBytes / 1e6);
+            if (!warmup) {
+                results[run - options.warmup] = result;
+            }
+        }
+        if (options.workDirectory == null) {
+            delete(work);
+        }
+
+        // the median is less sensitive to a single slow run (GC, disk) than the mean
+        Arrays.sort(results, Comparator.comparingLong(r -> r.nanos));
+        Result median = results[results.length / 2];
+        Properties current = new Properties();
+        current.setProperty("settings", options.describe());
+        current.setProperty("classesPerSecond", String.format("%.0f", median.classesPerSecond(corpus.getClasses())));
+        current.setProperty("peakHeapBytes", Long.toString(median.peakHeapBytes));
+        current.setProperty("bytesPerClass", Long.toString(median.allocatedBytes < 0 ? -1 : median.allocatedBytes / corpus.getClasses()));
+        System.out.println("Median: " + current.getProperty("classesPerSecond") + " classes/s");
+
+        if (options.baseline != null) {
+            System.exit(compare(options, current));
+        }
+    }
+
+    private static Result measure(HarnessOptions options, Path classesDir) throws IOException {
+        Path stateDir = classesDir.resolve("../state-" + classesDir.getFileName()).normalize();
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(p -> p.getType() == MemoryType.HEAP)
+                .toList();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+
+        Outcome[] outcomes;
+        Thread thread = Thread.currentThread();
+        ClassLoader contextLoader = thread.getContextClassLoader();
+        try (URLClassLoader projectClassLoader = new URLClassLoader(new URL[]{classesDir.toUri().toURL()},
+                ThroughputHarness.class.getClassLoader())) {
+            thread.setContextClassLoader(projectClassLoader);
+            ExpanderRegistry registry = new ExpanderRegistry(projectClassLoader);
+            ClassScanner scanner = new ClassScanner(registry::hasExpander);
+            ExpansionStateCache state = ExpansionStateCache.load(stateDir, "removeOriginal=true");
+            // the goal's defaults: metrics and an in-memory memo
+            ExpansionEngine engine = new ExpansionEngine(registry, projectClassLoader, new BytecodeExpander(options.rewriteBackend),
+                    ExpansionMetrics.create(20), ExpansionMemo.inMemory(10_000));
+            ClassDirectoryExpander expander = new ClassDirectoryExpander(classesDir, registry, scanner, engine, state,
+                    new ExpanderFingerprints(projectClassLoader, registry), true);
+            List<Path> classFiles = ClassDirectoryExpander.allClassFiles(classesDir);
+            outcomes = expander.expandAll(classFiles, options.parallelism, projectClassLoader);
+            state.save();
+        } finally {
+            thread.setContextClassLoader(contextLoader);
+        }
+
+        long nanos = System.nanoTime() - start;
+        long allocatedAfter = allocatedBytes();
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        delete(stateDir);
+        int expanded = 0;
+        for (Outcome outcome : outcomes) {
+            if (outcome == Outcome.EXPANDED) expanded++;
+        }
+        return new Result(nanos, peak, allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore, expanded);
+    }
+
+    /**
+     * Returns the process exit code: 0 if the run is within the threshold of the baseline (or the
+     * baseline was recorded), 1 if it regressed and 2 if the baseline was recorded with other settings.
+     */
+    private static int compare(HarnessOptions options, Properties current) throws IOException {
+        if (!Files.exists(options.baseline)) {
+            store(options.baseline, current);
+            System.out.println("Recorded baseline " + options.baseline);
+            return 0;
+        }
+        Properties baseline = new Properties();
+        try (InputStream in = Files.newInputStream(options.baseline)) {
+            baseline.load(in);
+        }
+        if (!current.getProperty("settings").equals(baseline.getProperty("settings"))) {
+            System.err.println("Baseline " + options.baseline + " was recorded with other settings: "
+                    + baseline.getProperty("settings"));
+            return 2;
+        }
+        double expected = Double.parseDouble(baseline.getProperty("classesPerSecond"));
+        double actual = Double.parseDouble(current.getProperty("classesPerSecond"));
+        double change = (actual - expected) / expected;
+        System.out.printf("Baseline: %.0f classes/s, change %+.1f%% (threshold -%.1f%%)%n",
+                expected, change * 100, options.threshold * 100);
+        if (change < -options.threshold) {
+            System.err.println("Throughput regressed by more than the threshold");
+            return 1;
+        }
+        if (options.updateBaseline) {
+            store(options.baseline, current);
+            System.out.println("Updated baseline " + options.baseline);
+        }
+        return 0;
+    }
+
+    private static void store(Path file, Properties properties) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            properties.store(out, "JDAE throughput baseline, " + System.getProperty("java.vm.name")
+                    + " " + System.getProperty("java.version") + ", " + Runtime.getRuntime().availableProcessors() + " CPUs");
+        }
+    }
+
+    /**
+     * Bytes allocated by all threads so far, including the expansion workers, or -1 if the JVM does not tell.
+     */
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+            return threads.getTotalThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    private record Result(long nanos, long peakHeapBytes, long allocatedBytes, int expanded) {
+        double classesPerSecond(int classes) {
+            return classes / (nanos / 1e9);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package dev.relism.jdae.cli;
+
+import dev.relism.jdae.core.bytecode.RewriteBackend;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line options of {@link JDAECli}.
+ */
+final class CliOptions {
+    static final String USAGE = """
+            Usage: jdae --classes <dir> [options]
+              --classes <dir>          classes directory to expand in place
+              --classpath <path>       classpath of the project, separated by the platform path separator
+              --state <dir>            incremental state directory (default: <classes>/../jdae)
+              --keep-original          keep expander annotations whose @Expander has keepOriginal = false
+              --rewrite-backend <b>    ASM (default) or RAW
+              --no-index               scan every class file even if a candidate index exists
+              --watch                  keep running and expand class files as they change
+              --settle <ms>            how long to wait for more changes before expanding (default: 5)
+            """;
+
+    Path classesDirectory;
+    final List<Path> classpath = new ArrayList<>();
+    Path stateDirectory;
+    boolean removeOriginal = true;
+    RewriteBackend rewriteBackend = RewriteBackend.ASM;
+    boolean useCandidateIndex = true;
+    boolean watch;
+    long settleMillis = 5;
+
+    static CliOptions parse(String[] args) {
+        CliOptions o = new CliOptions();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--classes" -> o.classesDirectory = Paths.get(value(args, ++i, arg)).toAbsolutePath().normalize();
+                case "--classpath", "-cp" -> {
+                    for (String element : value(args, ++i, arg).split(File.pathSeparator)) {
+                        if (!element.isEmpty()) o.classpath.add(Paths.get(element));
+                    }
+                }
+                case "--state" -> o.stateDirectory = Paths.get(value(args, ++i, arg));
+                case "--keep-original" -> o.removeOriginal = false;
+                case "--rewrite-backend" -> o.rewriteBackend = RewriteBackend.valueOf(value(args, ++i, arg));
+                case "--no-index" -> o.useCandidateIndex = false;
+                case "--watch" -> o.watch = true;
+                case "--settle" -> o.settleMillis = Long.parseLong(value(args, ++i, arg));
+                default -> throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        if (o.classesDirectory == null) {
+            throw new IllegalArgumentException("--classes is required");
+        }
+        if (o.stateDirectory == null) {
+            Path parent = o.classesDirectory.getParent();
+            o.stateDirectory = (parent != null ? parent : o.classesDirectory).resolve("jdae");
+        }
+        return o;
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[i];
+    }
+
+    /**
+     * Settings key of the incremental state, the same as the Maven plugin's so both can share it.
+     */
+    String settingsKey() {
+        return "removeOriginal=" + removeOriginal;
+    }
+}
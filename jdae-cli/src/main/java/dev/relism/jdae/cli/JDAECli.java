@@ -0,0 +1,107 @@
+package dev.relism.jdae.cli;
+
+import dev.relism.jdae.core.incremental.ExpansionStateCache;
+import dev.relism.jdae.core.pipeline.ClassDirectoryExpander;
+import dev.relism.jdae.core.pipeline.ClassDirectoryExpander.Outcome;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Expands a classes directory outside of a build tool. With {@code --watch} it keeps running and
+ * expands class files as they are recompiled, keeping the project class loader, the registry and
+ * warm code between changes; see {@link WatchDaemon}.
+ */
+public final class JDAECli {
+
+    private JDAECli() {
+    }
+
+    public static void main(String[] args) {
+        CliOptions options;
+        try {
+            options = CliOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(CliOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+        if (!Files.isDirectory(options.classesDirectory)) {
+            System.err.println("Classes directory does not exist: " + options.classesDirectory);
+            System.exit(1);
+            return;
+        }
+        try {
+            if (options.watch) {
+                new WatchDaemon(options).run();
+            } else {
+                ExpansionStateCache state = ExpansionStateCache.load(options.stateDirectory, options.settingsKey());
+                try (ProjectSession session = new ProjectSession(options, state)) {
+                    log(expandAll(session, options, false));
+                }
+                state.save();
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("JDAE: expansion failed: " + e);
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Expands every candidate class file of the session's directory and returns the number of files per outcome.
+     */
+    static int[] expandAll(ProjectSession session, CliOptions options, boolean force) throws IOException {
+        ClassDirectoryExpander expander = session.expander;
+        Path classesDirectory = expander.getClassesDirectory();
+        // forced passes follow an expander change, which the candidate index does not reflect
+        List<Path> classFiles = options.useCandidateIndex && !force
+                ? ClassDirectoryExpander.indexedClassFiles(classesDirectory, expander.getRegistry()) : null;
+        boolean indexed = classFiles != null;
+        if (!indexed) {
+            classFiles = ClassDirectoryExpander.allClassFiles(classesDirectory);
+        }
+        Thread thread = Thread.currentThread();
+        ClassLoader contextLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(session.classLoader);
+        int[] counts = new int[Outcome.values().length];
+        // the daemon goes on past a file it cannot expand, typically one the compiler is still writing
+        BiConsumer<Path, Exception> onFailure = options.watch ? (file, e) -> logFailure(options, file, e) : null;
+        try {
+            // one pass, so that batch expanders see all classes expanded in it
+            for (Outcome outcome : expander.expandAll(classFiles, force, 1, session.classLoader, onFailure)) {
+                if (outcome != null) counts[outcome.ordinal()]++;
+            }
+            if (options.watch) {
+                session.warmUp(classFiles);
+            }
+        } finally {
+            thread.setContextClassLoader(contextLoader);
+        }
+        if (indexed) {
+            // classes outside the index were not looked at, keep what is known about them
+            Set<String> visited = new HashSet<>();
+            for (Path p : classFiles) {
+                visited.add(expander.stateKey(p));
+            }
+            expander.getState().carryOver(key -> !visited.contains(key) && Files.exists(classesDirectory.resolve(key)));
+        }
+        return counts;
+    }
+
+    static void logFailure(CliOptions options, Path classFile, Exception e) {
+        System.err.println("JDAE: failed to expand " + options.classesDirectory.relativize(classFile) + ": " + e);
+    }
+
+    static void log(int[] counts) {
+        System.out.println("JDAE: expanded " + counts[Outcome.EXPANDED.ordinal()] + " class files, skipped "
+                + counts[Outcome.SKIPPED.ordinal()] + ", up to date " + counts[Outcome.UP_TO_DATE.ordinal()]);
+    }
+}
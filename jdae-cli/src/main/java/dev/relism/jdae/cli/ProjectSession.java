@@ -0,0 +1,129 @@
+package dev.relism.jdae.cli;
+
+import dev.relism.jdae.core.bytecode.BytecodeExpander;
+import dev.relism.jdae.core.bytecode.ClassScanner;
+import dev.relism.jdae.core.expansion.ExpanderRegistry;
+import dev.relism.jdae.core.expansion.ExpansionEngine;
+import dev.relism.jdae.core.expansion.ExpansionMemo;
+import dev.relism.jdae.core.incremental.ExpanderFingerprints;
+import dev.relism.jdae.core.incremental.ExpansionStateCache;
+import dev.relism.jdae.core.metrics.ExpansionMetrics;
+import dev.relism.jdae.core.pipeline.ClassDirectoryExpander;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Project class loader, expander registry and engine, kept for as long as the expanders do not change.
+ */
+final class ProjectSession implements Closeable {
+    private static final long WARM_UP_NANOS = 300_000_000L;
+    private static final int MEMO_SIZE = 10_000;
+
+    final SessionClassLoader classLoader;
+    final ClassDirectoryExpander expander;
+    private final ClassScanner scanner;
+    private final ExpansionEngine engine;
+    private final ExpansionStateCache state;
+    private final long createdMillis = System.currentTimeMillis();
+
+    ProjectSession(CliOptions options, ExpansionStateCache state) {
+        this.classLoader = new SessionClassLoader(urls(options), JDAECli.class.getClassLoader());
+        ExpanderRegistry registry = new ExpanderRegistry(classLoader);
+        this.scanner = new ClassScanner(registry::hasExpander);
+        // the memo lives as long as the session, so it never outlives the expanders it was filled by
+        this.engine = new ExpansionEngine(registry, classLoader, new BytecodeExpander(options.rewriteBackend),
+                ExpansionMetrics.disabled(), ExpansionMemo.inMemory(MEMO_SIZE));
+        this.state = state;
+        this.expander = new ClassDirectoryExpander(options.classesDirectory, registry, scanner, engine,
+                state, new ExpanderFingerprints(classLoader, registry), options.removeOriginal);
+    }
+
+    /**
+     * Scans the original bytes of the given class files and runs the engine's own work on them
+     * repeatedly, without writing anything, so that the first real change is expanded by JIT-compiled
+     * code. Expanders are not called: they may have side effects or keep state across calls.
+     */
+    void warmUp(List<Path> classFiles) throws IOException {
+        List<byte[]> inputs = new ArrayList<>();
+        for (Path file : classFiles) {
+            try {
+                byte[] current = Files.readAllBytes(file);
+                byte[] input = state.originalInput(expander.stateKey(file), ExpansionStateCache.hash(current));
+                input = input != null ? input : current;
+                if (!scanner.scan(input).isEmpty()) {
+                    inputs.add(input);
+                    if (inputs.size() == 64) break;
+                }
+            } catch (IOException | RuntimeException e) {
+                // reported by the expansion; warming up does without the file
+            }
+        }
+        if (inputs.isEmpty()) return;
+        long end = System.nanoTime() + WARM_UP_NANOS;
+        while (System.nanoTime() < end) {
+            for (byte[] input : inputs) {
+                engine.warmUp(input, scanner.scan(input));
+            }
+        }
+    }
+
+    /**
+     * Whether the class defined by the given file was loaded by this session, e.g. because it is an
+     * expander, one of its helpers or an annotation type, and changed since. Such a class is stale.
+     */
+    boolean isStale(Path classFile) throws IOException {
+        String relative = expander.stateKey(classFile);
+        if (!relative.endsWith(".class") || !Files.isRegularFile(classFile)
+                || !classLoader.isLoaded(relative.substring(0, relative.length() - ".class".length()).replace('/', '.'))) {
+            return false;
+        }
+        // a file written before this session was created is what the session loaded, and
+        // a file written by an expansion has only new annotations
+        return Files.getLastModifiedTime(classFile).toMillis() >= createdMillis
+                && !state.isRecordedOutput(relative, ExpansionStateCache.hash(Files.readAllBytes(classFile)));
+    }
+
+    @Override
+    public void close() throws IOException {
+        classLoader.close();
+    }
+
+    private static URL[] urls(CliOptions options) {
+        List<URL> urls = new ArrayList<>();
+        try {
+            urls.add(options.classesDirectory.toUri().toURL());
+            for (Path element : options.classpath) {
+                URL url = element.toUri().toURL();
+                if (!urls.contains(url)) {
+                    urls.add(url);
+                }
+            }
+        } catch (MalformedURLException e) {
+            throw new UncheckedIOException(e);
+        }
+        return urls.toArray(new URL[0]);
+    }
+
+    static final class SessionClassLoader extends URLClassLoader {
+        static {
+            registerAsParallelCapable();
+        }
+
+        SessionClassLoader(URL[] urls, ClassLoader parent) {
+            super(urls, parent);
+        }
+
+        boolean isLoaded(String name) {
+            return findLoadedClass(name) != null;
+        }
+    }
+}
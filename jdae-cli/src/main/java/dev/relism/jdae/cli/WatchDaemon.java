@@ -0,0 +1,192 @@
+package dev.relism.jdae.cli;
+
+import dev.relism.jdae.core.incremental.ExpansionStateCache;
+import dev.relism.jdae.core.pipeline.ClassDirectoryExpander.Outcome;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a classes directory and expands class files as they are written, reusing one
+ * {@link ProjectSession} between changes. The session is replaced only when a class it loaded
+ * changes, which is the case for the project's own expanders, their helpers and annotation types;
+ * every class file is then expanded again with the new expanders. Jars on the classpath are not watched.
+ * <p>
+ * The files written by the daemon itself are recognised by the incremental state and left alone. When the
+ * file system drops events, every class file is looked at again in the next pass.
+ */
+final class WatchDaemon {
+    private final CliOptions options;
+    private final ExpansionStateCache state;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    /** Directories whose events were lost since the last pass. */
+    private final Set<Path> overflowed = new LinkedHashSet<>();
+    private ProjectSession session;
+
+    WatchDaemon(CliOptions options) {
+        this.options = options;
+        this.state = ExpansionStateCache.load(options.stateDirectory, options.settingsKey());
+    }
+
+    void run() throws IOException, InterruptedException {
+        try (WatchService service = options.classesDirectory.getFileSystem().newWatchService()) {
+            WatchService watcher = service;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    watcher.close();
+                } catch (IOException ignored) {
+                    // exiting anyway
+                }
+            }, "jdae-watch-shutdown"));
+            register(watcher, options.classesDirectory);
+
+            session = new ProjectSession(options, state);
+            JDAECli.log(JDAECli.expandAll(session, options, false));
+            commit();
+            System.out.println("JDAE: watching " + options.classesDirectory);
+
+            while (true) {
+                Set<Path> changed = new LinkedHashSet<>();
+                try {
+                    collect(watcher, watcher.take(), changed);
+                    // a compiler writes many files at once; wait until it is done
+                    WatchKey more;
+                    while ((more = watcher.poll(options.settleMillis, TimeUnit.MILLISECONDS)) != null) {
+                        collect(watcher, more, changed);
+                    }
+                } catch (ClosedWatchServiceException e) {
+                    break;
+                }
+                if (!changed.isEmpty() || !overflowed.isEmpty()) {
+                    expandChanged(watcher, changed);
+                }
+            }
+        } finally {
+            if (session != null) {
+                session.close();
+            }
+        }
+    }
+
+    private void expandChanged(WatchService watcher, Set<Path> changed) throws IOException {
+        boolean full = !overflowed.isEmpty();
+        for (Path dir : overflowed) {
+            // packages created meanwhile are not registered, and any of the files may have changed
+            register(watcher, dir);
+            try (var files = Files.walk(dir)) {
+                files.filter(p -> p.toString().endsWith(".class")).forEach(changed::add);
+            }
+        }
+        overflowed.clear();
+        boolean reload = false;
+        for (Path file : changed) {
+            if (session.isStale(file)) {
+                reload = true;
+                break;
+            }
+        }
+        if (reload) {
+            long start = System.nanoTime();
+            session.close();
+            session = new ProjectSession(options, state);
+            int[] counts = JDAECli.expandAll(session, options, true);
+            System.out.printf("JDAE: expanders changed, expanded %d class files again in %.1f ms%n",
+                    counts[Outcome.EXPANDED.ordinal()], (System.nanoTime() - start) / 1e6);
+            commit();
+            return;
+        }
+
+        if (full) {
+            long start = System.nanoTime();
+            int[] counts = JDAECli.expandAll(session, options, false);
+            System.out.printf("JDAE: events were lost, looked at every class file and expanded %d in %.1f ms%n",
+                    counts[Outcome.EXPANDED.ordinal()], (System.nanoTime() - start) / 1e6);
+            commit();
+            return;
+        }
+
+        List<Path> files = new ArrayList<>();
+        for (Path file : changed) {
+            if (Files.isRegularFile(file)) files.add(file);
+        }
+        Thread thread = Thread.currentThread();
+        ClassLoader contextLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(session.classLoader);
+        long start = System.nanoTime();
+        Outcome[] outcomes;
+        try {
+            // one pass, so that batch expanders see all changed classes together
+            // a file that fails was typically read while the compiler was still writing it; it changes again when done
+            outcomes = session.expander.expandAll(files, false, 1, session.classLoader,
+                    (file, e) -> JDAECli.logFailure(options, file, e));
+        } finally {
+            thread.setContextClassLoader(contextLoader);
+        }
+        List<String> expanded = new ArrayList<>();
+        for (int i = 0; i < outcomes.length; i++) {
+            if (outcomes[i] == Outcome.EXPANDED) {
+                expanded.add(options.classesDirectory.relativize(files.get(i)).toString());
+            }
+        }
+        if (!expanded.isEmpty()) {
+            System.out.printf("JDAE: expanded %s in %.2f ms%n", String.join(", ", expanded), (System.nanoTime() - start) / 1e6);
+        }
+        commit();
+    }
+
+    private void commit() throws IOException {
+        state.advance();
+        state.save();
+    }
+
+    private void collect(WatchService watcher, WatchKey key, Set<Path> changed) throws IOException {
+        Path dir = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (dir == null) continue;
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflowed.add(dir);
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                // a new package: watch it and pick up the files written before it was registered
+                register(watcher, path);
+                try (var files = Files.walk(path)) {
+                    files.filter(p -> p.toString().endsWith(".class")).forEach(changed::add);
+                }
+            } else if (path.toString().endsWith(".class")) {
+                changed.add(path);
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+    private void register(WatchService watcher, Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                directories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,145 @@
+package dev.relism.jdae.core.archive;
+
+import dev.relism.jdae.core.incremental.ExpanderFingerprints;
+import dev.relism.jdae.core.incremental.ExpansionStateCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Properties;
+
+/**
+ * Expanded copies of dependency jars, shared by all builds on the machine. Entries are stored under
+ * {@code groupId/artifactId/version/} and named after the hash of the original jar and of the expansion
+ * settings, so each version of a jar is expanded once.
+ * <p>
+ * Next to every entry a small properties file records the fingerprint of every annotation type used by the
+ * jar's classes, including those without an expander, so an entry is not reused by a build whose expanders
+ * for them differ. Jars in which nothing is expanded are recorded as well, without a copy.
+ */
+public final class ArtifactCache {
+    private static final String FORMAT_VERSION = "2";
+    private static final String VERSION_KEY = "jdae.cache.version";
+    private static final String SETTINGS_KEY = "jdae.cache.settings";
+    private static final String EXPANDED_KEY = "jdae.cache.expanded";
+    private static final String FINGERPRINT_PREFIX = "fingerprint.";
+
+    private final Path directory;
+    private final String settingsKey;
+
+    /**
+     * @param directory   root of the cache
+     * @param settingsKey describes the settings that change the expansion output, such as {@code removeOriginal}
+     */
+    public ArtifactCache(Path directory, String settingsKey) {
+        this.directory = directory;
+        this.settingsKey = settingsKey;
+    }
+
+    /**
+     * Returns the expanded copy of {@code jar}, expanding it on a cache miss. Returns {@code jar} itself
+     * when none of its classes is expanded.
+     */
+    public Path expand(String groupId, String artifactId, String version, Path jar,
+                       JarExpander expander, ExpanderFingerprints fingerprints) throws IOException {
+        Path dir = directory.resolve(safe(groupId)).resolve(safe(artifactId)).resolve(safe(version));
+        String key = hash(jar).substring(0, 32) + "-"
+                + ExpansionStateCache.hash(settingsKey.getBytes(StandardCharsets.UTF_8)).substring(0, 8);
+        Path cached = dir.resolve(key + ".jar");
+        Path info = dir.resolve(key + ".properties");
+
+        Properties previous = readInfo(info);
+        if (previous != null && isValid(previous, cached, fingerprints)) {
+            return Boolean.parseBoolean(previous.getProperty(EXPANDED_KEY)) ? cached : jar;
+        }
+
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, key, ".tmp");
+        try {
+            JarExpander.Result result = expander.expand(jar, tmp);
+            Properties current = new Properties();
+            current.setProperty(VERSION_KEY, FORMAT_VERSION);
+            current.setProperty(SETTINGS_KEY, settingsKey);
+            current.setProperty(EXPANDED_KEY, Boolean.toString(result.expanded() > 0));
+            for (String annotation : result.annotations()) {
+                current.setProperty(FINGERPRINT_PREFIX + annotation, fingerprints.of(annotation));
+            }
+            if (result.expanded() > 0) {
+                Files.move(tmp, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            // written last: another build only trusts the jar once its info file exists
+            writeInfo(info, current);
+            return result.expanded() > 0 ? cached : jar;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private boolean isValid(Properties info, Path cached, ExpanderFingerprints fingerprints) {
+        if (!FORMAT_VERSION.equals(info.getProperty(VERSION_KEY)) || !settingsKey.equals(info.getProperty(SETTINGS_KEY))) {
+            return false;
+        }
+        if (Boolean.parseBoolean(info.getProperty(EXPANDED_KEY)) && !Files.isRegularFile(cached)) {
+            return false;
+        }
+        for (String name : info.stringPropertyNames()) {
+            if (name.startsWith(FINGERPRINT_PREFIX)
+                    && !info.getProperty(name).equals(fingerprints.of(name.substring(FINGERPRINT_PREFIX.length())))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Properties readInfo(Path info) {
+        if (!Files.isRegularFile(info)) return null;
+        Properties p = new Properties();
+        try (InputStream in = Files.newInputStream(info)) {
+            p.load(in);
+            return p;
+        } catch (IOException | IllegalArgumentException e) {
+            // unreadable entries are expanded again
+            return null;
+        }
+    }
+
+    private static void writeInfo(Path info, Properties p) throws IOException {
+        Path tmp = Files.createTempFile(info.getParent(), info.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                p.store(out, null);
+            }
+            Files.move(tmp, info, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static String safe(String segment) {
+        return segment.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    /**
+     * SHA-256 of a file's content, in hex.
+     */
+    public static String hash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
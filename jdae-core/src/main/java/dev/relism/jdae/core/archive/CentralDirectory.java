@@ -0,0 +1,142 @@
+package dev.relism.jdae.core.archive;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Central directory of a ZIP archive, read directly from the end of the file. Only single-disk
+ * archives without ZIP64 records are supported; {@link #read} returns null for anything else.
+ */
+final class CentralDirectory {
+    static final int LOCAL_HEADER = 0x04034b50;
+    static final int CENTRAL_HEADER = 0x02014b50;
+    static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int EOCD_SIZE = 22;
+
+    final List<Entry> entries;
+    final byte[] comment;
+
+    private CentralDirectory(List<Entry> entries, byte[] comment) {
+        this.entries = entries;
+        this.comment = comment;
+    }
+
+    /**
+     * One central directory record; fields keep their on-disk values.
+     */
+    static final class Entry {
+        int versionMadeBy;
+        int versionNeeded;
+        int flags;
+        int method;
+        int time;
+        int date;
+        int crc;
+        long compressedSize;
+        long size;
+        byte[] name;
+        byte[] extra;
+        byte[] comment;
+        int internalAttributes;
+        int externalAttributes;
+        long localHeaderOffset;
+
+        boolean isClass() {
+            int n = name.length;
+            return n > 6 && name[n - 6] == '.' && name[n - 5] == 'c' && name[n - 4] == 'l'
+                    && name[n - 3] == 'a' && name[n - 2] == 's' && name[n - 1] == 's';
+        }
+
+        boolean hasDataDescriptor() {
+            return (flags & 0x0008) != 0;
+        }
+    }
+
+    static CentralDirectory read(FileChannel ch) throws IOException {
+        long fileSize = ch.size();
+        if (fileSize < EOCD_SIZE) return null;
+        int tailSize = (int) Math.min(fileSize, EOCD_SIZE + 0xFFFF);
+        ByteBuffer tail = readFully(ch, fileSize - tailSize, tailSize);
+        int eocd = -1;
+        for (int i = tailSize - EOCD_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY && i + EOCD_SIZE + u2(tail, i + 20) == tailSize) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) return null;
+        if (eocd >= 20 && tail.getInt(eocd - 20) == ZIP64_LOCATOR) return null;
+        int disk = u2(tail, eocd + 4);
+        int cdDisk = u2(tail, eocd + 6);
+        int count = u2(tail, eocd + 10);
+        long cdSize = u4(tail, eocd + 12);
+        long cdOffset = u4(tail, eocd + 16);
+        if (disk != 0 || cdDisk != 0 || count != u2(tail, eocd + 8) || count == 0xFFFF
+                || cdSize == 0xFFFFFFFFL || cdOffset == 0xFFFFFFFFL || cdOffset + cdSize > fileSize) {
+            return null;
+        }
+        byte[] comment = new byte[u2(tail, eocd + 20)];
+        tail.get(eocd + EOCD_SIZE, comment);
+
+        ByteBuffer cd = readFully(ch, cdOffset, (int) cdSize);
+        List<Entry> entries = new ArrayList<>(count);
+        int off = 0;
+        for (int i = 0; i < count; i++) {
+            if (off + 46 > cdSize || cd.getInt(off) != CENTRAL_HEADER) return null;
+            Entry e = new Entry();
+            e.versionMadeBy = u2(cd, off + 4);
+            e.versionNeeded = u2(cd, off + 6);
+            e.flags = u2(cd, off + 8);
+            e.method = u2(cd, off + 10);
+            e.time = u2(cd, off + 12);
+            e.date = u2(cd, off + 14);
+            e.crc = cd.getInt(off + 16);
+            e.compressedSize = u4(cd, off + 20);
+            e.size = u4(cd, off + 24);
+            int nameLength = u2(cd, off + 28);
+            int extraLength = u2(cd, off + 30);
+            int commentLength = u2(cd, off + 32);
+            if (u2(cd, off + 34) != 0) return null;
+            e.internalAttributes = u2(cd, off + 36);
+            e.externalAttributes = cd.getInt(off + 38);
+            e.localHeaderOffset = u4(cd, off + 42);
+            if (e.compressedSize == 0xFFFFFFFFL || e.size == 0xFFFFFFFFL || e.localHeaderOffset == 0xFFFFFFFFL) return null;
+            off += 46;
+            if (off + nameLength + extraLength + commentLength > cdSize) return null;
+            e.name = new byte[nameLength];
+            cd.get(off, e.name);
+            off += nameLength;
+            e.extra = new byte[extraLength];
+            cd.get(off, e.extra);
+            off += extraLength;
+            e.comment = new byte[commentLength];
+            cd.get(off, e.comment);
+            off += commentLength;
+            entries.add(e);
+        }
+        return new CentralDirectory(entries, comment);
+    }
+
+    static ByteBuffer readFully(FileChannel ch, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, position + buf.position()) < 0) {
+                throw new IOException("Unexpected end of archive");
+            }
+        }
+        return buf.flip();
+    }
+
+    static int u2(ByteBuffer b, int off) {
+        return b.getShort(off) & 0xFFFF;
+    }
+
+    static long u4(ByteBuffer b, int off) {
+        return b.getInt(off) & 0xFFFFFFFFL;
+    }
+}
@@ -0,0 +1,336 @@
+package dev.relism.jdae.core.archive;
+
+import dev.relism.jdae.core.bytecode.AnnotationPrefilter;
+import dev.relism.jdae.core.bytecode.ClassScanner;
+import dev.relism.jdae.core.bytecode.ExpanderCandidate;
+import dev.relism.jdae.core.expansion.ExpansionEngine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Expands the class files of a JAR into a new JAR. Entries keep their order, timestamps and
+ * attributes; every entry that is not rewritten is copied as its raw compressed bytes, so only the
+ * expanded classes are inflated and deflated again.
+ * <p>
+ * Archives with ZIP64 records or spanning several disks are rewritten through {@link ZipFile} instead,
+ * which recompresses every entry. Jar signatures are not updated.
+ */
+public final class JarExpander {
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+
+    private final ClassScanner scanner;
+    private final ExpansionEngine engine;
+    private final boolean removeOriginal;
+
+    public JarExpander(ClassScanner scanner, ExpansionEngine engine, boolean removeOriginal) {
+        this.scanner = scanner;
+        this.engine = engine;
+        this.removeOriginal = removeOriginal;
+    }
+
+    /**
+     * @param entries     entries in the archive
+     * @param classes     class entries that were scanned
+     * @param expanded    class entries that were rewritten
+     * @param annotations annotation types used by the scanned classes, whether or not they have an expander
+     */
+    public record Result(int entries, int classes, int expanded, Set<String> annotations) {
+    }
+
+    /**
+     * Expands {@code input} into {@code output}, which may be the same file. The output is written
+     * to a temporary file next to it and moved into place when complete.
+     */
+    public Result expand(Path input, Path output) throws IOException {
+        Path parent = output.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, output.getFileName().toString(), ".tmp");
+        try {
+            Result result;
+            try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+                CentralDirectory cd = CentralDirectory.read(in);
+                if (cd != null) {
+                    try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                        result = copy(in, cd, out);
+                    }
+                } else {
+                    result = null;
+                }
+            }
+            if (result == null) {
+                result = copyWithZipFile(input, tmp);
+            }
+            copyPermissions(input, tmp);
+            Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return result;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void copyPermissions(Path from, Path to) throws IOException {
+        try {
+            Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+        } catch (UnsupportedOperationException e) {
+            // not a POSIX file system, the temporary file keeps the default permissions
+        }
+    }
+
+    private Result copy(FileChannel in, CentralDirectory cd, FileChannel out) throws IOException {
+        List<CentralDirectory.Entry> entries = cd.entries;
+        long[] offsets = new long[entries.size()];
+        int classes = 0;
+        int expanded = 0;
+        Set<String> annotations = new TreeSet<>();
+        for (int i = 0; i < entries.size(); i++) {
+            CentralDirectory.Entry e = entries.get(i);
+            offsets[i] = out.position();
+            ByteBuffer local = CentralDirectory.readFully(in, e.localHeaderOffset, LOCAL_HEADER_SIZE);
+            if (local.getInt(0) != CentralDirectory.LOCAL_HEADER) {
+                throw new IOException("Corrupt local header for " + name(e));
+            }
+            int localNameLength = CentralDirectory.u2(local, 26);
+            int localExtraLength = CentralDirectory.u2(local, 28);
+            long dataOffset = e.localHeaderOffset + LOCAL_HEADER_SIZE + localNameLength + localExtraLength;
+
+            byte[] rewritten = null;
+            if (e.isClass() && (e.method == ZipEntry.STORED || e.method == ZipEntry.DEFLATED)) {
+                classes++;
+                rewritten = expandClass(in, e, dataOffset, annotations);
+            }
+
+            ByteBuffer localExtra = CentralDirectory.readFully(in, e.localHeaderOffset + LOCAL_HEADER_SIZE + localNameLength, localExtraLength);
+            if (rewritten != null) {
+                expanded++;
+                CRC32 crc = new CRC32();
+                crc.update(rewritten);
+                byte[] compressed = deflate(rewritten);
+                e.method = ZipEntry.DEFLATED;
+                e.versionNeeded = Math.max(e.versionNeeded, 20);
+                e.flags &= ~0x0008;
+                e.crc = (int) crc.getValue();
+                e.compressedSize = compressed.length;
+                e.size = rewritten.length;
+                writeLocalHeader(out, e, localExtra);
+                writeFully(out, ByteBuffer.wrap(compressed));
+            } else if (!e.hasDataDescriptor()) {
+                // header and data are copied together, untouched
+                transfer(in, e.localHeaderOffset, dataOffset - e.localHeaderOffset + e.compressedSize, out);
+            } else {
+                // sizes are known from the central directory, so the data descriptor is dropped
+                e.flags &= ~0x0008;
+                writeLocalHeader(out, e, localExtra);
+                transfer(in, dataOffset, e.compressedSize, out);
+            }
+            if (out.position() > 0xFFFFFFFFL) {
+                return null;
+            }
+        }
+
+        long cdOffset = out.position();
+        for (int i = 0; i < entries.size(); i++) {
+            writeCentralHeader(out, entries.get(i), offsets[i]);
+        }
+        long cdSize = out.position() - cdOffset;
+        if (cdOffset + cdSize > 0xFFFFFFFFL) {
+            return null;
+        }
+        ByteBuffer eocd = buffer(22 + cd.comment.length);
+        eocd.putInt(CentralDirectory.END_OF_CENTRAL_DIRECTORY)
+                .putShort((short) 0).putShort((short) 0)
+                .putShort((short) entries.size()).putShort((short) entries.size())
+                .putInt((int) cdSize).putInt((int) cdOffset)
+                .putShort((short) cd.comment.length).put(cd.comment);
+        writeFully(out, eocd.flip());
+        return new Result(entries.size(), classes, expanded, annotations);
+    }
+
+    /**
+     * Returns the expanded class, or null if it is unchanged.
+     */
+    private byte[] expandClass(FileChannel in, CentralDirectory.Entry e, long dataOffset, Set<String> annotations) throws IOException {
+        if (e.compressedSize > Integer.MAX_VALUE || e.size > Integer.MAX_VALUE) return null;
+        ByteBuffer data = CentralDirectory.readFully(in, dataOffset, (int) e.compressedSize);
+        byte[] bytes = e.method == ZipEntry.STORED ? data.array() : inflate(data.array(), (int) e.size, e);
+        annotations.addAll(AnnotationPrefilter.annotationTypes(bytes));
+        List<ExpanderCandidate> candidates = scanner.scan(bytes);
+        if (candidates.isEmpty()) return null;
+        byte[] modified = engine.expand(bytes, candidates, removeOriginal);
+        return modified == bytes || Arrays.equals(modified, bytes) ? null : modified;
+    }
+
+    private static byte[] inflate(byte[] compressed, int size, CentralDirectory.Entry e) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            byte[] out = new byte[size];
+            int n = 0;
+            while (n < size && !inflater.finished()) {
+                int read = inflater.inflate(out, n, size - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                n += read;
+            }
+            if (n != size) {
+                throw new IOException("Corrupt deflated data for " + name(e));
+            }
+            return out;
+        } catch (DataFormatException ex) {
+            throw new IOException("Corrupt deflated data for " + name(e), ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+            byte[] buf = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeLocalHeader(FileChannel out, CentralDirectory.Entry e, ByteBuffer localExtra) throws IOException {
+        ByteBuffer b = buffer(LOCAL_HEADER_SIZE + e.name.length + localExtra.remaining());
+        b.putInt(CentralDirectory.LOCAL_HEADER)
+                .putShort((short) e.versionNeeded)
+                .putShort((short) e.flags)
+                .putShort((short) e.method)
+                .putShort((short) e.time)
+                .putShort((short) e.date)
+                .putInt(e.crc)
+                .putInt((int) e.compressedSize)
+                .putInt((int) e.size)
+                .putShort((short) e.name.length)
+                .putShort((short) localExtra.remaining())
+                .put(e.name)
+                .put(localExtra);
+        writeFully(out, b.flip());
+    }
+
+    private static void writeCentralHeader(FileChannel out, CentralDirectory.Entry e, long offset) throws IOException {
+        ByteBuffer b = buffer(CENTRAL_HEADER_SIZE + e.name.length + e.extra.length + e.comment.length);
+        b.putInt(CentralDirectory.CENTRAL_HEADER)
+                .putShort((short) e.versionMadeBy)
+                .putShort((short) e.versionNeeded)
+                .putShort((short) e.flags)
+                .putShort((short) e.method)
+                .putShort((short) e.time)
+                .putShort((short) e.date)
+                .putInt(e.crc)
+                .putInt((int) e.compressedSize)
+                .putInt((int) e.size)
+                .putShort((short) e.name.length)
+                .putShort((short) e.extra.length)
+                .putShort((short) e.comment.length)
+                .putShort((short) 0)
+                .putShort((short) e.internalAttributes)
+                .putInt(e.externalAttributes)
+                .putInt((int) offset)
+                .put(e.name)
+                .put(e.extra)
+                .put(e.comment);
+        writeFully(out, b.flip());
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) {
+            out.write(b);
+        }
+    }
+
+    private static void transfer(FileChannel in, long position, long count, FileChannel out) throws IOException {
+        while (count > 0) {
+            long n = in.transferTo(position, count, out);
+            if (n <= 0) {
+                throw new IOException("Unexpected end of archive");
+            }
+            position += n;
+            count -= n;
+        }
+    }
+
+    private static String name(CentralDirectory.Entry e) {
+        return new String(e.name, (e.flags & 0x0800) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Fallback for archives the raw copy does not support; every entry is recompressed.
+     */
+    private Result copyWithZipFile(Path input, Path output) throws IOException {
+        int count = 0;
+        int classes = 0;
+        int expanded = 0;
+        Set<String> annotations = new TreeSet<>();
+        try (ZipFile zip = new ZipFile(input.toFile());
+             ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(output))) {
+            out.setComment(zip.getComment());
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                count++;
+                byte[] data;
+                try (InputStream in = zip.getInputStream(entry)) {
+                    data = in.readAllBytes();
+                }
+                ZipEntry copy = new ZipEntry(entry);
+                if (entry.getName().endsWith(".class") && !entry.isDirectory()) {
+                    classes++;
+                    annotations.addAll(AnnotationPrefilter.annotationTypes(data));
+                    List<ExpanderCandidate> candidates = scanner.scan(data);
+                    if (!candidates.isEmpty()) {
+                        byte[] modified = engine.expand(data, candidates, removeOriginal);
+                        if (modified != data && !Arrays.equals(modified, data)) {
+                            expanded++;
+                            data = modified;
+                            copy.setMethod(ZipEntry.DEFLATED);
+                            copy.setSize(data.length);
+                            CRC32 crc = new CRC32();
+                            crc.update(data);
+                            copy.setCrc(crc.getValue());
+                        }
+                    }
+                }
+                copy.setCompressedSize(-1);
+                out.putNextEntry(copy);
+                out.write(data);
+                out.closeEntry();
+            }
+        }
+        return new Result(count, classes, expanded, annotations);
+    }
+}
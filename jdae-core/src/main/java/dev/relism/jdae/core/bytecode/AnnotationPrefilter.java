@@ -0,0 +1,169 @@
+package dev.relism.jdae.core.bytecode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Cheap check run before a class is parsed. It reads the constant pool and the attribute headers
+ * of the class file, and reports whether any class, field or method annotation has an expander.
+ * Method bodies and other attributes are skipped by length; no ASM tree is built.
+ * <p>
+ * Classes whose constant pool has no annotation attribute name are rejected without looking
+ * further. Decisions per annotation descriptor are cached, so repeated non-expander annotations
+ * such as {@code @Deprecated} cost a map lookup. Thread-safe.
+ */
+public final class AnnotationPrefilter {
+    private static final byte[] VISIBLE = "RuntimeVisibleAnnotations".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INVISIBLE = "RuntimeInvisibleAnnotations".getBytes(StandardCharsets.US_ASCII);
+
+    private final Predicate<String> isExpanderAnnotation;
+    private final Map<String, Boolean> byDescriptor = new ConcurrentHashMap<>();
+
+    /**
+     * @param isExpanderAnnotation tells whether an annotation class name (e.g. {@code com.example.MyAnnotation})
+     *                             has an expander
+     */
+    public AnnotationPrefilter(Predicate<String> isExpanderAnnotation) {
+        this.isExpanderAnnotation = isExpanderAnnotation;
+    }
+
+    /**
+     * Returns false only if the class certainly has no class, field or method annotation with an
+     * expander. Malformed input returns true, leaving the error to the real parser.
+     */
+    public boolean mayContainExpanders(byte[] classBytes) {
+        try {
+            RawClassFile cf = new RawClassFile(classBytes);
+            int visible = cf.findUtf8(VISIBLE);
+            int invisible = cf.findUtf8(INVISIBLE);
+            if (visible == 0 && invisible == 0) {
+                return false;
+            }
+
+            int off = cf.cpEnd + 6;
+            off += 2 + 2 * cf.u2(off);                        // interfaces
+            for (int member = 0; member < 2; member++) {       // fields, then methods
+                int count = cf.u2(off);
+                off += 2;
+                for (int i = 0; i < count; i++) {
+                    off += 6;
+                    int attributes = cf.u2(off);
+                    off += 2;
+                    for (int j = 0; j < attributes; j++) {
+                        if (isExpanderAttribute(cf, off, visible, invisible)) return true;
+                        off += 6 + cf.u4(off + 2);
+                    }
+                }
+            }
+            int attributes = cf.u2(off);
+            off += 2;
+            for (int j = 0; j < attributes; j++) {
+                if (isExpanderAttribute(cf, off, visible, invisible)) return true;
+                off += 6 + cf.u4(off + 2);
+            }
+            return false;
+        } catch (RuntimeException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Returns false only if the class certainly has no runtime-visible or invisible annotations at all.
+     * Unlike {@link #mayContainExpanders} it needs no registry, so it can run before one is created.
+     */
+    public static boolean hasAnnotations(byte[] classBytes) {
+        try {
+            RawClassFile cf = new RawClassFile(classBytes);
+            return cf.findUtf8(VISIBLE) != 0 || cf.findUtf8(INVISIBLE) != 0;
+        } catch (RuntimeException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Binary names of the annotation types on the class, its fields and its methods, whether or not they
+     * have an expander. Annotations nested in member values and parameter annotations are not included.
+     * Malformed input returns the types found before the error.
+     */
+    public static Set<String> annotationTypes(byte[] classBytes) {
+        Set<String> types = new TreeSet<>();
+        try {
+            RawClassFile cf = new RawClassFile(classBytes);
+            int visible = cf.findUtf8(VISIBLE);
+            int invisible = cf.findUtf8(INVISIBLE);
+            if (visible == 0 && invisible == 0) {
+                return types;
+            }
+
+            int off = cf.cpEnd + 6;
+            off += 2 + 2 * cf.u2(off);                        // interfaces
+            for (int member = 0; member < 2; member++) {       // fields, then methods
+                int count = cf.u2(off);
+                off += 2;
+                for (int i = 0; i < count; i++) {
+                    off = collectAnnotationTypes(cf, off + 6, visible, invisible, types);
+                }
+            }
+            collectAnnotationTypes(cf, off, visible, invisible, types);
+        } catch (RuntimeException e) {
+            // keep what was read so far; the real parser reports the error
+        }
+        return types;
+    }
+
+    /**
+     * Adds the annotation types of the attribute table at {@code off} and returns the offset after it.
+     */
+    private static int collectAnnotationTypes(RawClassFile cf, int off, int visible, int invisible, Set<String> types) {
+        int attributes = cf.u2(off);
+        off += 2;
+        for (int j = 0; j < attributes; j++) {
+            int name = cf.u2(off);
+            if (name == visible || name == invisible) {
+                int count = cf.u2(off + 6);
+                int pos = off + 8;
+                for (int i = 0; i < count; i++) {
+                    String desc = cf.utf8(cf.u2(pos));
+                    if (desc.length() > 2 && desc.charAt(0) == 'L') {
+                        types.add(desc.substring(1, desc.length() - 1).replace('/', '.'));
+                    }
+                    pos = cf.skipAnnotation(pos);
+                }
+            }
+            off += 6 + cf.u4(off + 2);
+        }
+        return off;
+    }
+
+    private boolean isExpanderAttribute(RawClassFile cf, int off, int visible, int invisible) {
+        int name = cf.u2(off);
+        if (name != visible && name != invisible) {
+            return false;
+        }
+        int count = cf.u2(off + 6);
+        int pos = off + 8;
+        for (int i = 0; i < count; i++) {
+            if (isExpanderDescriptor(cf.utf8(cf.u2(pos)))) {
+                return true;
+            }
+            pos = cf.skipAnnotation(pos);
+        }
+        return false;
+    }
+
+    /**
+     * Cached check of a single annotation descriptor (e.g. {@code Lcom/example/MyAnnotation;}).
+     */
+    public boolean isExpanderDescriptor(String desc) {
+        Boolean known = byDescriptor.get(desc);
+        if (known != null) return known;
+        boolean result = desc.length() > 2 && desc.charAt(0) == 'L'
+                && isExpanderAnnotation.test(desc.substring(1, desc.length() - 1).replace('/', '.'));
+        byDescriptor.put(desc, result);
+        return result;
+    }
+}
@@ -2,165 +2,213 @@
 package dev.relism.jdae.core.bytecode;
 
 import dev.relism.jdae.api.AnnotationDescriptor;
+import dev.relism.jdae.api.AnnotationValue;
+import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.RecordComponentVisitor;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.AnnotationNode;
-import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.tree.FieldNode;
-import org.objectweb.asm.tree.MethodNode;
 
-import java.lang.reflect.Array;
-import java.util.Iterator;
-import java.util.List;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Low-level ASM logic to remove and add annotations on class/members.
  */
 public class AnnotationRewriter {
+    private static final int MAX_CACHED_NODES = 4096;
 
-    public byte[] rewrite(byte[] original, String ownerId, String sourceAnnotationClassName,
-                          boolean removeOriginal, List<AnnotationDescriptor> toInject) {
-        ClassNode cn = new ClassNode(Opcodes.ASM9);
-        new ClassReader(original).accept(cn, ClassReader.SKIP_FRAMES);
-
-        if (ownerId.equals(cn.name)) {
-            if (removeOriginal) {
-                removeAnnotation(cn.visibleAnnotations, sourceAnnotationClassName);
-                removeAnnotation(cn.invisibleAnnotations, sourceAnnotationClassName);
-            }
-            if (cn.visibleAnnotations == null) cn.visibleAnnotations = new java.util.ArrayList<>();
-            injectAnnotations(cn.visibleAnnotations, toInject);
-        } else {
-            rewriteMembers(cn, ownerId, sourceAnnotationClassName, removeOriginal, toInject);
+    // converted once per distinct descriptor; a node is only read when it is visited, so it can be
+    // shared by all classes and threads. Guarded by itself, least recently used first out
+    private final Map<AnnotationDescriptor, AnnotationNode> nodes = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<AnnotationDescriptor, AnnotationNode> eldest) {
+            return size() > MAX_CACHED_NODES;
         }
+    };
 
-        ClassWriter cw = new ContextClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
-        cn.accept(cw);
-        return cw.toByteArray();
+    public byte[] rewrite(byte[] original, String ownerId, String sourceAnnotationClassName,
+                          boolean removeOriginal, List<AnnotationDescriptor> toInject) {
+        List<String> removals = removeOriginal ? List.of(sourceAnnotationClassName) : List.of();
+        return rewrite(original, new RewritePlan().add(ownerId, removals, toInject));
     }
 
     public byte[] rewrite(byte[] original, String ownerId, List<String> sourceAnnotationClassNames,
                           boolean removeOriginal, List<AnnotationDescriptor> toInject) {
-        boolean anyRemoval = removeOriginal && sourceAnnotationClassNames != null && !sourceAnnotationClassNames.isEmpty();
-        boolean anyInjection = toInject != null && !toInject.isEmpty();
-        if (!anyRemoval && !anyInjection) {
+        List<String> removals = removeOriginal && sourceAnnotationClassNames != null ? sourceAnnotationClassNames : List.of();
+        return rewrite(original, new RewritePlan().add(ownerId, removals, toInject));
+    }
+
+    /**
+     * Applies the changes of all owners in the plan with a single parse and a single write.
+     * <p>
+     * Annotation expansion never touches code, so the class is streamed from the reader to a writer
+     * that shares its constant pool: methods without changes are copied as raw bytes, and the
+     * original stack map frames are kept. No frame is computed and no class is loaded.
+     */
+    public byte[] rewrite(byte[] original, RewritePlan plan) {
+        if (plan.isEmpty()) {
             return original; // no-op, avoid unnecessary writes
         }
 
-        ClassNode cn = new ClassNode(Opcodes.ASM9);
-        new ClassReader(original).accept(cn, ClassReader.SKIP_FRAMES);
+        ClassReader reader = new ClassReader(original);
+        ClassWriter writer = new ClassWriter(reader, 0);
+        reader.accept(new PlanApplier(writer, plan), 0);
+        return writer.toByteArray();
+    }
 
-        if (ownerId.equals(cn.name)) {
-            if (removeOriginal) {
-                for (String s : sourceAnnotationClassNames) {
-                    removeAnnotation(cn.visibleAnnotations, s);
-                    removeAnnotation(cn.invisibleAnnotations, s);
-                }
-            }
-            if (cn.visibleAnnotations == null) cn.visibleAnnotations = new java.util.ArrayList<>();
-            injectAnnotations(cn.visibleAnnotations, toInject);
-        } else {
-            rewriteMembers(cn, ownerId, sourceAnnotationClassNames, removeOriginal, toInject);
+    private void inject(RewritePlan.OwnerRewrite r, AnnotationSink sink) {
+        for (AnnotationDescriptor ad : r.injections) {
+            AnnotationNode an = toAnnotationNode(ad);
+            an.accept(sink.visitAnnotation(an.desc, true));
         }
+    }
 
-        ClassWriter cw = new ContextClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
-        cn.accept(cw);
-        return cw.toByteArray();
+    @FunctionalInterface
+    private interface AnnotationSink {
+        AnnotationVisitor visitAnnotation(String descriptor, boolean visible);
     }
 
-    private void rewriteMembers(ClassNode cn, String ownerId, String sourceAnno, boolean removeOriginal,
-                                List<AnnotationDescriptor> toInject) {
-        if (cn.fields != null) {
-            for (FieldNode fn : cn.fields) {
-                String fid = cn.name + "#" + fn.name;
-                if (fid.equals(ownerId)) {
-                    if (removeOriginal) {
-                        removeAnnotation(fn.visibleAnnotations, sourceAnno);
-                        removeAnnotation(fn.invisibleAnnotations, sourceAnno);
-                    }
-                    if (fn.visibleAnnotations == null) fn.visibleAnnotations = new java.util.ArrayList<>();
-                    injectAnnotations(fn.visibleAnnotations, toInject);
-                }
-            }
+    /**
+     * Removes and injects annotations on the owners of a plan while the class streams through.
+     * Injected annotations are emitted where the visitor contract expects annotations: before the
+     * first member for the class, and before the code (or the end) for a method.
+     */
+    private final class PlanApplier extends ClassVisitor {
+        private final RewritePlan plan;
+        private final RewritePlan.OwnerRewrite classRewrite;
+        private boolean classInjected;
+
+        PlanApplier(ClassVisitor cv, RewritePlan plan) {
+            super(Opcodes.ASM9, cv);
+            this.plan = plan;
+            this.classRewrite = plan.forClass();
         }
-        if (cn.methods != null) {
-            for (MethodNode mn : cn.methods) {
-                String mid = cn.name + "#" + mn.name + mn.desc;
-                if (mid.equals(ownerId)) {
-                    if (removeOriginal) {
-                        removeAnnotation(mn.visibleAnnotations, sourceAnno);
-                        removeAnnotation(mn.invisibleAnnotations, sourceAnno);
-                    }
-                    if (mn.visibleAnnotations == null) mn.visibleAnnotations = new java.util.ArrayList<>();
-                    injectAnnotations(mn.visibleAnnotations, toInject);
-                }
+
+        private void injectClassAnnotations() {
+            if (classRewrite != null && !classInjected) {
+                classInjected = true;
+                inject(classRewrite, super::visitAnnotation);
             }
         }
-    }
 
-    private void rewriteMembers(ClassNode cn, String ownerId, List<String> sourceAnnos, boolean removeOriginal,
-                                List<AnnotationDescriptor> toInject) {
-        if (cn.fields != null) {
-            for (FieldNode fn : cn.fields) {
-                String fid = cn.name + "#" + fn.name;
-                if (fid.equals(ownerId)) {
-                    if (removeOriginal) {
-                        for (String s : sourceAnnos) {
-                            removeAnnotation(fn.visibleAnnotations, s);
-                            removeAnnotation(fn.invisibleAnnotations, s);
-                        }
-                    }
-                    if (fn.visibleAnnotations == null) fn.visibleAnnotations = new java.util.ArrayList<>();
-                    injectAnnotations(fn.visibleAnnotations, toInject);
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            if (classRewrite != null && classRewrite.removes(descriptor)) return null;
+            return super.visitAnnotation(descriptor, visible);
+        }
+
+        @Override
+        public void visitNestMember(String nestMember) {
+            injectClassAnnotations();
+            super.visitNestMember(nestMember);
+        }
+
+        @Override
+        public void visitPermittedSubclass(String permittedSubclass) {
+            injectClassAnnotations();
+            super.visitPermittedSubclass(permittedSubclass);
+        }
+
+        @Override
+        public void visitInnerClass(String name, String outerName, String innerName, int access) {
+            injectClassAnnotations();
+            super.visitInnerClass(name, outerName, innerName, access);
+        }
+
+        @Override
+        public RecordComponentVisitor visitRecordComponent(String name, String descriptor, String signature) {
+            injectClassAnnotations();
+            return super.visitRecordComponent(name, descriptor, signature);
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+            injectClassAnnotations();
+            FieldVisitor fv = super.visitField(access, name, descriptor, signature, value);
+            RewritePlan.OwnerRewrite r = plan.forField(name);
+            return r == null ? fv : new FieldVisitor(Opcodes.ASM9, fv) {
+                @Override
+                public AnnotationVisitor visitAnnotation(String annotationDescriptor, boolean visible) {
+                    if (r.removes(annotationDescriptor)) return null;
+                    return super.visitAnnotation(annotationDescriptor, visible);
                 }
-            }
+
+                @Override
+                public void visitEnd() {
+                    inject(r, super::visitAnnotation);
+                    super.visitEnd();
+                }
+            };
         }
-        if (cn.methods != null) {
-            for (MethodNode mn : cn.methods) {
-                String mid = cn.name + "#" + mn.name + mn.desc;
-                if (mid.equals(ownerId)) {
-                    if (removeOriginal) {
-                        for (String s : sourceAnnos) {
-                            removeAnnotation(mn.visibleAnnotations, s);
-                            removeAnnotation(mn.invisibleAnnotations, s);
-                        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            injectClassAnnotations();
+            MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+            RewritePlan.OwnerRewrite r = plan.forMethod(name, descriptor);
+            // returning the writer's own visitor lets ASM copy the method without decoding it
+            return r == null ? mv : new MethodVisitor(Opcodes.ASM9, mv) {
+                private boolean injected;
+
+                private void injectMethodAnnotations() {
+                    if (!injected) {
+                        injected = true;
+                        inject(r, super::visitAnnotation);
                     }
-                    if (mn.visibleAnnotations == null) mn.visibleAnnotations = new java.util.ArrayList<>();
-                    injectAnnotations(mn.visibleAnnotations, toInject);
                 }
-            }
+
+                @Override
+                public AnnotationVisitor visitAnnotation(String annotationDescriptor, boolean visible) {
+                    if (r.removes(annotationDescriptor)) return null;
+                    return super.visitAnnotation(annotationDescriptor, visible);
+                }
+
+                @Override
+                public void visitCode() {
+                    injectMethodAnnotations();
+                    super.visitCode();
+                }
+
+                @Override
+                public void visitEnd() {
+                    injectMethodAnnotations();
+                    super.visitEnd();
+                }
+            };
         }
-    }
 
-    private void removeAnnotation(List<AnnotationNode> list, String className) {
-        if (list == null) return;
-        //String desc = Type.getDescriptor(descriptorToClass(className)); ?
-        for (Iterator<AnnotationNode> it = list.iterator(); it.hasNext(); ) {
-            AnnotationNode an = it.next();
-            String annClassName = Type.getType(an.desc).getClassName();
-            if (annClassName.equals(className)) {
-                it.remove();
-            }
+        @Override
+        public void visitEnd() {
+            injectClassAnnotations();
+            super.visitEnd();
         }
     }
 
-    private void injectAnnotations(List<AnnotationNode> list, List<AnnotationDescriptor> toInject) {
-        if (toInject == null || toInject.isEmpty()) return;
-        if (list == null) throw new IllegalStateException("Target annotations list is null; ASM tree requires init");
-        for (AnnotationDescriptor ad : toInject) {
-            AnnotationNode an = toAnnotationNode(ad);
-            list.add(an);
+    private AnnotationNode toAnnotationNode(AnnotationDescriptor ad) {
+        synchronized (nodes) {
+            AnnotationNode cached = nodes.get(ad);
+            if (cached != null) return cached;
+        }
+        // converted outside the lock: nested descriptors come back here
+        AnnotationNode an = convert(ad);
+        synchronized (nodes) {
+            AnnotationNode raced = nodes.putIfAbsent(ad, an);
+            return raced != null ? raced : an;
         }
     }
 
-
-    private AnnotationNode toAnnotationNode(AnnotationDescriptor ad) {
+    private AnnotationNode convert(AnnotationDescriptor ad) {
         String desc = Type.getObjectType(ad.getAnnotationClassName().replace('.', '/')).getDescriptor();
         AnnotationNode an = new AnnotationNode(desc);
-        ad.getValues().forEach((k, v) -> {
+        ad.getMembers().forEach((k, v) -> {
             if (an.values == null) an.values = new ArrayList<>();
             an.values.add(k);
             an.values.add(toAsmValue(v));
@@ -168,86 +216,36 @@ public class AnnotationRewriter {
         return an;
     }
 
-    private Object toAsmValue(Object v) {
-        switch (v) {
-            case null -> {
-                return null;
-            }
-            case AnnotationDescriptor annotationDescriptor -> {
-                return toAnnotationNode(annotationDescriptor);
-            }
-            case List<?> in -> {
-                List<Object> out = new ArrayList<>(in.size());
-                for (Object o : in) {
-                    out.add(toAsmValue(o));
-                }
-                return out;
-            }
-            default -> {
-            }
-        }
-        if (v.getClass().isArray()) {
-            int len = Array.getLength(v);
-            List<Object> out = new ArrayList<>(len);
-            for (int i = 0; i < len; i++) {
-                Object elem = Array.get(v, i);
-                out.add(toAsmValue(elem));
-            }
-            return out;
-        }
-        switch (v) {
-            case Class<?> aClass -> {
-                return Type.getType(aClass);
-            }
-            case Type type -> {
-                return v; // Already an ASM Type
-            }
-            case Enum<?> e -> {
-                String enumDesc = Type.getObjectType(e.getDeclaringClass().getName().replace('.', '/')).getDescriptor();
-                return new String[]{enumDesc, e.name()};
-            }
-            default -> {
-            }
-        }
-        return v;
-    }
-
-    /**
-     * ClassWriter that resolves classes using the current thread context classloader.
-     * This avoids ClassNotFoundException when ASM attempts to compute common superclasses
-     * while running inside the plugin classloader.
-     */
-    private static final class ContextClassWriter extends ClassWriter {
-        ContextClassWriter(int flags) {
-            super(flags);
-        }
-
-        @Override
-        protected String getCommonSuperClass(String type1, String type2) {
-            try {
-                ClassLoader cl = Thread.currentThread().getContextClassLoader();
-                String name1 = type1.replace('/', '.');
-                String name2 = type2.replace('/', '.');
-                Class<?> c1 = Class.forName(name1, false, cl);
-                Class<?> c2 = Class.forName(name2, false, cl);
-                if (c1.isAssignableFrom(c2)) {
-                    return type1;
+    // the value forms AnnotationNode.accept passes on to the writer; primitive arrays are written as they are
+    private Object toAsmValue(AnnotationValue v) {
+        return switch (v) {
+            case AnnotationValue.BooleanValue x -> x.value();
+            case AnnotationValue.ByteValue x -> x.value();
+            case AnnotationValue.CharValue x -> x.value();
+            case AnnotationValue.ShortValue x -> x.value();
+            case AnnotationValue.IntValue x -> x.value();
+            case AnnotationValue.LongValue x -> x.value();
+            case AnnotationValue.FloatValue x -> x.value();
+            case AnnotationValue.DoubleValue x -> x.value();
+            case AnnotationValue.StringValue x -> x.value();
+            case AnnotationValue.TypeValue x -> Type.getType(x.type().getDescriptor());
+            case AnnotationValue.EnumValue x -> new String[]{x.constant().getDescriptor(), x.constant().getConstant()};
+            case AnnotationValue.NestedValue x -> toAnnotationNode(x.annotation());
+            case AnnotationValue.ArrayValue x -> {
+                List<Object> out = new ArrayList<>(x.length());
+                for (AnnotationValue element : x.elements()) {
+                    out.add(toAsmValue(element));
                 }
-                if (c2.isAssignableFrom(c1)) {
-                    return type2;
-                }
-                if (c1.isInterface() || c2.isInterface()) {
-                    return "java/lang/Object";
-                }
-                Class<?> superClass = c1;
-                while (!superClass.isAssignableFrom(c2)) {
-                    superClass = superClass.getSuperclass();
-                }
-                return superClass.getName().replace('.', '/');
-            } catch (Throwable t) {
-                // Fallback to Object if any class cannot be loaded
-                return "java/lang/Object";
-            }
-        }
+                yield out;
+            }
+            case AnnotationValue.BooleanArrayValue x -> x.toArray();
+            case AnnotationValue.ByteArrayValue x -> x.toArray();
+            case AnnotationValue.CharArrayValue x -> x.toArray();
+            case AnnotationValue.ShortArrayValue x -> x.toArray();
+            case AnnotationValue.IntArrayValue x -> x.toArray();
+            case AnnotationValue.LongArrayValue x -> x.toArray();
+            case AnnotationValue.FloatArrayValue x -> x.toArray();
+            case AnnotationValue.DoubleArrayValue x -> x.toArray();
+        };
     }
-}
\ No newline at end of file
+}
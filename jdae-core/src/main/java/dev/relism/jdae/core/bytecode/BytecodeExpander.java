@@ -1,6 +1,8 @@
 package dev.relism.jdae.core.bytecode;
 
 import dev.relism.jdae.api.AnnotationDescriptor;
+import dev.relism.jdae.core.jfr.ClassRewriteEvent;
+import org.objectweb.asm.ClassReader;
 
 import java.util.List;
 
@@ -10,6 +12,18 @@ import java.util.List;
 public class BytecodeExpander {
 
     private final AnnotationRewriter rewriter = new AnnotationRewriter();
+    private final RawAnnotationSplicer splicer;
+
+    public BytecodeExpander() {
+        this(RewriteBackend.ASM);
+    }
+
+    /**
+     * @param backend implementation used by {@link #apply(byte[], RewritePlan)}
+     */
+    public BytecodeExpander(RewriteBackend backend) {
+        this.splicer = backend == RewriteBackend.RAW ? new RawAnnotationSplicer() : null;
+    }
 
     public byte[] apply(byte[] classBytes, String ownerId, String sourceAnnotationClassName,
                         boolean removeOriginal, List<AnnotationDescriptor> inject) {
@@ -20,4 +34,27 @@ public class BytecodeExpander {
                         boolean removeOriginal, List<AnnotationDescriptor> inject) {
         return rewriter.rewrite(classBytes, ownerId, sourceAnnotationClassNames, removeOriginal, inject);
     }
-}
\ No newline at end of file
+
+    /**
+     * Applies the changes of every owner of the class in one rewrite.
+     */
+    public byte[] apply(byte[] classBytes, RewritePlan plan) {
+        ClassRewriteEvent event = new ClassRewriteEvent();
+        event.begin();
+        byte[] out = splicer != null ? splicer.splice(classBytes, plan) : null;
+        RewriteBackend backend = RewriteBackend.RAW;
+        if (out == null) {
+            out = rewriter.rewrite(classBytes, plan);
+            backend = RewriteBackend.ASM;
+        }
+        if (event.shouldCommit()) {
+            event.className = new ClassReader(classBytes).getClassName();
+            event.owners = plan.size();
+            event.backend = backend.name();
+            event.inputBytes = classBytes.length;
+            event.outputBytes = out.length;
+            event.commit();
+        }
+        return out;
+    }
+}
@@ -4,88 +4,214 @@ import dev.relism.jdae.api.ClassInfo;
 import dev.relism.jdae.api.FieldInfo;
 import dev.relism.jdae.api.MethodInfo;
 import dev.relism.jdae.api.TargetKind;
+import dev.relism.jdae.core.jfr.ClassScanEvent;
+import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.AnnotationNode;
-import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.tree.FieldNode;
-import org.objectweb.asm.tree.MethodNode;
 
-//import java.io.IOException;
-//import java.nio.file.Files;
-//import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Predicate;
 
 /**
  * Scans bytecode to find members annotated with annotations marked by @Expander.
+ * <p>
+ * Classes are read with a visitor that skips code, debug information and frames. Only the
+ * annotations accepted by the filter are materialized, and the {@link ClassInfo},
+ * {@link MethodInfo} and {@link FieldInfo} of a target are built on its first matching annotation.
  */
 public class ClassScanner {
+    private static final int READER_FLAGS = ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
 
-    public List<ExpanderCandidate> scan(byte[] classBytes) {
-        ClassNode cn = new ClassNode(Opcodes.ASM9);
-        new ClassReader(classBytes).accept(cn, ClassReader.SKIP_FRAMES);
-
-        List<ExpanderCandidate> candidates = new ArrayList<>();
+    private final AnnotationPrefilter prefilter;
 
-        ClassInfo classInfo = new ClassInfo(cn.name, cn.name.replace('/', '.'), cn.access,
-                cn.superName != null ? cn.superName.replace('/', '.') : null,
-                cn.interfaces != null ? cn.interfaces.stream().map(i -> i.replace('/', '.')).toList() : List.of());
+    /**
+     * Scanner reporting every class, field and method annotation as a candidate.
+     */
+    public ClassScanner() {
+        this.prefilter = null;
+    }
 
-        addCandidatesFromAnnotations(candidates, classInfo, null, null, TargetKind.CLASS, cn.visibleAnnotations);
-        addCandidatesFromAnnotations(candidates, classInfo, null, null, TargetKind.CLASS, cn.invisibleAnnotations);
+    /**
+     * Scanner reporting only annotations accepted by {@code expanderFilter} (typically
+     * {@code registry::hasExpander}). Classes without such annotations are rejected by an
+     * {@link AnnotationPrefilter} before being parsed.
+     */
+    public ClassScanner(Predicate<String> expanderFilter) {
+        this.prefilter = new AnnotationPrefilter(expanderFilter);
+    }
 
-        if (cn.fields != null) {
-            for (FieldNode fn : cn.fields) {
-                FieldInfo fieldInfo = new FieldInfo(fn.name, fn.desc, fn.access);
-                String ownerId = cn.name + "#" + fn.name;
-                addCandidatesFromAnnotations(candidates, classInfo, null, fieldInfo, TargetKind.FIELD, fn.visibleAnnotations);
-                addCandidatesFromAnnotations(candidates, classInfo, null, fieldInfo, TargetKind.FIELD, fn.invisibleAnnotations);
+    public List<ExpanderCandidate> scan(byte[] classBytes) {
+        ClassScanEvent event = new ClassScanEvent();
+        event.begin();
+        if (prefilter != null && !prefilter.mayContainExpanders(classBytes)) {
+            if (event.shouldCommit()) {
+                commit(event, classBytes, null, 0, true);
             }
+            return List.of();
         }
-        if (cn.methods != null) {
-            for (MethodNode mn : cn.methods) {
-                MethodInfo methodInfo = new MethodInfo(
-                        mn.name,
-                        mn.desc,
-                        mn.access,
-                        Type.getArgumentTypes(mn.desc) != null ?
-                                java.util.Arrays.stream(Type.getArgumentTypes(mn.desc))
-                                        .map(t -> t.getClassName())
-                                        .toList() : List.of(),
-                        Type.getReturnType(mn.desc) != null ? Type.getReturnType(mn.desc).getClassName() : "void"
-                );
-                String ownerId = cn.name + "#" + mn.name + mn.desc;
-                addCandidatesFromAnnotations(candidates, classInfo, methodInfo, null, TargetKind.METHOD, mn.visibleAnnotations);
-                addCandidatesFromAnnotations(candidates, classInfo, methodInfo, null, TargetKind.METHOD, mn.invisibleAnnotations);
-            }
+        CandidateCollector collector = new CandidateCollector();
+        new ClassReader(classBytes).accept(collector, READER_FLAGS);
+        List<ExpanderCandidate> candidates = collector.candidates != null ? collector.candidates : List.of();
+        if (event.shouldCommit()) {
+            commit(event, classBytes, collector.name, candidates.size(), false);
         }
         return candidates;
     }
 
-    private void addCandidatesFromAnnotations(List<ExpanderCandidate> out,
-                                              ClassInfo classInfo,
-                                              MethodInfo methodInfo,
-                                              FieldInfo fieldInfo,
-                                              TargetKind kind,
-                                              List<AnnotationNode> anns) {
-        if (anns == null) return;
-        for (AnnotationNode an : anns) {
-            String desc = an.desc; // e.g., Lcom/example/MyAnnotation;
-            String annotationClassName = Type.getType(desc).getClassName();
-            String ownerId = switch (kind) {
-                case CLASS -> classInfo.getInternalName();
-                case METHOD -> classInfo.getInternalName() + "#" + methodInfo.getName() + methodInfo.getDescriptor();
-                case FIELD -> classInfo.getInternalName() + "#" + fieldInfo.getName();
-            };
-            out.add(new ExpanderCandidate(ownerId, annotationClassName, an, kind, classInfo, methodInfo, fieldInfo));
+    private static void commit(ClassScanEvent event, byte[] classBytes, String className, int candidates, boolean prefiltered) {
+        if (className == null) {
+            try {
+                className = new ClassReader(classBytes).getClassName();
+            } catch (RuntimeException e) {
+                // not a class file; the scan itself is still worth recording
+            }
         }
+        event.className = className;
+        event.classBytes = classBytes.length;
+        event.candidates = candidates;
+        event.prefiltered = prefiltered;
+        event.commit();
     }
 
-    /*
-    public static byte[] readClass(Path p) throws IOException {
-        return Files.readAllBytes(p);
+    private boolean accepts(String desc) {
+        return prefilter == null || prefilter.isExpanderDescriptor(desc);
+    }
+
+    private static MethodInfo methodInfo(String name, String desc, int access) {
+        Type[] args = Type.getArgumentTypes(desc);
+        String[] parameterTypes = new String[args.length];
+        for (int i = 0; i < args.length; i++) {
+            parameterTypes[i] = args[i].getClassName();
+        }
+        return new MethodInfo(name, desc, access, List.of(parameterTypes), Type.getReturnType(desc).getClassName());
     }
+
+    /**
+     * Collects the candidates of one class. Field and method visitors are reused across members,
+     * since the reader visits members one at a time.
      */
-}
\ No newline at end of file
+    private final class CandidateCollector extends ClassVisitor {
+        private final MemberFieldVisitor fieldVisitor = new MemberFieldVisitor();
+        private final MemberMethodVisitor methodVisitor = new MemberMethodVisitor();
+
+        private String name;
+        private int access;
+        private String superName;
+        private String[] interfaces;
+        private ClassInfo classInfo;
+        List<ExpanderCandidate> candidates;
+
+        CandidateCollector() {
+            super(Opcodes.ASM9);
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            this.name = name;
+            this.access = access;
+            this.superName = superName;
+            this.interfaces = interfaces;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            if (!accepts(descriptor)) return null;
+            return add(name, descriptor, TargetKind.CLASS, null, null);
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+            fieldVisitor.reset(access, name, descriptor);
+            return fieldVisitor;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            methodVisitor.reset(access, name, descriptor);
+            return methodVisitor;
+        }
+
+        private ClassInfo classInfo() {
+            if (classInfo == null) {
+                List<String> itfs;
+                if (interfaces == null || interfaces.length == 0) {
+                    itfs = List.of();
+                } else {
+                    String[] names = new String[interfaces.length];
+                    for (int i = 0; i < interfaces.length; i++) {
+                        names[i] = interfaces[i].replace('/', '.');
+                    }
+                    itfs = List.of(names);
+                }
+                classInfo = new ClassInfo(name, name.replace('/', '.'), access,
+                        superName != null ? superName.replace('/', '.') : null, itfs);
+            }
+            return classInfo;
+        }
+
+        private AnnotationNode add(String ownerId, String descriptor, TargetKind kind, MethodInfo methodInfo, FieldInfo fieldInfo) {
+            // filled in by the reader once this visitor is returned
+            AnnotationNode node = new AnnotationNode(descriptor);
+            String annotationClassName = Type.getType(descriptor).getClassName();
+            if (candidates == null) candidates = new ArrayList<>();
+            candidates.add(new ExpanderCandidate(ownerId, annotationClassName, node, kind, classInfo(), methodInfo, fieldInfo));
+            return node;
+        }
+
+        private final class MemberFieldVisitor extends FieldVisitor {
+            private int access;
+            private String name;
+            private String descriptor;
+            private FieldInfo fieldInfo;
+
+            MemberFieldVisitor() {
+                super(Opcodes.ASM9);
+            }
+
+            void reset(int access, String name, String descriptor) {
+                this.access = access;
+                this.name = name;
+                this.descriptor = descriptor;
+                this.fieldInfo = null;
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotation(String annotationDescriptor, boolean visible) {
+                if (!accepts(annotationDescriptor)) return null;
+                if (fieldInfo == null) fieldInfo = new FieldInfo(name, descriptor, access);
+                return add(CandidateCollector.this.name + "#" + name, annotationDescriptor, TargetKind.FIELD, null, fieldInfo);
+            }
+        }
+
+        private final class MemberMethodVisitor extends MethodVisitor {
+            private int access;
+            private String name;
+            private String descriptor;
+            private MethodInfo methodInfo;
+
+            MemberMethodVisitor() {
+                super(Opcodes.ASM9);
+            }
+
+            void reset(int access, String name, String descriptor) {
+                this.access = access;
+                this.name = name;
+                this.descriptor = descriptor;
+                this.methodInfo = null;
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotation(String annotationDescriptor, boolean visible) {
+                if (!accepts(annotationDescriptor)) return null;
+                if (methodInfo == null) methodInfo = methodInfo(name, descriptor, access);
+                return add(CandidateCollector.this.name + "#" + name + descriptor, annotationDescriptor, TargetKind.METHOD, methodInfo, null);
+            }
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package dev.relism.jdae.core.bytecode;
+
+import dev.relism.jdae.api.AnnotationDescriptor;
+import dev.relism.jdae.api.AnnotationValue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link RewriteBackend#RAW} implementation: rewrites only the {@code RuntimeVisibleAnnotations}
+ * and {@code RuntimeInvisibleAnnotations} attributes of the owners in a plan, appends the constant
+ * pool entries the new annotations need, and copies every other byte range of the class as is.
+ */
+final class RawAnnotationSplicer {
+    private static final byte[] VISIBLE = "RuntimeVisibleAnnotations".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INVISIBLE = "RuntimeInvisibleAnnotations".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Returns the rewritten class, or null if the plan cannot be encoded without ASM (for example
+     * when the constant pool would overflow).
+     */
+    byte[] splice(byte[] original, RewritePlan plan) {
+        if (plan.isEmpty()) {
+            return original;
+        }
+        try {
+            return new Splice(new RawClassFile(original), plan).run();
+        } catch (UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private static final class Splice {
+        private final RawClassFile cf;
+        private final RewritePlan plan;
+        private final ConstantPoolAppender cp;
+        private final int visible;
+        private final int invisible;
+        private final List<int[]> ranges = new ArrayList<>();
+        private final List<Out> replacements = new ArrayList<>();
+
+        Splice(RawClassFile cf, RewritePlan plan) {
+            this.cf = cf;
+            this.plan = plan;
+            this.cp = new ConstantPoolAppender(cf);
+            this.visible = cf.findUtf8(VISIBLE);
+            this.invisible = cf.findUtf8(INVISIBLE);
+        }
+
+        byte[] run() {
+            int off = cf.cpEnd + 6;
+            off += 2 + 2 * cf.u2(off);                             // interfaces
+            for (int member = 0; member < 2; member++) {             // fields, then methods
+                boolean methods = member == 1;
+                boolean planned = methods ? plan.hasMethods() : plan.hasFields();
+                int count = cf.u2(off);
+                off += 2;
+                for (int i = 0; i < count; i++) {
+                    RewritePlan.OwnerRewrite r = null;
+                    if (planned) {
+                        String name = cf.utf8(cf.u2(off + 2));
+                        r = methods ? plan.forMethod(name, cf.utf8(cf.u2(off + 4))) : plan.forField(name);
+                    }
+                    off = attributes(off + 6, r);
+                }
+            }
+            attributes(off, plan.forClass());
+            return assemble();
+        }
+
+        /**
+         * Walks the attribute table starting at {@code off} (its count) and, if {@code r} is not null,
+         * records a replacement for it. Returns the offset right after the table.
+         */
+        private int attributes(int off, RewritePlan.OwnerRewrite r) {
+            int start = off;
+            int count = cf.u2(off);
+            off += 2;
+            if (r == null) {
+                for (int i = 0; i < count; i++) {
+                    off += 6 + cf.u4(off + 2);
+                }
+                return off;
+            }
+
+            Out table = new Out();
+            int newCount = 0;
+            boolean injected = false;
+            for (int i = 0; i < count; i++) {
+                int name = cf.u2(off);
+                int end = off + 6 + cf.u4(off + 2);
+                if (name == visible || name == invisible) {
+                    Out anns = new Out();
+                    int n = 0;
+                    int pos = off + 8;
+                    int num = cf.u2(off + 6);
+                    for (int j = 0; j < num; j++) {
+                        int annEnd = cf.skipAnnotation(pos);
+                        if (!r.removes(cf.utf8(cf.u2(pos)))) {
+                            anns.bytes(cf.b, pos, annEnd - pos);
+                            n++;
+                        }
+                        pos = annEnd;
+                    }
+                    if (name == visible) {
+                        for (AnnotationDescriptor ad : r.injections) {
+                            annotation(anns, ad);
+                            n++;
+                        }
+                        injected = true;
+                    }
+                    if (n > 0) {
+                        table.u2(name).u4(2 + anns.length).u2(n).bytes(anns.data, 0, anns.length);
+                        newCount++;
+                    }
+                } else {
+                    table.bytes(cf.b, off, end - off);
+                    newCount++;
+                }
+                off = end;
+            }
+            if (!injected && !r.injections.isEmpty()) {
+                Out anns = new Out();
+                for (AnnotationDescriptor ad : r.injections) {
+                    annotation(anns, ad);
+                }
+                int name = visible != 0 ? visible : cp.utf8("RuntimeVisibleAnnotations");
+                table.u2(name).u4(2 + anns.length).u2(r.injections.size()).bytes(anns.data, 0, anns.length);
+                newCount++;
+            }
+
+            Out replacement = new Out();
+            replacement.u2(newCount).bytes(table.data, 0, table.length);
+            ranges.add(new int[]{start, off});
+            replacements.add(replacement);
+            return off;
+        }
+
+        private void annotation(Out out, AnnotationDescriptor ad) {
+            out.u2(cp.utf8("L" + ad.getAnnotationClassName().replace('.', '/') + ";"));
+            Map<String, AnnotationValue> members = ad.getMembers();
+            out.u2(members.size());
+            for (Map.Entry<String, AnnotationValue> e : members.entrySet()) {
+                out.u2(cp.utf8(e.getKey()));
+                elementValue(out, e.getValue());
+            }
+        }
+
+        private void elementValue(Out out, AnnotationValue v) {
+            out.u1(v.tag());
+            switch (v) {
+                case AnnotationValue.BooleanValue x -> out.u2(cp.integer(x.value() ? 1 : 0));
+                case AnnotationValue.ByteValue x -> out.u2(cp.integer(x.value()));
+                case AnnotationValue.CharValue x -> out.u2(cp.integer(x.value()));
+                case AnnotationValue.ShortValue x -> out.u2(cp.integer(x.value()));
+                case AnnotationValue.IntValue x -> out.u2(cp.integer(x.value()));
+                case AnnotationValue.LongValue x -> out.u2(cp.longValue(x.value()));
+                case AnnotationValue.FloatValue x -> out.u2(cp.floatValue(x.value()));
+                case AnnotationValue.DoubleValue x -> out.u2(cp.doubleValue(x.value()));
+                case AnnotationValue.StringValue x -> out.u2(cp.utf8(x.value()));
+                case AnnotationValue.TypeValue x -> out.u2(cp.utf8(x.type().getDescriptor()));
+                case AnnotationValue.EnumValue x -> out.u2(cp.utf8(x.constant().getDescriptor())).u2(cp.utf8(x.constant().getConstant()));
+                case AnnotationValue.NestedValue x -> annotation(out, x.annotation());
+                case AnnotationValue.ArrayValue x -> {
+                    out.u2(x.length());
+                    for (AnnotationValue element : x.elements()) elementValue(out, element);
+                }
+                case AnnotationValue.BooleanArrayValue x -> {
+                    out.u2(x.length());
+                    for (int i = 0; i < x.length(); i++) out.u1('Z').u2(cp.integer(x.get(i) ? 1 : 0));
+                }
+                case AnnotationValue.ByteArrayValue x -> {
+                    out.u2(x.length());
+                    for (int i = 0; i < x.length(); i++) out.u1('B').u2(cp.integer(x.get(i)));
+                }
+                case AnnotationValue.CharArrayValue x -> {
+                    out.u2(x.length());
+                    for (int i = 0; i < x.length(); i++) out.u1('C').u2(cp.integer(x.get(i)));
+                }
+                case AnnotationValue.ShortArrayValue x -> {
+                    out.u2(x.length());
+                    for (int i = 0; i < x.length(); i++) out.u1('S').u2(cp.integer(x.get(i)));
+                }
+                case AnnotationValue.IntArrayValue x -> {
+                    out.u2(x.length());
+                    for (int i = 0; i < x.length(); i++) out.u1('I').u2(cp.integer(x.get(i)));
+                }
+                case AnnotationValue.LongArrayValue x -> {
+                    out.u2(x.length());
+                    for (int i = 0; i < x.length(); i++) out.u1('J').u2(cp.longValue(x.get(i)));
+                }
+                case AnnotationValue.FloatArrayValue x -> {
+                    out.u2(x.length());
+                    for (int i = 0; i < x.length(); i++) out.u1('F').u2(cp.floatValue(x.get(i)));
+                }
+                case AnnotationValue.DoubleArrayValue x -> {
+                    out.u2(x.length());
+                    for (int i = 0; i < x.length(); i++) out.u1('D').u2(cp.doubleValue(x.get(i)));
+                }
+            }
+        }
+
+        private byte[] assemble() {
+            byte[] b = cf.b;
+            Out appended = cp.appended;
+            int size = b.length + appended.length;
+            for (int i = 0; i < ranges.size(); i++) {
+                size += replacements.get(i).length - (ranges.get(i)[1] - ranges.get(i)[0]);
+            }
+            Out out = new Out(size);
+            out.bytes(b, 0, 8).u2(cp.count).bytes(b, 10, cf.cpEnd - 10).bytes(appended.data, 0, appended.length);
+            int pos = cf.cpEnd;
+            for (int i = 0; i < ranges.size(); i++) {
+                int[] range = ranges.get(i);
+                Out replacement = replacements.get(i);
+                out.bytes(b, pos, range[0] - pos).bytes(replacement.data, 0, replacement.length);
+                pos = range[1];
+            }
+            out.bytes(b, pos, b.length - pos);
+            return out.length == out.data.length ? out.data : Arrays.copyOf(out.data, out.length);
+        }
+    }
+
+    /**
+     * Resolves constants against the existing pool, appending the missing ones.
+     */
+    private static final class ConstantPoolAppender {
+        private final RawClassFile cf;
+        private final Map<Object, Integer> resolved = new HashMap<>();
+        final Out appended = new Out();
+        int count;
+
+        ConstantPoolAppender(RawClassFile cf) {
+            this.cf = cf;
+            this.count = cf.cpCount();
+        }
+
+        int utf8(String s) {
+            Integer known = resolved.get(s);
+            if (known != null) return known;
+            Out encoded = new Out();
+            encoded.utf8(s);
+            byte[] content = Arrays.copyOfRange(encoded.data, 0, encoded.length);
+            if (content.length > 0xFFFF) {
+                throw new UnsupportedOperationException("String constant too long");
+            }
+            int index = cf.findUtf8(content);
+            if (index == 0) {
+                index = append(1);
+                appended.u1(RawClassFile.CONSTANT_UTF8).u2(content.length).bytes(content, 0, content.length);
+            }
+            resolved.put(s, index);
+            return index;
+        }
+
+        int integer(int value) {
+            return constant(RawClassFile.CONSTANT_INTEGER, value, 4);
+        }
+
+        int floatValue(float value) {
+            return constant(RawClassFile.CONSTANT_FLOAT, Float.floatToRawIntBits(value), 4);
+        }
+
+        int longValue(long value) {
+            return constant(RawClassFile.CONSTANT_LONG, value, 8);
+        }
+
+        int doubleValue(double value) {
+            return constant(RawClassFile.CONSTANT_DOUBLE, Double.doubleToRawLongBits(value), 8);
+        }
+
+        private int constant(int tag, long bits, int width) {
+            List<Object> composite = List.of(tag, bits);
+            Integer known = resolved.get(composite);
+            if (known != null) return known;
+            int index = 0;
+            for (int i = 1; i < cf.cpOffsets.length && index == 0; i++) {
+                int off = cf.cpOffsets[i];
+                if (off == 0 || cf.u1(off) != tag) continue;
+                long existing = width == 4 ? cf.u4(off + 1) : ((long) cf.u4(off + 1) << 32) | (cf.u4(off + 5) & 0xFFFFFFFFL);
+                if (width == 4 ? (int) existing == (int) bits : existing == bits) index = i;
+            }
+            if (index == 0) {
+                index = append(width == 8 ? 2 : 1);
+                appended.u1(tag);
+                if (width == 8) appended.u4((int) (bits >>> 32));
+                appended.u4((int) bits);
+            }
+            resolved.put(composite, index);
+            return index;
+        }
+
+        private int append(int slots) {
+            int index = count;
+            count += slots;
+            if (count > 0xFFFF) {
+                throw new UnsupportedOperationException("Constant pool overflow");
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Growable big-endian byte buffer.
+     */
+    private static final class Out {
+        byte[] data;
+        int length;
+
+        Out() {
+            this(64);
+        }
+
+        Out(int capacity) {
+            data = new byte[Math.max(capacity, 16)];
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + extra));
+            }
+        }
+
+        Out u1(int v) {
+            ensure(1);
+            data[length++] = (byte) v;
+            return this;
+        }
+
+        Out u2(int v) {
+            ensure(2);
+            data[length++] = (byte) (v >>> 8);
+            data[length++] = (byte) v;
+            return this;
+        }
+
+        Out u4(int v) {
+            ensure(4);
+            data[length++] = (byte) (v >>> 24);
+            data[length++] = (byte) (v >>> 16);
+            data[length++] = (byte) (v >>> 8);
+            data[length++] = (byte) v;
+            return this;
+        }
+
+        Out bytes(byte[] src, int off, int len) {
+            ensure(len);
+            System.arraycopy(src, off, data, length, len);
+            length += len;
+            return this;
+        }
+
+        /**
+         * Appends {@code s} in modified UTF-8, without the length prefix.
+         */
+        Out utf8(String s) {
+            ensure(s.length() * 3);
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c >= 0x01 && c <= 0x7F) {
+                    data[length++] = (byte) c;
+                } else if (c <= 0x7FF) {
+                    data[length++] = (byte) (0xC0 | (c >> 6));
+                    data[length++] = (byte) (0x80 | (c & 0x3F));
+                } else {
+                    data[length++] = (byte) (0xE0 | (c >> 12));
+                    data[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    data[length++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            return this;
+        }
+    }
+}
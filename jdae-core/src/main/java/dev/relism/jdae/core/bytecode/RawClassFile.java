@@ -0,0 +1,153 @@
+package dev.relism.jdae.core.bytecode;
+
+/**
+ * Minimal read-only view over the bytes of a class file: constant pool offsets, big-endian reads
+ * and skipping of annotation structures. Used where building an ASM tree is not worth it.
+ */
+final class RawClassFile {
+    static final int CONSTANT_UTF8 = 1;
+    static final int CONSTANT_INTEGER = 3;
+    static final int CONSTANT_FLOAT = 4;
+    static final int CONSTANT_LONG = 5;
+    static final int CONSTANT_DOUBLE = 6;
+
+    final byte[] b;
+    /** Offset of the tag byte of each constant pool entry, 0 for index 0 and the slot after long/double. */
+    final int[] cpOffsets;
+    /** Offset of {@code access_flags}, right after the constant pool. */
+    final int cpEnd;
+
+    private String[] strings;
+
+    RawClassFile(byte[] b) {
+        this.b = b;
+        if (b.length < 10 || u4(0) != 0xCAFEBABE) {
+            throw new IllegalArgumentException("Not a class file");
+        }
+        int count = u2(8);
+        int[] offsets = new int[count];
+        int off = 10;
+        for (int i = 1; i < count; i++) {
+            offsets[i] = off;
+            int tag = b[off] & 0xFF;
+            switch (tag) {
+                case CONSTANT_UTF8 -> off += 3 + u2(off + 1);
+                case 7, 8, 16, 19, 20 -> off += 3;        // Class, String, MethodType, Module, Package
+                case 15 -> off += 4;                      // MethodHandle
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> off += 5;
+                case CONSTANT_LONG, CONSTANT_DOUBLE -> {
+                    off += 9;
+                    i++;
+                }
+                default -> throw new IllegalArgumentException("Unknown constant pool tag " + tag + " at " + off);
+            }
+        }
+        this.cpOffsets = offsets;
+        this.cpEnd = off;
+    }
+
+    int cpCount() {
+        return cpOffsets.length;
+    }
+
+    int u1(int off) {
+        return b[off] & 0xFF;
+    }
+
+    int u2(int off) {
+        return ((b[off] & 0xFF) << 8) | (b[off + 1] & 0xFF);
+    }
+
+    int u4(int off) {
+        return ((b[off] & 0xFF) << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+    }
+
+    /**
+     * Index of the CONSTANT_Utf8 entry whose content equals {@code ascii}, or 0 if there is none.
+     */
+    int findUtf8(byte[] ascii) {
+        for (int i = 1; i < cpOffsets.length; i++) {
+            int off = cpOffsets[i];
+            if (off != 0 && b[off] == CONSTANT_UTF8 && utf8Equals(i, ascii)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    boolean utf8Equals(int index, byte[] ascii) {
+        int off = cpOffsets[index];
+        if (u2(off + 1) != ascii.length) return false;
+        for (int i = 0; i < ascii.length; i++) {
+            if (b[off + 3 + i] != ascii[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the modified UTF-8 entry at the given constant pool index; results are cached.
+     */
+    String utf8(int index) {
+        if (strings == null) strings = new String[cpOffsets.length];
+        String s = strings[index];
+        if (s != null) return s;
+        int off = cpOffsets[index];
+        int len = u2(off + 1);
+        int pos = off + 3;
+        int end = pos + len;
+        char[] chars = new char[len];
+        int n = 0;
+        while (pos < end) {
+            int c = b[pos++] & 0xFF;
+            if (c < 0x80) {
+                chars[n++] = (char) c;
+            } else if (c < 0xE0) {
+                chars[n++] = (char) (((c & 0x1F) << 6) | (b[pos++] & 0x3F));
+            } else {
+                chars[n++] = (char) (((c & 0x0F) << 12) | ((b[pos++] & 0x3F) << 6) | (b[pos++] & 0x3F));
+            }
+        }
+        s = new String(chars, 0, n);
+        strings[index] = s;
+        return s;
+    }
+
+    /**
+     * Offset right after the {@code annotation} structure starting at {@code off}.
+     */
+    int skipAnnotation(int off) {
+        int pairs = u2(off + 2);
+        off += 4;
+        for (int i = 0; i < pairs; i++) {
+            off = skipElementValue(off + 2);
+        }
+        return off;
+    }
+
+    /**
+     * Offset right after the {@code element_value} structure starting at {@code off}.
+     */
+    int skipElementValue(int off) {
+        int tag = b[off] & 0xFF;
+        switch (tag) {
+            case 'B', 'C', 'D', 'F', 'I', 'J', 'S', 'Z', 's', 'c' -> {
+                return off + 3;
+            }
+            case 'e' -> {
+                return off + 5;
+            }
+            case '@' -> {
+                return skipAnnotation(off + 1);
+            }
+            case '[' -> {
+                int count = u2(off + 1);
+                off += 3;
+                for (int i = 0; i < count; i++) {
+                    off = skipElementValue(off);
+                }
+                return off;
+            }
+            default -> throw new IllegalArgumentException("Unknown element_value tag " + (char) tag + " at " + off);
+        }
+    }
+}
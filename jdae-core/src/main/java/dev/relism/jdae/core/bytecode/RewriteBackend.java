@@ -0,0 +1,18 @@
+package dev.relism.jdae.core.bytecode;
+
+/**
+ * Implementation used by {@link BytecodeExpander} to apply a {@link RewritePlan}.
+ */
+public enum RewriteBackend {
+    /**
+     * Streams the class through ASM, copying untouched methods and the constant pool.
+     */
+    ASM,
+    /**
+     * Splices the annotation attributes of the affected owners directly into the class file bytes,
+     * appending constant pool entries as needed. Every other byte range is copied as is, so the cost
+     * follows the size of the change rather than the size of the class. Plans it cannot encode fall
+     * back to {@link #ASM}.
+     */
+    RAW
+}
@@ -0,0 +1,114 @@
+package dev.relism.jdae.core.bytecode;
+
+import dev.relism.jdae.api.AnnotationDescriptor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Annotation changes for every owner (the class itself, its fields and its methods) of a single
+ * class, so that all of them are applied with one parse and one write of the class.
+ * <p>
+ * Owners are identified like {@link ExpanderCandidate#getOwnerId()}: {@code pkg/Cls} for the
+ * class, {@code pkg/Cls#field} for a field and {@code pkg/Cls#method(desc)} for a method.
+ * Members are indexed by name (and descriptor), so a rewriter looks each one up in constant time.
+ */
+public final class RewritePlan {
+    private OwnerRewrite classRewrite;
+    private final Map<String, OwnerRewrite> fields = new HashMap<>();
+    private final Map<String, Map<String, OwnerRewrite>> methods = new HashMap<>();
+    private int size;
+
+    /**
+     * Adds changes for an owner; changes added twice for the same owner are concatenated.
+     *
+     * @param removals    annotation class names to remove from the owner
+     * @param injections  annotations to add to the owner
+     */
+    public RewritePlan add(String ownerId, List<String> removals, List<AnnotationDescriptor> injections) {
+        boolean noRemovals = removals == null || removals.isEmpty();
+        boolean noInjections = injections == null || injections.isEmpty();
+        if (noRemovals && noInjections) {
+            return this;
+        }
+        OwnerRewrite rewrite;
+        int hash = ownerId.indexOf('#');
+        if (hash < 0) {
+            if (classRewrite == null) classRewrite = new OwnerRewrite();
+            rewrite = classRewrite;
+        } else {
+            String member = ownerId.substring(hash + 1);
+            int paren = member.indexOf('(');
+            if (paren < 0) {
+                rewrite = fields.computeIfAbsent(member, k -> new OwnerRewrite());
+            } else {
+                rewrite = methods.computeIfAbsent(member.substring(0, paren), k -> new HashMap<>())
+                        .computeIfAbsent(member.substring(paren), k -> new OwnerRewrite());
+            }
+        }
+        if (rewrite.removals.isEmpty() && rewrite.injections.isEmpty()) size++;
+        if (!noRemovals) rewrite.removals.addAll(removals);
+        if (!noInjections) rewrite.injections.addAll(injections);
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Number of owners with at least one change.
+     */
+    public int size() {
+        return size;
+    }
+
+    boolean hasFields() {
+        return !fields.isEmpty();
+    }
+
+    boolean hasMethods() {
+        return !methods.isEmpty();
+    }
+
+    OwnerRewrite forClass() {
+        return classRewrite;
+    }
+
+    OwnerRewrite forField(String name) {
+        return fields.isEmpty() ? null : fields.get(name);
+    }
+
+    OwnerRewrite forMethod(String name, String descriptor) {
+        if (methods.isEmpty()) return null;
+        Map<String, OwnerRewrite> byDesc = methods.get(name);
+        return byDesc != null ? byDesc.get(descriptor) : null;
+    }
+
+    /**
+     * Changes for a single owner.
+     */
+    static final class OwnerRewrite {
+        final List<String> removals = new ArrayList<>(2);
+        final List<AnnotationDescriptor> injections = new ArrayList<>(2);
+
+        /**
+         * True if the annotation with the given descriptor (e.g. {@code Lcom/example/A;}) is to be removed.
+         */
+        boolean removes(String descriptor) {
+            for (String className : removals) {
+                int len = className.length();
+                if (descriptor.length() != len + 2) continue;
+                boolean same = true;
+                for (int i = 0; i < len && same; i++) {
+                    char c = className.charAt(i);
+                    same = descriptor.charAt(i + 1) == (c == '.' ? '/' : c);
+                }
+                if (same) return true;
+            }
+            return false;
+        }
+    }
+}
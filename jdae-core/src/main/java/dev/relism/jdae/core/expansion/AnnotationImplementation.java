@@ -0,0 +1,153 @@
+package dev.relism.jdae.core.expansion;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Base class of the annotation implementations generated by {@link AnnotationInstanceFactory}.
+ * Member values are kept as read from the class file and coerced to their Java type on first access;
+ * arrays are copied on every access so that callers cannot change the memoized value.
+ * <p>
+ * Instances are meant to be used by one expander call at a time.
+ */
+public abstract class AnnotationImplementation implements Annotation {
+    private final Model model;
+    private final Object[] raw;
+    private final Object[] coerced;
+
+    protected AnnotationImplementation(Model model, Object[] raw) {
+        this.model = model;
+        this.raw = raw;
+        this.coerced = new Object[raw.length];
+    }
+
+    /**
+     * Value of the member at {@code index} in {@link Model} order.
+     */
+    protected final Object value(int index) {
+        Object v = coerced[index];
+        if (v == null) {
+            Object r = raw[index];
+            if (r == null) {
+                throw new IllegalStateException("Missing value for annotation element: "
+                        + model.type.getName() + "." + model.names[index]);
+            }
+            v = model.factory.coerce(r, model.types[index]);
+            coerced[index] = v;
+        }
+        return model.arrays[index] ? copyOf(v) : v;
+    }
+
+    final Model model() {
+        return model;
+    }
+
+    @Override
+    public Class<? extends Annotation> annotationType() {
+        return model.type;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (other == this) return true;
+        if (!(other instanceof Annotation a) || !a.annotationType().equals(model.type)) return false;
+        try {
+            for (int i = 0; i < model.members.length; i++) {
+                Object that = other instanceof AnnotationImplementation o && o.model == model
+                        ? o.value(i)
+                        : model.members[i].invoke(other);
+                if (!Arrays.deepEquals(new Object[]{value(i)}, new Object[]{that})) return false;
+            }
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Hash code as specified by {@link Annotation#hashCode()}.
+     */
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = 0; i < model.members.length; i++) {
+            Object v = value(i);
+            int valueHash = model.arrays[i] ? Arrays.deepHashCode(new Object[]{v}) - 31 : v.hashCode();
+            hash += (127 * model.names[i].hashCode()) ^ valueHash;
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("@").append(model.type.getName()).append('(');
+        for (int i = 0; i < model.members.length; i++) {
+            if (i > 0) sb.append(", ");
+            Object v = value(i);
+            if (model.arrays[i]) {
+                String wrapped = Arrays.deepToString(new Object[]{v});
+                v = wrapped.substring(1, wrapped.length() - 1);
+            }
+            sb.append(model.names[i]).append('=').append(v);
+        }
+        return sb.append(')').toString();
+    }
+
+    private static Object copyOf(Object array) {
+        return switch (array) {
+            case Object[] a -> a.clone();
+            case int[] a -> a.clone();
+            case long[] a -> a.clone();
+            case boolean[] a -> a.clone();
+            case byte[] a -> a.clone();
+            case char[] a -> a.clone();
+            case short[] a -> a.clone();
+            case float[] a -> a.clone();
+            case double[] a -> a.clone();
+            default -> array;
+        };
+    }
+
+    /**
+     * Members of one annotation type with their precomputed defaults, shared by all its instances.
+     */
+    public static final class Model {
+        final Class<? extends Annotation> type;
+        final AnnotationInstanceFactory factory;
+        final Method[] members;
+        final String[] names;
+        final Class<?>[] types;
+        final boolean[] arrays;
+        final Object[] defaults;
+        final Map<String, Integer> indexByName = new HashMap<>();
+
+        Model(Class<? extends Annotation> type, AnnotationInstanceFactory factory) {
+            this.type = type;
+            this.factory = factory;
+            // skip what tools such as coverage agents may add to the interface
+            this.members = Arrays.stream(type.getDeclaredMethods())
+                    .filter(m -> !m.isSynthetic() && !Modifier.isStatic(m.getModifiers()) && m.getParameterCount() == 0)
+                    .toArray(Method[]::new);
+            Arrays.sort(members, (a, b) -> a.getName().compareTo(b.getName()));
+            int n = members.length;
+            this.names = new String[n];
+            this.types = new Class<?>[n];
+            this.arrays = new boolean[n];
+            this.defaults = new Object[n];
+            boolean open = Modifier.isPublic(type.getModifiers());
+            for (int i = 0; i < n; i++) {
+                // equals() reads the members of other instances reflectively
+                if (!open) members[i].trySetAccessible();
+                names[i] = members[i].getName();
+                types[i] = members[i].getReturnType();
+                arrays[i] = types[i].isArray();
+                defaults[i] = members[i].getDefaultValue();
+                indexByName.put(names[i], i);
+            }
+        }
+    }
+}
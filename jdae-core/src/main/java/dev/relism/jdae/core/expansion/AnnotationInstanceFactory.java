@@ -1,166 +1,312 @@
 package dev.relism.jdae.core.expansion;
 
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.AnnotationNode;
 
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Creates runtime {@link Annotation} instances backed by ASM {@link AnnotationNode} data.
- * This allows expanders to receive a non-null typed annotation proxy and access its members.
+ * This allows expanders to receive a non-null typed annotation instance and access its members.
+ * <p>
+ * For each annotation type a small class implementing it is generated once, in the annotation's own package
+ * and class loader; members are plain method calls that coerce their value on first access and memoize it.
+ * When the annotation's class loader does not see this library, instances fall back to a {@link Proxy},
+ * which is logged.
  */
 public final class AnnotationInstanceFactory {
+    private static final String BASE = Type.getInternalName(AnnotationImplementation.class);
+    private static final String CONSTRUCTOR_DESC = Type.getMethodDescriptor(Type.VOID_TYPE,
+            Type.getType(AnnotationImplementation.Model.class), Type.getType(Object[].class));
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(AnnotationImplementation.class,
+            AnnotationImplementation.Model.class, Object[].class);
+
+    private static final System.Logger LOG = System.getLogger(AnnotationInstanceFactory.class.getName());
+    private static final Object DEFINE_LOCK = new Object();
+
     private final ClassLoader classLoader;
+    private final Map<Class<?>, Implementation> implementations = new ConcurrentHashMap<>();
 
     public AnnotationInstanceFactory(ClassLoader classLoader) {
         this.classLoader = classLoader;
     }
 
     public Annotation create(String annotationClassName, AnnotationNode node) {
+        Class<?> annType;
         try {
-            Class<?> annType = Class.forName(annotationClassName, false, classLoader);
-            if (!annType.isAnnotation()) {
-                throw new IllegalArgumentException(annotationClassName + " is not an annotation type");
-            }
-            InvocationHandler handler = new AsmAnnotationInvocationHandler((Class<? extends Annotation>) annType, node, classLoader);
-            return (Annotation) Proxy.newProxyInstance(classLoader, new Class[]{annType}, handler);
+            annType = Class.forName(annotationClassName, false, classLoader);
         } catch (ClassNotFoundException e) {
             throw new IllegalStateException("Failed to load annotation class: " + annotationClassName, e);
         }
+        if (!annType.isAnnotation()) {
+            throw new IllegalArgumentException(annotationClassName + " is not an annotation type");
+        }
+        @SuppressWarnings("unchecked")
+        Implementation impl = implementations.computeIfAbsent(annType, t -> implement((Class<? extends Annotation>) t));
+        return impl.newInstance(node);
     }
 
-    private static final class AsmAnnotationInvocationHandler implements InvocationHandler {
-        private final Class<? extends Annotation> annType;
-        private final Map<String, Object> values;
-        private final ClassLoader cl;
-
-        AsmAnnotationInvocationHandler(Class<? extends Annotation> annType, AnnotationNode node, ClassLoader cl) {
-            this.annType = annType;
-            this.cl = cl;
-            this.values = parseValues(node);
+    private Implementation implement(Class<? extends Annotation> annType) {
+        AnnotationImplementation.Model model = new AnnotationImplementation.Model(annType, this);
+        if (!seesThisLibrary(annType.getClassLoader())) {
+            LOG.log(System.Logger.Level.DEBUG, "Annotation " + annType.getName()
+                    + " is implemented as a proxy: its class loader does not see jdae-core");
+            return new Implementation(model, null);
+        }
+        try {
+            Class<?> implClass = defineImplementation(annType, model);
+            MethodHandle constructor = MethodHandles.publicLookup()
+                    .findConstructor(implClass, MethodType.methodType(void.class, AnnotationImplementation.Model.class, Object[].class))
+                    .asType(CONSTRUCTOR_TYPE);
+            return new Implementation(model, constructor);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            LOG.log(System.Logger.Level.WARNING, "Annotation " + annType.getName()
+                    + " is implemented as a proxy: its implementation class could not be defined", e);
+            return new Implementation(model, null);
         }
+    }
 
-        @Override
-        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-            String name = method.getName();
-            if (name.equals("annotationType") && method.getParameterCount() == 0) {
-                return annType;
+    /**
+     * Defines the implementation class in the annotation's package and class loader, where it can implement
+     * the annotation and use its member types even when they are not public. This only needs package access,
+     * which a lookup in the annotation type has even when its loader is in another module than this library,
+     * such as a project class loader below the plugin's. A class defined earlier for the same annotation type,
+     * by another factory over the same loader, is reused.
+     */
+    private static Class<?> defineImplementation(Class<? extends Annotation> annType, AnnotationImplementation.Model model)
+            throws IllegalAccessException, ClassNotFoundException {
+        String name = annType.getName() + "$JDAEImpl";
+        ClassLoader loader = annType.getClassLoader();
+        synchronized (DEFINE_LOCK) {
+            Class<?> existing = findDefined(name, loader);
+            if (existing != null) {
+                return existing;
             }
-            if (name.equals("toString") && method.getParameterCount() == 0) {
-                return annType.getName() + values.toString();
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(annType, MethodHandles.lookup());
+            try {
+                return lookup.defineClass(generate(Type.getInternalName(annType) + "$JDAEImpl", model));
+            } catch (LinkageError e) {
+                // defined in the meantime through another library copy or factory outside this lock
+                existing = findDefined(name, loader);
+                if (existing == null) throw e;
+                return existing;
             }
-            if (name.equals("hashCode") && method.getParameterCount() == 0) {
-                return values.hashCode() ^ annType.hashCode();
+        }
+    }
+
+    private static Class<?> findDefined(String name, ClassLoader loader) throws ClassNotFoundException {
+        Class<?> cls;
+        try {
+            cls = Class.forName(name, false, loader);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        if (!AnnotationImplementation.class.isAssignableFrom(cls)) {
+            throw new ClassNotFoundException(name + " exists and is not an annotation implementation generated by JDAE");
+        }
+        return cls;
+    }
+
+    /**
+     * Whether classes of {@code loader} link against the same {@link AnnotationImplementation} as this factory.
+     */
+    private static boolean seesThisLibrary(ClassLoader loader) {
+        if (loader == null) return false;
+        try {
+            return Class.forName(AnnotationImplementation.class.getName(), false, loader) == AnnotationImplementation.class;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static byte[] generate(String internalName, AnnotationImplementation.Model model) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER | Opcodes.ACC_SYNTHETIC,
+                internalName, null, BASE, new String[]{Type.getInternalName(model.type)});
+
+        MethodVisitor init = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", CONSTRUCTOR_DESC, null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitVarInsn(Opcodes.ALOAD, 1);
+        init.visitVarInsn(Opcodes.ALOAD, 2);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, BASE, "<init>", CONSTRUCTOR_DESC, false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        for (int i = 0; i < model.members.length; i++) {
+            Type returnType = Type.getType(model.types[i]);
+            MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, model.names[i],
+                    Type.getMethodDescriptor(returnType), null, null);
+            mv.visitCode();
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitLdcInsn(i);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, BASE, "value", "(I)Ljava/lang/Object;", false);
+            if (returnType.getSort() <= Type.DOUBLE) {
+                // primitive member: unbox the wrapper
+                String wrapper = Type.getInternalName(MethodType.methodType(model.types[i]).wrap().returnType());
+                mv.visitTypeInsn(Opcodes.CHECKCAST, wrapper);
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, wrapper, returnType.getClassName() + "Value",
+                        Type.getMethodDescriptor(returnType), false);
+            } else {
+                mv.visitTypeInsn(Opcodes.CHECKCAST, returnType.getInternalName());
             }
-            if (name.equals("equals") && method.getParameterCount() == 1) {
-                Object other = args[0];
-                if (other == proxy) return true;
-                if (!(other instanceof Annotation a) || !a.annotationType().equals(annType)) return false;
-                for (Method m : annType.getDeclaredMethods()) {
-                    Object thisVal = getValue(m);
-                    Object thatVal = m.invoke(other);
-                    if (!equalsMemberValue(thisVal, thatVal)) return false;
-                }
-                return true;
+            mv.visitInsn(returnType.getOpcode(Opcodes.IRETURN));
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Coerces a member value as stored by ASM to the member's Java type.
+     */
+    Object coerce(Object raw, Class<?> expectedType) {
+        if (raw == null) return null;
+        // Handle enum stored as String[]{descriptor, value}
+        if (raw instanceof String[] arr && arr.length == 2 && expectedType.isEnum()) {
+            String desc = arr[0];
+            String constName = arr[1];
+            String enumClassName = Type.getType(desc).getClassName();
+            Class<?> enumType = load(enumClassName);
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Object enumConst = Enum.valueOf((Class) enumType, constName);
+            return enumConst;
+        }
+        if (raw instanceof Type t && expectedType == Class.class) {
+            return load(t);
+        }
+        if (raw instanceof AnnotationNode an && expectedType.isAnnotation()) {
+            String nestedName = Type.getType(an.desc).getClassName();
+            return create(nestedName, an);
+        }
+        if (expectedType.isArray() && raw instanceof List<?> list) {
+            Class<?> component = expectedType.getComponentType();
+            Object array = java.lang.reflect.Array.newInstance(component, list.size());
+            for (int i = 0; i < list.size(); i++) {
+                Object elem = list.get(i);
+                Object coerced = coerce(elem, component);
+                java.lang.reflect.Array.set(array, i, coerced);
             }
-            return getValue(method);
+            return array;
         }
+        return raw;
+    }
 
-        private Object getValue(Method method) {
-            String element = method.getName();
-            Object raw = values.get(element);
-            if (raw == null) {
-                raw = method.getDefaultValue();
+    private Class<?> load(Type type) {
+        return switch (type.getSort()) {
+            case Type.VOID -> void.class;
+            case Type.BOOLEAN -> boolean.class;
+            case Type.CHAR -> char.class;
+            case Type.BYTE -> byte.class;
+            case Type.SHORT -> short.class;
+            case Type.INT -> int.class;
+            case Type.FLOAT -> float.class;
+            case Type.LONG -> long.class;
+            case Type.DOUBLE -> double.class;
+            case Type.ARRAY -> {
+                Class<?> cls = load(type.getElementType());
+                for (int i = 0; i < type.getDimensions(); i++) {
+                    cls = cls.arrayType();
+                }
+                yield cls;
             }
-            if (raw == null) {
-                throw new IllegalStateException("Missing value for annotation element: " + annType.getName() + "." + element);
+            default -> load(type.getClassName());
+        };
+    }
+
+    private Class<?> load(String className) {
+        try {
+            return Class.forName(className, false, classLoader);
+        } catch (ClassNotFoundException e) {
+            // Fallback strategy: attempt context loader; if still missing, wrap with a descriptive error.
+            ClassLoader ctx = Thread.currentThread().getContextClassLoader();
+            try {
+                return Class.forName(className, false, ctx);
+            } catch (ClassNotFoundException e2) {
+                throw new IllegalStateException("Failed to load class referenced in annotation member: " + className +
+                        ". Ensure annotation member types are on the runtime classpath during expansion.", e);
             }
-            return coerce(raw, method.getReturnType());
         }
+    }
 
-        private Map<String, Object> parseValues(AnnotationNode node) {
-            Map<String, Object> map = new HashMap<>();
+    /**
+     * How instances of one annotation type are created: through the generated class if
+     * {@code constructor} is set, as a proxy otherwise.
+     */
+    private record Implementation(AnnotationImplementation.Model model, MethodHandle constructor) {
+        Annotation newInstance(AnnotationNode node) {
+            Object[] raw = model.defaults.clone();
             List<Object> vals = node.values;
             if (vals != null) {
                 for (int i = 0; i < vals.size(); i += 2) {
-                    String name = (String) vals.get(i);
-                    Object value = vals.get(i + 1);
-                    map.put(name, value);
+                    Integer index = model.indexByName.get((String) vals.get(i));
+                    if (index != null) {
+                        raw[index] = vals.get(i + 1);
+                    }
                 }
             }
-            return map;
-        }
-
-        private Object coerce(Object raw, Class<?> expectedType) {
-            if (raw == null) return null;
-            // Handle enum stored as String[]{descriptor, value}
-            if (raw instanceof String[] arr && arr.length == 2 && expectedType.isEnum()) {
-                String desc = arr[0];
-                String constName = arr[1];
-                String enumClassName = Type.getType(desc).getClassName();
-                Class<?> enumType = load(enumClassName);
-                @SuppressWarnings({"unchecked", "rawtypes"})
-                Object enumConst = Enum.valueOf((Class) enumType, constName);
-                return enumConst;
-            }
-            if (raw instanceof Type t && expectedType == Class.class) {
-                return load(t.getClassName());
+            if (constructor == null) {
+                ProxyValues values = new ProxyValues(model, raw);
+                return (Annotation) Proxy.newProxyInstance(model.type.getClassLoader(), new Class<?>[]{model.type},
+                        new ProxyInvocationHandler(values));
             }
-            if (raw instanceof AnnotationNode an && expectedType.isAnnotation()) {
-                String nestedName = Type.getType(an.desc).getClassName();
-                return new AnnotationInstanceFactory(cl).create(nestedName, an);
-            }
-            if (expectedType.isArray() && raw instanceof List<?> list) {
-                Class<?> component = expectedType.getComponentType();
-                Object array = java.lang.reflect.Array.newInstance(component, list.size());
-                for (int i = 0; i < list.size(); i++) {
-                    Object elem = list.get(i);
-                    Object coerced = coerce(elem, component);
-                    java.lang.reflect.Array.set(array, i, coerced);
-                }
-                return array;
+            try {
+                return (AnnotationImplementation) constructor.invokeExact(model, raw);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Failed to instantiate annotation " + model.type.getName(), e);
             }
-            return raw;
         }
+    }
 
-        private Class<?> load(String className) {
-            try {
-                return Class.forName(className, false, cl);
-            } catch (ClassNotFoundException e) {
-                // Defer class resolution: return a proxy Class that preserves the name but doesn't force loading.
-                // Fallback strategy: attempt context loader; if still missing, wrap with a descriptive error.
-                ClassLoader ctx = Thread.currentThread().getContextClassLoader();
-                try {
-                    return Class.forName(className, false, ctx);
-                } catch (ClassNotFoundException e2) {
-                    throw new IllegalStateException("Failed to load class referenced in annotation member: " + className +
-                            ". Ensure annotation member types are on the runtime classpath during expansion.", e);
-                }
-            }
+    /**
+     * Member values of a proxied annotation, with the same coercion and memoization as the generated classes.
+     */
+    private static final class ProxyValues extends AnnotationImplementation {
+        ProxyValues(Model model, Object[] raw) {
+            super(model, raw);
+        }
+    }
+
+    private static final class ProxyInvocationHandler implements InvocationHandler {
+        private final ProxyValues values;
+
+        ProxyInvocationHandler(ProxyValues values) {
+            this.values = values;
         }
 
-        private boolean equalsMemberValue(Object a, Object b) {
-            if (a == b) return true;
-            if (a == null || b == null) return false;
-            Class<?> ca = a.getClass();
-            Class<?> cb = b.getClass();
-            if (ca.isArray() && cb.isArray()) {
-                int len = java.lang.reflect.Array.getLength(a);
-                if (len != java.lang.reflect.Array.getLength(b)) return false;
-                for (int i = 0; i < len; i++) {
-                    Object ea = java.lang.reflect.Array.get(a, i);
-                    Object eb = java.lang.reflect.Array.get(b, i);
-                    if (!equalsMemberValue(ea, eb)) return false;
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (method.getParameterCount() == 0) {
+                switch (name) {
+                    case "annotationType":
+                        return values.annotationType();
+                    case "toString":
+                        return values.toString();
+                    case "hashCode":
+                        return values.hashCode();
+                    default:
+                        Integer index = values.model().indexByName.get(name);
+                        if (index != null) return values.value(index);
                 }
-                return true;
+            } else if (name.equals("equals") && method.getParameterCount() == 1) {
+                return args[0] == proxy || values.equals(args[0]);
             }
-            return a.equals(b);
+            throw new UnsupportedOperationException(method.toString());
         }
     }
-}
\ No newline at end of file
+}
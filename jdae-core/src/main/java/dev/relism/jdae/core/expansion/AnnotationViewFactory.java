@@ -0,0 +1,228 @@
+package dev.relism.jdae.core.expansion;
+
+import dev.relism.jdae.api.AnnotationView;
+import dev.relism.jdae.api.ClassRef;
+import dev.relism.jdae.api.EnumRef;
+import dev.relism.jdae.api.ExpansionException;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates {@link AnnotationView}s from ASM {@link AnnotationNode} data. Member names and defaults are read
+ * from the annotation type's class file (its methods and their {@code AnnotationDefault} attributes),
+ * once per type, so no class is loaded.
+ */
+final class AnnotationViewFactory {
+    private final ClassLoader classLoader;
+    private final Map<String, Members> members = new ConcurrentHashMap<>();
+
+    AnnotationViewFactory(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    AnnotationView create(String annotationClassName, AnnotationNode node) {
+        Members m = members.computeIfAbsent(annotationClassName, this::readMembers);
+        Map<String, Object> explicit = new LinkedHashMap<>();
+        if (node.values != null) {
+            for (int i = 0; i < node.values.size(); i += 2) {
+                explicit.put((String) node.values.get(i), node.values.get(i + 1));
+            }
+        }
+        return new AsmAnnotationView(annotationClassName, m, explicit);
+    }
+
+    /**
+     * Members of an annotation type in declaration order, with the raw ASM value of their defaults.
+     * If the class file is not available, only explicitly set members are known.
+     */
+    private Members readMembers(String annotationClassName) {
+        Set<String> names = new LinkedHashSet<>();
+        Map<String, Object> defaults = new LinkedHashMap<>();
+        if (classLoader != null) {
+            try (InputStream in = classLoader.getResourceAsStream(annotationClassName.replace('.', '/') + ".class")) {
+                if (in != null) {
+                    ClassNode cn = new ClassNode();
+                    new ClassReader(in).accept(cn, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+                    for (MethodNode mn : cn.methods) {
+                        if ((mn.access & (Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC)) != 0 || !mn.desc.startsWith("()")) continue;
+                        names.add(mn.name);
+                        if (mn.annotationDefault != null) {
+                            defaults.put(mn.name, mn.annotationDefault);
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // treat as unknown type
+            }
+        }
+        return new Members(Collections.unmodifiableSet(names), defaults);
+    }
+
+    private record Members(Set<String> names, Map<String, Object> defaults) {
+    }
+
+    private final class AsmAnnotationView implements AnnotationView {
+        private final String annotationClassName;
+        private final Members members;
+        private final Map<String, Object> explicit;
+
+        AsmAnnotationView(String annotationClassName, Members members, Map<String, Object> explicit) {
+            this.annotationClassName = annotationClassName;
+            this.members = members;
+            this.explicit = explicit;
+        }
+
+        @Override
+        public String getAnnotationClassName() {
+            return annotationClassName;
+        }
+
+        @Override
+        public Set<String> getMemberNames() {
+            if (members.names.containsAll(explicit.keySet())) {
+                return members.names;
+            }
+            Set<String> names = new LinkedHashSet<>(members.names);
+            names.addAll(explicit.keySet());
+            return Collections.unmodifiableSet(names);
+        }
+
+        @Override
+        public boolean has(String member) {
+            return explicit.containsKey(member) || members.defaults.containsKey(member);
+        }
+
+        @Override
+        public boolean isExplicit(String member) {
+            return explicit.containsKey(member);
+        }
+
+        @Override
+        public Object get(String member) {
+            Object raw = explicit.get(member);
+            if (raw == null) {
+                raw = members.defaults.get(member);
+            }
+            if (raw == null) {
+                throw new ExpansionException("Missing value for annotation element: " + annotationClassName + "." + member);
+            }
+            return toViewValue(raw);
+        }
+
+        @Override
+        public String getString(String member) {
+            return get(member, String.class);
+        }
+
+        @Override
+        public boolean getBoolean(String member) {
+            return get(member, Boolean.class);
+        }
+
+        @Override
+        public int getInt(String member) {
+            return get(member, Number.class).intValue();
+        }
+
+        @Override
+        public long getLong(String member) {
+            return get(member, Number.class).longValue();
+        }
+
+        @Override
+        public double getDouble(String member) {
+            return get(member, Number.class).doubleValue();
+        }
+
+        @Override
+        public ClassRef getClass(String member) {
+            return get(member, ClassRef.class);
+        }
+
+        @Override
+        public EnumRef getEnum(String member) {
+            return get(member, EnumRef.class);
+        }
+
+        @Override
+        public AnnotationView getAnnotation(String member) {
+            return get(member, AnnotationView.class);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> getList(String member, Class<T> elementType) {
+            List<?> list = get(member, List.class);
+            for (Object o : list) {
+                if (!elementType.isInstance(o)) {
+                    throw new ExpansionException(annotationClassName + "." + member + " is not an array of " + elementType.getSimpleName());
+                }
+            }
+            return (List<T>) list;
+        }
+
+        private <T> T get(String member, Class<T> type) {
+            Object v = get(member);
+            if (!type.isInstance(v)) {
+                throw new ExpansionException(annotationClassName + "." + member + " is a " + v.getClass().getSimpleName()
+                        + ", not a " + type.getSimpleName());
+            }
+            return type.cast(v);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof AnnotationView other) || !annotationClassName.equals(other.getAnnotationClassName())) return false;
+            for (String name : getMemberNames()) {
+                if (has(name) != other.has(name) || has(name) && !get(name).equals(other.get(name))) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return annotationClassName.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("@").append(annotationClassName).append('(');
+            String sep = "";
+            for (String name : getMemberNames()) {
+                if (!has(name)) continue;
+                sb.append(sep).append(name).append('=').append(get(name));
+                sep = ", ";
+            }
+            return sb.append(')').toString();
+        }
+    }
+
+    private Object toViewValue(Object raw) {
+        return switch (raw) {
+            case Type t -> new ClassRef(t.getDescriptor());
+            case String[] e when e.length == 2 -> new EnumRef(e[0], e[1]);
+            case AnnotationNode an -> create(Type.getType(an.desc).getClassName(), an);
+            case List<?> list -> {
+                List<Object> out = new ArrayList<>(list.size());
+                for (Object o : list) out.add(toViewValue(o));
+                yield Collections.unmodifiableList(out);
+            }
+            default -> raw;
+        };
+    }
+}
@@ -0,0 +1,47 @@
+package dev.relism.jdae.core.expansion;
+
+import dev.relism.jdae.api.AnnotationView;
+import dev.relism.jdae.api.BatchExpander;
+import dev.relism.jdae.api.ExpansionContext;
+import dev.relism.jdae.core.bytecode.ExpanderCandidate;
+
+/**
+ * Occurrence passed to a {@link BatchExpander}; the annotation instance and view are created on first use.
+ */
+final class BatchOccurrence implements BatchExpander.Occurrence<Object> {
+    private final ExpansionContext context;
+    private final ExpanderCandidate candidate;
+    private final AnnotationInstanceFactory annotationFactory;
+    private final AnnotationViewFactory viewFactory;
+    private Object annotation;
+    private AnnotationView view;
+
+    BatchOccurrence(ExpansionContext context, ExpanderCandidate candidate,
+                    AnnotationInstanceFactory annotationFactory, AnnotationViewFactory viewFactory) {
+        this.context = context;
+        this.candidate = candidate;
+        this.annotationFactory = annotationFactory;
+        this.viewFactory = viewFactory;
+    }
+
+    @Override
+    public ExpansionContext getContext() {
+        return context;
+    }
+
+    @Override
+    public Object getAnnotation() {
+        if (annotation == null) {
+            annotation = annotationFactory.create(candidate.getAnnotationClassName(), candidate.getRawAnnotation());
+        }
+        return annotation;
+    }
+
+    @Override
+    public AnnotationView getView() {
+        if (view == null) {
+            view = viewFactory.create(candidate.getAnnotationClassName(), candidate.getRawAnnotation());
+        }
+        return view;
+    }
+}
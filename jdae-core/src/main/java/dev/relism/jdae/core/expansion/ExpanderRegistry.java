@@ -1,111 +1,289 @@
 package dev.relism.jdae.core.expansion;
 
+import dev.relism.jdae.api.AnnotationExpander;
+import dev.relism.jdae.api.BatchExpander;
+import dev.relism.jdae.api.ExpanderScope;
 import dev.relism.jdae.api.JDAEExpander;
+import dev.relism.jdae.api.ViewExpander;
+import dev.relism.jdae.core.index.ExpanderIndex;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.lang.annotation.Annotation;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
-import java.util.HashMap;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Discovers and provides instances of JDAEExpander by annotation type.
+ * Discovers and provides expander instances by annotation type.
+ * Lookups are thread-safe, so a single registry can serve concurrent expansion workers.
+ * Instances are reused according to the expander's {@code @ExpanderLifecycle}.
+ * <p>
+ * Expanders listed in an {@link ExpanderIndex} are registered without loading any class; only
+ * service providers missing from every index are loaded to find their annotation type. Annotation
+ * types without an index entry are resolved from their class file rather than loaded.
+ * <p>
+ * A registry can have a parent registry for the parent of its class loader, e.g. one shared by several
+ * projects over the same dependency jars. It then only discovers the expanders and annotation types in
+ * its class loader's own entries, and looks up everything else in the parent.
  */
 public class ExpanderRegistry {
-    private final Map<String, Class<? extends JDAEExpander<?>>> byAnnotation = new HashMap<>();
-    private final Map<String, ExpanderMeta> metaByAnnotation = new HashMap<>();
+    private final Map<String, Class<? extends AnnotationExpander<?>>> byAnnotation = new ConcurrentHashMap<>();
+    private final Map<String, ExpanderMeta> metaByAnnotation = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ExpanderProvider> providers = new ConcurrentHashMap<>();
     private final ClassLoader projectClassLoader;
+    private final ExpanderRegistry parent;
+    private volatile boolean withoutMetaAnnotation;
 
     public ExpanderRegistry(ClassLoader projectClassLoader) {
+        this(projectClassLoader, null);
+    }
+
+    /**
+     * @param parent registry for the parent of {@code projectClassLoader}, or null. Own entries are only
+     *               told apart from the parent's for a {@link URLClassLoader}; any other loader is scanned in full.
+     */
+    public ExpanderRegistry(ClassLoader projectClassLoader, ExpanderRegistry parent) {
         this.projectClassLoader = projectClassLoader;
-        // map expander -> its annotation type via generics
+        this.parent = parent;
         if (projectClassLoader != null) {
-            for (JDAEExpander<?> exp : ServiceLoader.load(JDAEExpander.class, projectClassLoader)) {
-                Class<?> impl = exp.getClass();
+            Set<String> indexedExpanders = loadIndexes();
+            // map remaining expanders -> their annotation type via generics; they are not instantiated here
+            for (String name : serviceProviderNames()) {
+                if (indexedExpanders.contains(name)) continue;
+                Class<? extends AnnotationExpander<?>> impl;
+                try {
+                    impl = expanderClass(Class.forName(name, false, projectClassLoader));
+                } catch (ClassNotFoundException | LinkageError | ClassCastException e) {
+                    continue;
+                }
                 String annName = resolveAnnotationClassNameFromExpander(impl);
                 if (annName != null) {
-                    register(annName, (Class<? extends JDAEExpander<?>>) impl);
-                    // and cache the meta too
-                    metaByAnnotation.computeIfAbsent(annName, this::resolveExpanderMetaFromAnnotation);
+                    register(annName, impl);
                 }
             }
         }
     }
 
-    public void register(String annotationClassName, Class<? extends JDAEExpander<?>> expanderClass) {
-        byAnnotation.put(annotationClassName, expanderClass);
-        metaByAnnotation.computeIfAbsent(annotationClassName, this::resolveExpanderMetaFromAnnotation);
+    /**
+     * Registers the entries of every {@link ExpanderIndex} on the classpath and returns the indexed expander class names.
+     */
+    private Set<String> loadIndexes() {
+        Set<String> expanders = new HashSet<>();
+        for (URL url : resources(ExpanderIndex.RESOURCE)) {
+            try (InputStream in = open(url)) {
+                for (ExpanderIndex.Entry e : ExpanderIndex.read(in).values()) {
+                    metaByAnnotation.putIfAbsent(e.annotationClassName(),
+                            new ExpanderMeta(e.expanderClassName(), e.keepOriginal(), e.id()));
+                    expanders.add(e.expanderClassName());
+                }
+            } catch (IOException e) {
+                // unreadable index: its expanders are still discovered as service providers
+            }
+        }
+        return expanders;
     }
 
-    public JDAEExpander<?> get(String annotationClassName) {
-        Class<? extends JDAEExpander<?>> cls = byAnnotation.get(annotationClassName);
-        if (cls != null) {
-            try {
-                return cls.getDeclaredConstructor().newInstance();
-            } catch (Exception e) {
-                throw new IllegalStateException("Failed to instantiate expander for " + annotationClassName, e);
+    /**
+     * Class names listed in the {@code META-INF/services} files for JDAEExpander, as ServiceLoader would read them.
+     * Expanders of every kind are listed there, not only those implementing JDAEExpander.
+     */
+    private Set<String> serviceProviderNames() {
+        Set<String> names = new LinkedHashSet<>();
+        for (URL url : resources("META-INF/services/" + JDAEExpander.class.getName())) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(open(url), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int comment = line.indexOf('#');
+                    String name = (comment >= 0 ? line.substring(0, comment) : line).trim();
+                    if (!name.isEmpty()) names.add(name);
+                }
+            } catch (IOException e) {
+                // skip unreadable provider files
             }
         }
-        // fallback
+        return names;
+    }
+
+    private Iterable<URL> resources(String name) {
+        try {
+            if (parent != null && projectClassLoader instanceof URLClassLoader own) {
+                // the parent registry already holds what the parent loader provides
+                return Collections.list(own.findResources(name));
+            }
+            return Collections.list(projectClassLoader.getResources(name));
+        } catch (IOException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    private static InputStream open(URL url) throws IOException {
+        URLConnection connection = url.openConnection();
+        // do not keep project jars open in the JVM-wide jar cache
+        connection.setUseCaches(false);
+        return connection.getInputStream();
+    }
+
+    public void register(String annotationClassName, Class<? extends AnnotationExpander<?>> expanderClass) {
+        byAnnotation.put(annotationClassName, expanderClass);
         ExpanderMeta meta = metaByAnnotation.computeIfAbsent(annotationClassName, this::resolveExpanderMetaFromAnnotation);
-        if (meta != null && meta.expanderClass != null) {
-            try {
-                return meta.expanderClass.getDeclaredConstructor().newInstance();
-            } catch (Exception e) {
-                throw new IllegalStateException("Failed to instantiate expander for " + annotationClassName, e);
+        if (meta == ExpanderMeta.NONE) {
+            withoutMetaAnnotation = true;
+        }
+    }
+
+    /**
+     * Return true if an expander is registered, through a service file or {@link #register}, for an
+     * annotation type that is not meta-annotated with {@code @Expander}. The candidate index written
+     * by {@code jdae-processor} does not list the classes using such annotation types.
+     */
+    public boolean hasExpandersWithoutMetaAnnotation() {
+        return withoutMetaAnnotation || (parent != null && parent.hasExpandersWithoutMetaAnnotation());
+    }
+
+    /**
+     * Metadata from this registry's own entries, {@link ExpanderMeta#NONE} if they do not know the annotation type.
+     */
+    private ExpanderMeta ownMeta(String annotationClassName) {
+        return metaByAnnotation.computeIfAbsent(annotationClassName, this::resolveOwnExpanderMeta);
+    }
+
+    public AnnotationExpander<?> get(String annotationClassName) {
+        try {
+            ExpanderProvider provider = provider(annotationClassName);
+            return provider != null ? provider.get() : null;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to instantiate expander for " + annotationClassName, e);
+        }
+    }
+
+    /**
+     * Return true if the expander for the annotation type is a {@link BatchExpander}. Loads the expander
+     * class without instantiating it; an expander that cannot be loaded is left for {@link #get} to report.
+     */
+    public boolean isBatchExpander(String annotationClassName) {
+        try {
+            ExpanderProvider provider = provider(annotationClassName);
+            return provider != null && provider.batch;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Return true if the expander for the annotation type is a {@link ViewExpander}, see {@link #isBatchExpander}.
+     */
+    public boolean isViewExpander(String annotationClassName) {
+        try {
+            ExpanderProvider provider = provider(annotationClassName);
+            return provider != null && provider.view;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private ExpanderProvider provider(String annotationClassName) throws ClassNotFoundException {
+        Class<? extends AnnotationExpander<?>> cls = byAnnotation.get(annotationClassName);
+        if (cls == null) {
+            // fallback
+            ExpanderMeta meta = ownMeta(annotationClassName);
+            if (meta.expanderClassName == null) {
+                return parent != null ? parent.provider(annotationClassName) : null;
             }
+            cls = meta.expanderClass(projectClassLoader);
         }
-        return null;
+        return providers.computeIfAbsent(cls, ExpanderProvider::new);
     }
 
     public boolean hasExpander(String annotationClassName) {
-        if (byAnnotation.containsKey(annotationClassName)) return true;
-        ExpanderMeta meta = metaByAnnotation.computeIfAbsent(annotationClassName, this::resolveExpanderMetaFromAnnotation);
-        return meta != null && meta.expanderClass != null;
+        return getExpanderClassName(annotationClassName) != null;
+    }
+
+    /**
+     * Name of the expander class handling the given annotation type, or null if there is none.
+     */
+    public String getExpanderClassName(String annotationClassName) {
+        Class<? extends AnnotationExpander<?>> cls = byAnnotation.get(annotationClassName);
+        if (cls != null) return cls.getName();
+        String expander = ownMeta(annotationClassName).expanderClassName;
+        if (expander == null && parent != null) {
+            return parent.getExpanderClassName(annotationClassName);
+        }
+        return expander;
     }
 
     /**
-     * Resolve Expander metadata (expander class, keepOriginal, id) from the annotation type's @Expander meta-annotation.
+     * As {@link #resolveExpanderMetaFromAnnotation}, for annotation types in the class loader's own entries only.
+     */
+    private ExpanderMeta resolveOwnExpanderMeta(String annotationClassName) {
+        if (parent != null && projectClassLoader instanceof URLClassLoader own
+                && own.findResource(annotationClassName.replace('.', '/') + ".class") == null) {
+            return ExpanderMeta.NONE;
+        }
+        return resolveExpanderMetaFromAnnotation(annotationClassName);
+    }
+
+    /**
+     * Resolve Expander metadata (expander class, keepOriginal, id) from the @Expander meta-annotation in the
+     * annotation type's class file, without loading it.
+     * Returns {@link ExpanderMeta#NONE} rather than null so that negative results are cached as well.
      */
     private ExpanderMeta resolveExpanderMetaFromAnnotation(String annotationClassName) {
-        if (projectClassLoader == null) return null;
-        try {
-            Class<?> annType = Class.forName(annotationClassName, false, projectClassLoader);
-            for (Annotation a : annType.getAnnotations()) {
-                if (a.annotationType().getName().equals("dev.relism.jdae.api.annotations.Expander")) {
-                    Method valueMethod = a.annotationType().getMethod("value");
-                    Method keepOriginalMethod = a.annotationType().getMethod("keepOriginal");
-                    Method idMethod = a.annotationType().getMethod("id");
-                    Object val = valueMethod.invoke(a);
-                    boolean keepOriginal = (Boolean) keepOriginalMethod.invoke(a);
-                    String id = (String) idMethod.invoke(a);
-                    Class<? extends JDAEExpander<?>> typed = null;
-                    if (val instanceof Class<?> expClass) {
-                        @SuppressWarnings("unchecked")
-                        Class<? extends JDAEExpander<?>> cast = (Class<? extends JDAEExpander<?>>) expClass;
-                        try {
-                            Class.forName(cast.getName(), false, projectClassLoader);
-                            typed = cast;
-                        } catch (ClassNotFoundException cnf) {
-                            // expander not resolvable; leave typed as null
-                        }
-                    }
-                    return new ExpanderMeta(typed, keepOriginal, id);
-                }
+        if (projectClassLoader == null) return ExpanderMeta.NONE;
+        try (InputStream in = projectClassLoader.getResourceAsStream(annotationClassName.replace('.', '/') + ".class")) {
+            if (in == null) return ExpanderMeta.NONE;
+            ExpanderMetaReader reader = new ExpanderMetaReader();
+            new ClassReader(in).accept(reader, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            if (!reader.found) return ExpanderMeta.NONE;
+            String expander = reader.expanderClassName;
+            if (expander != null && projectClassLoader.getResource(expander.replace('.', '/') + ".class") == null) {
+                // expander not resolvable
+                expander = null;
             }
-        } catch (Exception e) {
-            // ignore and fallback to null
+            return new ExpanderMeta(expander, reader.keepOriginal, reader.id);
+        } catch (IOException | RuntimeException e) {
+            // ignore and fallback to NONE
         }
-        return null;
+        return ExpanderMeta.NONE;
+    }
+
+    /**
+     * Narrows a class to an expander class.
+     *
+     * @throws ClassCastException if it does not implement {@link AnnotationExpander}
+     */
+    @SuppressWarnings("unchecked")
+    private static Class<? extends AnnotationExpander<?>> expanderClass(Class<?> cls) {
+        // checked by asSubclass: the type argument only exists at compile time
+        return (Class<? extends AnnotationExpander<?>>) cls.asSubclass(AnnotationExpander.class);
     }
 
     private String resolveAnnotationClassNameFromExpander(Class<?> impl) {
         for (Type t : impl.getGenericInterfaces()) {
             if (t instanceof ParameterizedType pt) {
                 Type raw = pt.getRawType();
-                if (raw instanceof Class && JDAEExpander.class.isAssignableFrom((Class<?>) raw)) {
+                if (raw instanceof Class && AnnotationExpander.class.isAssignableFrom((Class<?>) raw)) {
                     Type arg = pt.getActualTypeArguments()[0];
                     if (arg instanceof Class<?> ac) {
                         return ac.getName();
@@ -125,19 +303,159 @@ public class ExpanderRegistry {
      * Defaults to false (do not remove) when metadata is unavailable.
      */
     public boolean shouldRemoveOriginal(String annotationClassName) {
-        ExpanderMeta meta = metaByAnnotation.computeIfAbsent(annotationClassName, this::resolveExpanderMetaFromAnnotation);
-        return meta != null && !meta.keepOriginal;
+        ExpanderMeta meta = ownMeta(annotationClassName);
+        if (meta == ExpanderMeta.NONE && parent != null && !byAnnotation.containsKey(annotationClassName)) {
+            return parent.shouldRemoveOriginal(annotationClassName);
+        }
+        return !meta.keepOriginal;
+    }
+
+    /**
+     * Lifecycle declared by the expander class through {@code @ExpanderLifecycle}, matched by name
+     * like {@code @Expander} so that it also works when the api is loaded twice.
+     */
+    private static ExpanderScope scopeOf(Class<?> expanderClass) {
+        for (Annotation a : expanderClass.getAnnotations()) {
+            if (a.annotationType().getName().equals("dev.relism.jdae.api.annotations.ExpanderLifecycle")) {
+                try {
+                    Object scope = a.annotationType().getMethod("value").invoke(a);
+                    return ExpanderScope.valueOf(((Enum<?>) scope).name());
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    break;
+                }
+            }
+        }
+        return ExpanderScope.PER_INVOCATION;
+    }
+
+    /**
+     * Creates and caches the instances of one expander class.
+     */
+    private static final class ExpanderProvider {
+        private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(AnnotationExpander.class);
+
+        private final MethodHandle constructor;
+        private final ExpanderScope scope;
+        final boolean batch;
+        final boolean view;
+        private volatile AnnotationExpander<?> singleton;
+        // weakly keyed by thread rather than a ThreadLocal: instances die with the registry instead of
+        // staying reachable from long-lived build threads, and with their thread, such as the workers of
+        // a finished expansion pool, instead of accumulating in a registry shared by many runs
+        private final Map<Thread, AnnotationExpander<?>> perThread;
+
+        ExpanderProvider(Class<?> expanderClass) {
+            try {
+                this.constructor = MethodHandles.lookup()
+                        .unreflectConstructor(expanderClass.getDeclaredConstructor())
+                        .asType(CONSTRUCTOR_TYPE);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Expander " + expanderClass.getName() + " needs an accessible no-arg constructor", e);
+            }
+            this.scope = scopeOf(expanderClass);
+            this.batch = BatchExpander.class.isAssignableFrom(expanderClass);
+            this.view = ViewExpander.class.isAssignableFrom(expanderClass);
+            if ((batch ? 1 : 0) + (view ? 1 : 0) + (JDAEExpander.class.isAssignableFrom(expanderClass) ? 1 : 0) != 1) {
+                throw new IllegalStateException("Expander " + expanderClass.getName()
+                        + " must implement exactly one of JDAEExpander, ViewExpander and BatchExpander");
+            }
+            this.perThread = scope == ExpanderScope.PER_THREAD ? Collections.synchronizedMap(new WeakHashMap<>()) : null;
+        }
+
+        AnnotationExpander<?> get() throws Throwable {
+            switch (scope) {
+                case SINGLETON -> {
+                    AnnotationExpander<?> instance = singleton;
+                    if (instance == null) {
+                        synchronized (this) {
+                            instance = singleton;
+                            if (instance == null) {
+                                instance = newInstance();
+                                singleton = instance;
+                            }
+                        }
+                    }
+                    return instance;
+                }
+                case PER_THREAD -> {
+                    Thread thread = Thread.currentThread();
+                    AnnotationExpander<?> instance = perThread.get(thread);
+                    if (instance == null) {
+                        instance = newInstance();
+                        perThread.put(thread, instance);
+                    }
+                    return instance;
+                }
+                default -> {
+                    return newInstance();
+                }
+            }
+        }
+
+        private AnnotationExpander<?> newInstance() throws Throwable {
+            return (AnnotationExpander<?>) constructor.invokeExact();
+        }
+    }
+
+    /**
+     * Reads the members of an @Expander meta-annotation from an annotation type's class file.
+     */
+    private static final class ExpanderMetaReader extends ClassVisitor {
+        private static final String EXPANDER_DESC = "Ldev/relism/jdae/api/annotations/Expander;";
+
+        boolean found;
+        String expanderClassName;
+        boolean keepOriginal = true;
+        String id = "";
+
+        ExpanderMetaReader() {
+            super(Opcodes.ASM9);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            if (!EXPANDER_DESC.equals(descriptor)) return null;
+            found = true;
+            return new AnnotationVisitor(Opcodes.ASM9) {
+                @Override
+                public void visit(String name, Object value) {
+                    switch (name) {
+                        case "value" -> expanderClassName = value instanceof org.objectweb.asm.Type t ? t.getClassName() : null;
+                        case "keepOriginal" -> keepOriginal = Boolean.TRUE.equals(value);
+                        case "id" -> id = String.valueOf(value);
+                        default -> {
+                        }
+                    }
+                }
+            };
+        }
     }
 
     private static final class ExpanderMeta {
-        final Class<? extends JDAEExpander<?>> expanderClass;
+        /** Cached result for annotation types without a resolvable @Expander. */
+        static final ExpanderMeta NONE = new ExpanderMeta(null, true, "");
+
+        final String expanderClassName;
         final boolean keepOriginal;
         final String id;
+        private volatile Class<? extends AnnotationExpander<?>> expanderClass;
 
-        ExpanderMeta(Class<? extends JDAEExpander<?>> expanderClass, boolean keepOriginal, String id) {
-            this.expanderClass = expanderClass;
+        ExpanderMeta(String expanderClassName, boolean keepOriginal, String id) {
+            this.expanderClassName = expanderClassName;
             this.keepOriginal = keepOriginal;
             this.id = id;
         }
+
+        /**
+         * Loads the expander class on first use.
+         */
+        Class<? extends AnnotationExpander<?>> expanderClass(ClassLoader loader) throws ClassNotFoundException {
+            Class<? extends AnnotationExpander<?>> cls = expanderClass;
+            if (cls == null) {
+                cls = ExpanderRegistry.expanderClass(Class.forName(expanderClassName, false, loader));
+                expanderClass = cls;
+            }
+            return cls;
+        }
     }
-}
\ No newline at end of file
+}
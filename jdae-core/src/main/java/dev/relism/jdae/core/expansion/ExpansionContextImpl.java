@@ -2,6 +2,8 @@ package dev.relism.jdae.core.expansion;
 
 import dev.relism.jdae.api.*;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
 
 public class ExpansionContextImpl implements ExpansionContext {
@@ -111,7 +113,7 @@ public class ExpansionContextImpl implements ExpansionContext {
             // but we keep it as a descriptor and convert later in rewriter.
             SimpleAnnotationBuilder nested = new SimpleAnnotationBuilder(annotationClassName);
             consumer.accept(nested);
-            builder.value(name, nested.build());
+            builder.member(name, AnnotationValue.of(nested.build()));
             return this;
         }
 
@@ -122,11 +124,11 @@ public class ExpansionContextImpl implements ExpansionContext {
 
         @Override
         public AnnotationBuilder nestedArray(String name, AnnotationBuilder... nestedBuilders) {
-            AnnotationDescriptor[] arr = new AnnotationDescriptor[nestedBuilders.length];
-            for (int i = 0; i < nestedBuilders.length; i++) {
-                arr[i] = nestedBuilders[i].build();
+            List<AnnotationValue> elements = new ArrayList<>(nestedBuilders.length);
+            for (AnnotationBuilder nested : nestedBuilders) {
+                elements.add(AnnotationValue.of(nested.build()));
             }
-            builder.value(name, arr);
+            builder.member(name, new AnnotationValue.ArrayValue(elements));
             return this;
         }
 
@@ -162,7 +164,7 @@ public class ExpansionContextImpl implements ExpansionContext {
         public AnnotationBuilder nested(String name, String annotationClassName, Consumer<AnnotationBuilder> consumer) {
             SimpleAnnotationBuilder nested = new SimpleAnnotationBuilder(annotationClassName);
             consumer.accept(nested);
-            builder.value(name, nested.build());
+            builder.member(name, AnnotationValue.of(nested.build()));
             return this;
         }
 
@@ -173,11 +175,11 @@ public class ExpansionContextImpl implements ExpansionContext {
 
         @Override
         public AnnotationBuilder nestedArray(String name, AnnotationBuilder... nestedBuilders) {
-            AnnotationDescriptor[] arr = new AnnotationDescriptor[nestedBuilders.length];
-            for (int i = 0; i < nestedBuilders.length; i++) {
-                arr[i] = nestedBuilders[i].build();
+            List<AnnotationValue> elements = new ArrayList<>(nestedBuilders.length);
+            for (AnnotationBuilder nested : nestedBuilders) {
+                elements.add(AnnotationValue.of(nested.build()));
             }
-            builder.value(name, arr);
+            builder.member(name, new AnnotationValue.ArrayValue(elements));
             return this;
         }
 
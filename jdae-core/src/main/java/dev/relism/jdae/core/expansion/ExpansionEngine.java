@@ -2,34 +2,168 @@
 package dev.relism.jdae.core.expansion;
 
 import dev.relism.jdae.api.AnnotationDescriptor;
+import dev.relism.jdae.api.AnnotationExpander;
+import dev.relism.jdae.api.BatchExpander;
 import dev.relism.jdae.api.ExpansionMetadata;
 import dev.relism.jdae.api.JDAEExpander;
+import dev.relism.jdae.api.ViewExpander;
 import dev.relism.jdae.core.bytecode.BytecodeExpander;
 import dev.relism.jdae.core.bytecode.ExpanderCandidate;
+import dev.relism.jdae.core.bytecode.RewritePlan;
+import dev.relism.jdae.core.jfr.ExpanderInvocationEvent;
+import dev.relism.jdae.core.metrics.ExpansionMetrics;
+import dev.relism.jdae.core.metrics.ExpansionMetrics.Phase;
 
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Orchestrates scanning, expansion, validation, and rewriting for a class's bytecode.
+ * An engine holds no per-class state and may be shared by concurrent expansion workers,
+ * provided each worker thread's context classloader can resolve the project classes.
  */
 public class ExpansionEngine {
     private final ExpanderRegistry registry;
     private final BytecodeExpander bytecodeExpander;
     private final AnnotationInstanceFactory annotationFactory;
+    private final AnnotationViewFactory viewFactory;
+    private final ExpansionMetrics metrics;
+    private final ExpansionMemo memo;
 
     public ExpansionEngine(ExpanderRegistry registry) {
         this(registry, Thread.currentThread().getContextClassLoader());
     }
 
     public ExpansionEngine(ExpanderRegistry registry, ClassLoader projectClassLoader) {
+        this(registry, projectClassLoader, new BytecodeExpander());
+    }
+
+    public ExpansionEngine(ExpanderRegistry registry, ClassLoader projectClassLoader, BytecodeExpander bytecodeExpander) {
+        this(registry, projectClassLoader, bytecodeExpander, ExpansionMetrics.disabled());
+    }
+
+    /**
+     * @param metrics receives the time spent creating annotation instances, in each expander and rewriting
+     */
+    public ExpansionEngine(ExpanderRegistry registry, ClassLoader projectClassLoader, BytecodeExpander bytecodeExpander,
+                           ExpansionMetrics metrics) {
+        this(registry, projectClassLoader, bytecodeExpander, metrics, null);
+    }
+
+    /**
+     * @param memo results of {@link dev.relism.jdae.api.annotations.Pure} expanders to reuse, or null to
+     *             call every expander for every annotation
+     */
+    public ExpansionEngine(ExpanderRegistry registry, ClassLoader projectClassLoader, BytecodeExpander bytecodeExpander,
+                           ExpansionMetrics metrics, ExpansionMemo memo) {
         this.registry = registry;
-        this.bytecodeExpander = new BytecodeExpander();
+        this.bytecodeExpander = bytecodeExpander;
         this.annotationFactory = new AnnotationInstanceFactory(projectClassLoader);
+        this.viewFactory = new AnnotationViewFactory(projectClassLoader);
+        this.metrics = metrics;
+        this.memo = memo;
     }
 
+    public ExpansionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Expands one class. Batch expanders are called with the occurrences of this class only.
+     */
     public byte[] expand(byte[] classBytes, List<ExpanderCandidate> candidates, boolean removeOriginal) {
-        byte[] current = classBytes;
+        return expand(classBytes, candidates, removeOriginal, expandBatches(List.of(candidates)));
+    }
+
+    /**
+     * Does the engine's own work for one class without calling any expander: creates the annotation
+     * instances or views the expanders would receive and rewrites the class with the original annotations
+     * removed. The result is discarded, so this has no effect beyond loading classes and warming up code.
+     */
+    public void warmUp(byte[] classBytes, List<ExpanderCandidate> candidates) {
+        RewritePlan plan = new RewritePlan();
+        for (ExpanderCandidate c : candidates) {
+            if (registry.isViewExpander(c.getAnnotationClassName())) {
+                viewFactory.create(c.getAnnotationClassName(), c.getRawAnnotation());
+            } else {
+                annotationFactory.create(c.getAnnotationClassName(), c.getRawAnnotation());
+            }
+            plan.add(c.getOwnerId(), List.of(c.getAnnotationClassName()), List.of());
+        }
+        bytecodeExpander.apply(classBytes, plan);
+    }
+
+    /**
+     * True if some candidate is expanded by a {@link BatchExpander}, so its class should be expanded
+     * after {@link #expandBatches} was called for all classes.
+     */
+    public boolean needsBatch(List<ExpanderCandidate> candidates) {
+        for (ExpanderCandidate c : candidates) {
+            if (registry.isBatchExpander(c.getAnnotationClassName())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Calls each batch expander once with its occurrences among the candidates of the given classes,
+     * in order. The result is passed to {@link #expand(byte[], List, boolean, Batches)} for each class.
+     */
+    public Batches expandBatches(List<List<ExpanderCandidate>> classes) {
+        Map<String, List<ExpanderCandidate>> byType = null;
+        for (List<ExpanderCandidate> candidates : classes) {
+            for (ExpanderCandidate c : candidates) {
+                if (!registry.isBatchExpander(c.getAnnotationClassName())) continue;
+                if (byType == null) byType = new LinkedHashMap<>();
+                byType.computeIfAbsent(c.getAnnotationClassName(), k -> new ArrayList<>()).add(c);
+            }
+        }
+        if (byType == null) return Batches.NONE;
+
+        Map<ExpanderCandidate, ExpansionMetadata> results = new IdentityHashMap<>();
+        for (Map.Entry<String, List<ExpanderCandidate>> entry : byType.entrySet()) {
+            BatchExpander<?> exp = (BatchExpander<?>) registry.get(entry.getKey());
+            List<BatchExpander.Occurrence<Object>> occurrences = new ArrayList<>(entry.getValue().size());
+            for (ExpanderCandidate c : entry.getValue()) {
+                // each occurrence collects its own annotations, merged into its owner in candidate order
+                ExpansionMetadata target = new ExpansionMetadata();
+                results.put(c, target);
+                ExpansionContextImpl ctx = new ExpansionContextImpl(
+                        target,
+                        c.getTargetKind(),
+                        c.getClassInfo(),
+                        c.getMethodInfo(),
+                        c.getFieldInfo()
+                );
+                occurrences.add(new BatchOccurrence(ctx, c, annotationFactory, viewFactory));
+            }
+
+            ExpanderInvocationEvent event = new ExpanderInvocationEvent();
+            event.begin();
+            long start = metrics.start();
+            @SuppressWarnings({"rawtypes", "unchecked"})
+            BatchExpander<Object> raw = (BatchExpander) exp;
+            raw.expandAll(Collections.unmodifiableList(occurrences));
+            metrics.recordExpander(exp.getClass().getName(), start);
+            if (event.shouldCommit()) {
+                event.expander = exp.getClass().getName();
+                event.annotationType = entry.getKey();
+                event.occurrences = occurrences.size();
+                event.commit();
+            }
+        }
+        return new Batches(results);
+    }
+
+    /**
+     * Expands one class, taking the results of batch expanders from {@code batches}.
+     */
+    public byte[] expand(byte[] classBytes, List<ExpanderCandidate> candidates, boolean removeOriginal, Batches batches) {
+        RewritePlan plan = new RewritePlan();
         java.util.Map<String, java.util.List<ExpanderCandidate>> byOwner = new java.util.LinkedHashMap<>();
         for (ExpanderCandidate c : candidates) {
             byOwner.computeIfAbsent(c.getOwnerId(), k -> new java.util.ArrayList<>()).add(c);
@@ -43,25 +177,71 @@ public class ExpansionEngine {
             java.util.Set<String> processedAnnotationTypes = new java.util.LinkedHashSet<>();
 
             for (ExpanderCandidate c : group) {
+                ExpansionMetadata batched = batches.results.get(c);
+                if (batched != null) {
+                    meta.addAll(batched);
+                    processedAnnotationTypes.add(c.getAnnotationClassName());
+                    continue;
+                }
                 if (!registry.hasExpander(c.getAnnotationClassName())) {
                     continue;
                 }
 
-                JDAEExpander<?> exp = registry.get(c.getAnnotationClassName());
+                AnnotationExpander<?> exp = registry.get(c.getAnnotationClassName());
                 if (exp == null) continue;
 
+                String memoKey = memo != null ? memo.key(exp.getClass(), c) : null;
+                if (memoKey != null) {
+                    ExpansionMetadata cached = memo.get(memoKey);
+                    if (cached != null) {
+                        meta.addAll(cached);
+                        processedAnnotationTypes.add(c.getAnnotationClassName());
+                        continue;
+                    }
+                }
+                // a memoized result must hold only what this expander generated
+                ExpansionMetadata target = memoKey != null ? new ExpansionMetadata() : meta;
+
                 ExpansionContextImpl ctx = new ExpansionContextImpl(
-                        meta,
+                        target,
                         c.getTargetKind(),
                         c.getClassInfo(),
                         c.getMethodInfo(),
                         c.getFieldInfo()
                 );
 
-                Annotation annProxy = annotationFactory.create(c.getAnnotationClassName(), c.getRawAnnotation());
-                @SuppressWarnings("rawtypes")
-                JDAEExpander raw = exp;
-                raw.expand(ctx, annProxy);
+                ExpanderInvocationEvent event = new ExpanderInvocationEvent();
+                event.begin();
+                long start = metrics.start();
+                if (exp instanceof ViewExpander<?> viewExpander) {
+                    // no class loading for the annotation type or the values it references
+                    var view = viewFactory.create(c.getAnnotationClassName(), c.getRawAnnotation());
+                    metrics.record(Phase.ANNOTATION_INSTANCE, start);
+                    start = metrics.start();
+                    viewExpander.expand(ctx, view);
+                } else if (exp instanceof JDAEExpander<?> instanceExpander) {
+                    Annotation annProxy = annotationFactory.create(c.getAnnotationClassName(), c.getRawAnnotation());
+                    metrics.record(Phase.ANNOTATION_INSTANCE, start);
+                    start = metrics.start();
+                    expand(instanceExpander, ctx, annProxy);
+                } else {
+                    // batch expanders are called by expandBatches, whose results are handled above
+                    throw new IllegalStateException("Batch expander " + exp.getClass().getName() + " for "
+                            + c.getAnnotationClassName() + " was not called through expandBatches");
+                }
+                metrics.recordExpander(exp.getClass().getName(), start);
+                if (event.shouldCommit()) {
+                    event.expander = exp.getClass().getName();
+                    event.annotationType = c.getAnnotationClassName();
+                    event.owner = c.getOwnerId();
+                    event.targetKind = c.getTargetKind().name();
+                    event.occurrences = 1;
+                    event.commit();
+                }
+                if (memoKey != null) {
+                    memo.put(memoKey, target);
+                    meta.addAll(target);
+                }
 
                 processedAnnotationTypes.add(c.getAnnotationClassName());
             }
@@ -71,12 +251,34 @@ public class ExpansionEngine {
                     .filter(t -> removeOriginal && registry.shouldRemoveOriginal(t))
                     .toList();
 
-            if (inject.isEmpty() && removalTypes.isEmpty()) {
-                continue;
-            }
+            // removal already filtered by policy
+            plan.add(ownerId, removalTypes, inject);
+        }
+        long start = metrics.start();
+        byte[] out = bytecodeExpander.apply(classBytes, plan);
+        metrics.record(Phase.REWRITE, start);
+        return out;
+    }
+
+    /**
+     * Calls an expander with an instance of the annotation type it is registered for, its type argument.
+     */
+    @SuppressWarnings("unchecked")
+    private static <A> void expand(JDAEExpander<A> expander, ExpansionContextImpl ctx, Annotation annotation) {
+        expander.expand(ctx, (A) annotation);
+    }
+
+    /**
+     * Annotations generated by batch expanders, per candidate.
+     */
+    public static final class Batches {
+        /** No batch expander was called. */
+        public static final Batches NONE = new Batches(Map.of());
+
+        private final Map<ExpanderCandidate, ExpansionMetadata> results;
 
-            current = bytecodeExpander.apply(current, ownerId, removalTypes, true /* removal already filtered by policy */, inject);
+        private Batches(Map<ExpanderCandidate, ExpansionMetadata> results) {
+            this.results = results;
         }
-        return current;
     }
-}
\ No newline at end of file
+}
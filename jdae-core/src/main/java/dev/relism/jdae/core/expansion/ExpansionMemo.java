@@ -0,0 +1,457 @@
+package dev.relism.jdae.core.expansion;
+
+import dev.relism.jdae.api.AnnotationDescriptor;
+import dev.relism.jdae.api.AnnotationValue;
+import dev.relism.jdae.api.ClassInfo;
+import dev.relism.jdae.api.ClassRef;
+import dev.relism.jdae.api.EnumRef;
+import dev.relism.jdae.api.ExpansionMetadata;
+import dev.relism.jdae.api.FieldInfo;
+import dev.relism.jdae.api.MethodInfo;
+import dev.relism.jdae.api.TargetAttribute;
+import dev.relism.jdae.core.bytecode.ExpanderCandidate;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AnnotationNode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Generated annotations of {@link dev.relism.jdae.api.annotations.Pure} expanders, keyed by the expander,
+ * the raw values of the expanded annotation and the target attributes the expander depends on. Equal
+ * annotations on equivalent targets are then expanded once.
+ * <p>
+ * At most {@code maxEntries} results are kept, least recently used first out. A memo loaded from a file
+ * keys its entries by the fingerprints of the expander and the annotation type as well, so that it can
+ * be saved and reused by later builds. Thread-safe.
+ */
+public final class ExpansionMemo {
+    private static final int MAGIC = 0x4A444D4F; // "JDMO"
+    private static final int FORMAT_VERSION = 2;
+    private static final String PURE = "dev.relism.jdae.api.annotations.Pure";
+    // compared by identity: a pure expander without dependencies has an empty set of its own
+    private static final Set<TargetAttribute> NOT_PURE = EnumSet.noneOf(TargetAttribute.class);
+
+    private final int maxEntries;
+    private final Path file;
+    private final Function<String, String> fingerprints;
+    private final Map<String, ExpansionMetadata> entries;
+    private final Map<Class<?>, Set<TargetAttribute>> purity = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private ExpansionMemo(int maxEntries, Path file, Function<String, String> fingerprints) {
+        this.maxEntries = maxEntries;
+        this.file = file;
+        this.fingerprints = fingerprints;
+        this.entries = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ExpansionMetadata> eldest) {
+                return size() > ExpansionMemo.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * A memo for a single build.
+     */
+    public static ExpansionMemo inMemory(int maxEntries) {
+        return new ExpansionMemo(maxEntries, null, null);
+    }
+
+    /**
+     * Loads the memo saved in {@code file} by an earlier build; a missing or unreadable file yields an empty memo.
+     *
+     * @param fingerprints fingerprint of an annotation type and its expander, e.g. {@code ExpanderFingerprints::of}
+     */
+    public static ExpansionMemo load(Path file, int maxEntries, Function<String, String> fingerprints) {
+        ExpansionMemo memo = new ExpansionMemo(maxEntries, file, fingerprints);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() == MAGIC && in.readInt() == FORMAT_VERSION) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String key = readString(in);
+                    ExpansionMetadata metadata = new ExpansionMetadata();
+                    int added = in.readInt();
+                    for (int j = 0; j < added; j++) metadata.add(readDescriptor(in));
+                    int merged = in.readInt();
+                    for (int j = 0; j < merged; j++) metadata.merge(readDescriptor(in));
+                    memo.entries.put(key, metadata);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // first build
+        } catch (IOException | RuntimeException e) {
+            memo.entries.clear();
+        }
+        return memo;
+    }
+
+    /**
+     * Writes the memo back to the file it was loaded from.
+     */
+    public void save() throws IOException {
+        if (file == null) {
+            throw new IllegalStateException("In-memory expansion memo cannot be saved");
+        }
+        Map<String, ExpansionMetadata> snapshot;
+        synchronized (entries) {
+            snapshot = new LinkedHashMap<>(entries);
+        }
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, ExpansionMetadata> e : snapshot.entrySet()) {
+                encode(out, e.getKey(), e.getValue());
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Key of the expansion of a candidate by the given expander, or null if the expander is not pure or
+     * the annotation holds values without a canonical form.
+     */
+    String key(Class<?> expanderClass, ExpanderCandidate candidate) {
+        Set<TargetAttribute> dependsOn = purity.computeIfAbsent(expanderClass, ExpansionMemo::purityOf);
+        if (dependsOn == NOT_PURE) return null;
+        StringBuilder sb = new StringBuilder(128).append(expanderClass.getName()).append('|');
+        if (fingerprints != null) {
+            sb.append(fingerprints.apply(candidate.getAnnotationClassName())).append('|');
+        }
+        if (!appendAnnotation(sb, candidate.getRawAnnotation())) return null;
+        for (TargetAttribute attribute : dependsOn) {
+            sb.append('|');
+            appendString(sb, attribute(candidate, attribute));
+        }
+        return sb.toString();
+    }
+
+    ExpansionMetadata get(String key) {
+        ExpansionMetadata metadata;
+        synchronized (entries) {
+            metadata = entries.get(key);
+        }
+        if (metadata != null) hits.increment();
+        else misses.increment();
+        return metadata;
+    }
+
+    void put(String key, ExpansionMetadata metadata) {
+        synchronized (entries) {
+            entries.put(key, metadata);
+        }
+    }
+
+    /**
+     * Attributes declared by {@code @Pure} on the expander class, matched by name like
+     * {@code @ExpanderLifecycle} so that it also works when the api is loaded twice.
+     */
+    private static Set<TargetAttribute> purityOf(Class<?> expanderClass) {
+        for (Annotation a : expanderClass.getAnnotations()) {
+            if (a.annotationType().getName().equals(PURE)) {
+                try {
+                    Object[] values = (Object[]) a.annotationType().getMethod("dependsOn").invoke(a);
+                    Set<TargetAttribute> attributes = EnumSet.noneOf(TargetAttribute.class);
+                    for (Object v : values) {
+                        attributes.add(TargetAttribute.valueOf(((Enum<?>) v).name()));
+                    }
+                    return attributes;
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    break;
+                }
+            }
+        }
+        return NOT_PURE;
+    }
+
+    private static String attribute(ExpanderCandidate c, TargetAttribute attribute) {
+        ClassInfo classInfo = c.getClassInfo();
+        MethodInfo method = c.getMethodInfo();
+        FieldInfo field = c.getFieldInfo();
+        return switch (attribute) {
+            case TARGET_KIND -> c.getTargetKind().name();
+            case CLASS_NAME -> classInfo.getInternalName();
+            case CLASS_ACCESS -> Integer.toString(classInfo.getAccess());
+            case SUPERCLASS -> String.valueOf(classInfo.getSuperName());
+            case INTERFACES -> String.join(",", classInfo.getInterfaces());
+            case MEMBER_NAME -> method != null ? method.getName() : field != null ? field.getName() : "";
+            case MEMBER_DESCRIPTOR -> method != null ? method.getDescriptor() : field != null ? field.getDescriptor() : "";
+            case MEMBER_ACCESS -> method != null ? Integer.toString(method.getAccess())
+                    : field != null ? Integer.toString(field.getAccess()) : "";
+        };
+    }
+
+    /**
+     * Appends the annotation with its members sorted by name, so that the order in the class file does not matter.
+     */
+    private static boolean appendAnnotation(StringBuilder sb, AnnotationNode node) {
+        sb.append('@').append(node.desc).append('(');
+        List<Object> values = node.values;
+        if (values != null) {
+            Map<String, Object> sorted = new TreeMap<>();
+            for (int i = 0; i < values.size(); i += 2) {
+                sorted.put((String) values.get(i), values.get(i + 1));
+            }
+            for (Map.Entry<String, Object> e : sorted.entrySet()) {
+                sb.append(e.getKey()).append('=');
+                if (!appendValue(sb, e.getValue())) return false;
+            }
+        }
+        sb.append(')');
+        return true;
+    }
+
+    private static boolean appendValue(StringBuilder sb, Object value) {
+        switch (value) {
+            case String s -> {
+                sb.append('s');
+                appendString(sb, s);
+            }
+            case Integer v -> sb.append('I').append(v).append(';');
+            case Long v -> sb.append('J').append(v).append(';');
+            case Boolean v -> sb.append('Z').append(v).append(';');
+            case Byte v -> sb.append('B').append(v).append(';');
+            case Short v -> sb.append('S').append(v).append(';');
+            case Character v -> sb.append('C').append((int) v).append(';');
+            case Float v -> sb.append('F').append(Float.floatToIntBits(v)).append(';');
+            case Double v -> sb.append('D').append(Double.doubleToLongBits(v)).append(';');
+            case Type t -> sb.append('c').append(t.getDescriptor());
+            case String[] e when e.length == 2 -> {
+                sb.append('e').append(e[0]);
+                appendString(sb, e[1]);
+            }
+            case AnnotationNode nested -> {
+                return appendAnnotation(sb, nested);
+            }
+            case List<?> list -> {
+                sb.append('[');
+                for (Object element : list) {
+                    if (!appendValue(sb, element)) return false;
+                }
+                sb.append(']');
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void appendString(StringBuilder sb, String s) {
+        // length-prefixed, so that no content can be mistaken for a separator
+        sb.append(s.length()).append(':').append(s);
+    }
+
+    // Persistence: descriptors and their values by element_value tag; arrays also store their element kind
+
+    private static void encode(DataOutputStream out, String key, ExpansionMetadata metadata) throws IOException {
+        writeString(out, key);
+        List<AnnotationDescriptor> added = metadata.getAdded();
+        out.writeInt(added.size());
+        for (AnnotationDescriptor d : added) writeDescriptor(out, d);
+        List<AnnotationDescriptor> merged = metadata.getMerged();
+        out.writeInt(merged.size());
+        for (AnnotationDescriptor d : merged) writeDescriptor(out, d);
+    }
+
+    private static void writeDescriptor(DataOutputStream out, AnnotationDescriptor d) throws IOException {
+        writeString(out, d.getAnnotationClassName());
+        out.writeInt(d.getMembers().size());
+        for (Map.Entry<String, AnnotationValue> e : d.getMembers().entrySet()) {
+            writeString(out, e.getKey());
+            writeValue(out, e.getValue());
+        }
+    }
+
+    private static AnnotationDescriptor readDescriptor(DataInputStream in) throws IOException {
+        AnnotationDescriptor.Builder builder = AnnotationDescriptor.builder(readString(in));
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            builder.member(readString(in), readValue(in));
+        }
+        return builder.build();
+    }
+
+    private static void writeValue(DataOutputStream out, AnnotationValue value) throws IOException {
+        out.writeByte(value.tag());
+        switch (value) {
+            case AnnotationValue.BooleanValue v -> out.writeBoolean(v.value());
+            case AnnotationValue.ByteValue v -> out.writeByte(v.value());
+            case AnnotationValue.CharValue v -> out.writeChar(v.value());
+            case AnnotationValue.ShortValue v -> out.writeShort(v.value());
+            case AnnotationValue.IntValue v -> out.writeInt(v.value());
+            case AnnotationValue.LongValue v -> out.writeLong(v.value());
+            case AnnotationValue.FloatValue v -> out.writeFloat(v.value());
+            case AnnotationValue.DoubleValue v -> out.writeDouble(v.value());
+            case AnnotationValue.StringValue v -> writeString(out, v.value());
+            case AnnotationValue.TypeValue v -> writeString(out, v.type().getDescriptor());
+            case AnnotationValue.EnumValue v -> {
+                writeString(out, v.constant().getDescriptor());
+                writeString(out, v.constant().getConstant());
+            }
+            case AnnotationValue.NestedValue v -> writeDescriptor(out, v.annotation());
+            case AnnotationValue.ArrayValue v -> {
+                out.writeByte('*');
+                out.writeInt(v.length());
+                for (AnnotationValue element : v.elements()) writeValue(out, element);
+            }
+            case AnnotationValue.BooleanArrayValue v -> {
+                out.writeByte('Z');
+                out.writeInt(v.length());
+                for (int i = 0; i < v.length(); i++) out.writeBoolean(v.get(i));
+            }
+            case AnnotationValue.ByteArrayValue v -> {
+                out.writeByte('B');
+                out.writeInt(v.length());
+                for (int i = 0; i < v.length(); i++) out.writeByte(v.get(i));
+            }
+            case AnnotationValue.CharArrayValue v -> {
+                out.writeByte('C');
+                out.writeInt(v.length());
+                for (int i = 0; i < v.length(); i++) out.writeChar(v.get(i));
+            }
+            case AnnotationValue.ShortArrayValue v -> {
+                out.writeByte('S');
+                out.writeInt(v.length());
+                for (int i = 0; i < v.length(); i++) out.writeShort(v.get(i));
+            }
+            case AnnotationValue.IntArrayValue v -> {
+                out.writeByte('I');
+                out.writeInt(v.length());
+                for (int i = 0; i < v.length(); i++) out.writeInt(v.get(i));
+            }
+            case AnnotationValue.LongArrayValue v -> {
+                out.writeByte('J');
+                out.writeInt(v.length());
+                for (int i = 0; i < v.length(); i++) out.writeLong(v.get(i));
+            }
+            case AnnotationValue.FloatArrayValue v -> {
+                out.writeByte('F');
+                out.writeInt(v.length());
+                for (int i = 0; i < v.length(); i++) out.writeFloat(v.get(i));
+            }
+            case AnnotationValue.DoubleArrayValue v -> {
+                out.writeByte('D');
+                out.writeInt(v.length());
+                for (int i = 0; i < v.length(); i++) out.writeDouble(v.get(i));
+            }
+        }
+    }
+
+    private static AnnotationValue readValue(DataInputStream in) throws IOException {
+        int tag = in.readByte();
+        return switch (tag) {
+            case 'Z' -> AnnotationValue.of(in.readBoolean());
+            case 'B' -> AnnotationValue.of(in.readByte());
+            case 'C' -> AnnotationValue.of(in.readChar());
+            case 'S' -> AnnotationValue.of(in.readShort());
+            case 'I' -> AnnotationValue.of(in.readInt());
+            case 'J' -> AnnotationValue.of(in.readLong());
+            case 'F' -> AnnotationValue.of(in.readFloat());
+            case 'D' -> AnnotationValue.of(in.readDouble());
+            case 's' -> AnnotationValue.of(readString(in));
+            case 'c' -> new AnnotationValue.TypeValue(new ClassRef(readString(in)));
+            case 'e' -> new AnnotationValue.EnumValue(new EnumRef(readString(in), readString(in)));
+            case '@' -> AnnotationValue.of(readDescriptor(in));
+            case '[' -> readArray(in);
+            default -> throw new IOException("Unknown value tag " + tag);
+        };
+    }
+
+    private static AnnotationValue readArray(DataInputStream in) throws IOException {
+        int kind = in.readByte();
+        int length = in.readInt();
+        switch (kind) {
+            case '*' -> {
+                List<AnnotationValue> elements = new ArrayList<>(length);
+                for (int i = 0; i < length; i++) elements.add(readValue(in));
+                return new AnnotationValue.ArrayValue(elements);
+            }
+            case 'Z' -> {
+                boolean[] a = new boolean[length];
+                for (int i = 0; i < length; i++) a[i] = in.readBoolean();
+                return AnnotationValue.of(a);
+            }
+            case 'B' -> {
+                byte[] a = new byte[length];
+                in.readFully(a);
+                return AnnotationValue.of(a);
+            }
+            case 'C' -> {
+                char[] a = new char[length];
+                for (int i = 0; i < length; i++) a[i] = in.readChar();
+                return AnnotationValue.of(a);
+            }
+            case 'S' -> {
+                short[] a = new short[length];
+                for (int i = 0; i < length; i++) a[i] = in.readShort();
+                return AnnotationValue.of(a);
+            }
+            case 'I' -> {
+                int[] a = new int[length];
+                for (int i = 0; i < length; i++) a[i] = in.readInt();
+                return AnnotationValue.of(a);
+            }
+            case 'J' -> {
+                long[] a = new long[length];
+                for (int i = 0; i < length; i++) a[i] = in.readLong();
+                return AnnotationValue.of(a);
+            }
+            case 'F' -> {
+                float[] a = new float[length];
+                for (int i = 0; i < length; i++) a[i] = in.readFloat();
+                return AnnotationValue.of(a);
+            }
+            case 'D' -> {
+                double[] a = new double[length];
+                for (int i = 0; i < length; i++) a[i] = in.readDouble();
+                return AnnotationValue.of(a);
+            }
+            default -> throw new IOException("Unknown array kind " + kind);
+        }
+    }
+
+    // writeUTF is limited to 64 KB, which keys of large annotations can exceed
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
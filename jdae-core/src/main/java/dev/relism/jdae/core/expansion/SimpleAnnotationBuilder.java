@@ -2,7 +2,10 @@ package dev.relism.jdae.core.expansion;
 
 import dev.relism.jdae.api.AnnotationBuilder;
 import dev.relism.jdae.api.AnnotationDescriptor;
+import dev.relism.jdae.api.AnnotationValue;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
 
 /**
@@ -30,7 +33,7 @@ class SimpleAnnotationBuilder implements AnnotationBuilder {
     public AnnotationBuilder nested(String name, String annotationClassName, Consumer<AnnotationBuilder> consumer) {
         SimpleAnnotationBuilder nested = new SimpleAnnotationBuilder(annotationClassName);
         consumer.accept(nested);
-        builder.value(name, nested.build());
+        builder.member(name, AnnotationValue.of(nested.build()));
         return this;
     }
 
@@ -41,11 +44,11 @@ class SimpleAnnotationBuilder implements AnnotationBuilder {
 
     @Override
     public AnnotationBuilder nestedArray(String name, AnnotationBuilder... nestedBuilders) {
-        AnnotationDescriptor[] arr = new AnnotationDescriptor[nestedBuilders.length];
-        for (int i = 0; i < nestedBuilders.length; i++) {
-            arr[i] = nestedBuilders[i].build();
+        List<AnnotationValue> elements = new ArrayList<>(nestedBuilders.length);
+        for (AnnotationBuilder nested : nestedBuilders) {
+            elements.add(AnnotationValue.of(nested.build()));
         }
-        builder.value(name, arr);
+        builder.member(name, new AnnotationValue.ArrayValue(elements));
         return this;
     }
 
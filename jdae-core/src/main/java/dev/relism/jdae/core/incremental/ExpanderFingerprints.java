@@ -0,0 +1,43 @@
+package dev.relism.jdae.core.incremental;
+
+import dev.relism.jdae.core.expansion.ExpanderRegistry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Computes, per expander annotation type, a fingerprint of the annotation class file and of its
+ * expander's class file. Fingerprints are read from the class files, so no class is loaded.
+ */
+public final class ExpanderFingerprints {
+    private static final String MISSING = "missing";
+
+    private final ClassLoader classLoader;
+    private final ExpanderRegistry registry;
+    private final Map<String, String> byAnnotation = new ConcurrentHashMap<>();
+    private final Map<String, String> byClass = new ConcurrentHashMap<>();
+
+    public ExpanderFingerprints(ClassLoader classLoader, ExpanderRegistry registry) {
+        this.classLoader = classLoader;
+        this.registry = registry;
+    }
+
+    public String of(String annotationClassName) {
+        return byAnnotation.computeIfAbsent(annotationClassName, name -> {
+            String expander = registry.getExpanderClassName(name);
+            return classFingerprint(name) + ":" + (expander != null ? classFingerprint(expander) : MISSING);
+        });
+    }
+
+    private String classFingerprint(String className) {
+        return byClass.computeIfAbsent(className, name -> {
+            try (InputStream in = classLoader.getResourceAsStream(name.replace('.', '/') + ".class")) {
+                return in != null ? ExpansionStateCache.hash(in.readAllBytes()) : MISSING;
+            } catch (IOException e) {
+                return MISSING;
+            }
+        });
+    }
+}
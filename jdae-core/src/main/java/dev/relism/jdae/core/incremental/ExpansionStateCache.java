@@ -0,0 +1,268 @@
+package dev.relism.jdae.core.incremental;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Persistent per-class record of previous expansions, used to skip class files that are
+ * unchanged since the last run.
+ * <p>
+ * Class files are rewritten in place, so for every expanded class the original (pre-expansion)
+ * bytes are kept in a content-addressed store. When an expander, an annotation type or the
+ * settings change, the class is expanded again from those original bytes instead of from its
+ * already expanded output.
+ * <p>
+ * Lookups and records are thread-safe; {@link #save()} must be called once all workers are done.
+ */
+public final class ExpansionStateCache {
+    private static final int MAGIC = 0x4A444145; // "JDAE"
+    private static final int FORMAT_VERSION = 2;
+    private static final String STATE_FILE = "expansion-state.bin";
+    private static final String ORIGINALS_DIR = "originals";
+
+    private final Path directory;
+    private final String settingsKey;
+    private boolean settingsMatch;
+    private final Map<String, Entry> previous;
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+
+    private ExpansionStateCache(Path directory, String settingsKey, boolean settingsMatch, Map<String, Entry> previous) {
+        this.directory = directory;
+        this.settingsKey = settingsKey;
+        this.settingsMatch = settingsMatch;
+        this.previous = previous;
+    }
+
+    /**
+     * Loads the state stored in the given directory. A missing or unreadable state file yields an
+     * empty cache, so every class is processed again.
+     *
+     * @param settingsKey key of all settings affecting the output; entries recorded under another
+     *                    key are never considered up to date
+     */
+    public static ExpansionStateCache load(Path directory, String settingsKey) {
+        Path file = directory.resolve(STATE_FILE);
+        Map<String, Entry> entries = new HashMap<>();
+        boolean settingsMatch = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() == MAGIC && in.readInt() == FORMAT_VERSION) {
+                settingsMatch = settingsKey.equals(in.readUTF());
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String path = in.readUTF();
+                    String inputHash = in.readUTF();
+                    String outputHash = in.readUTF();
+                    int fpCount = in.readInt();
+                    Map<String, String> fingerprints = new TreeMap<>();
+                    for (int j = 0; j < fpCount; j++) {
+                        fingerprints.put(in.readUTF(), in.readUTF());
+                    }
+                    entries.put(path, new Entry(inputHash, outputHash, fingerprints));
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // first run
+        } catch (IOException e) {
+            entries.clear();
+            settingsMatch = false;
+        }
+        return new ExpansionStateCache(directory, settingsKey, settingsMatch, entries);
+    }
+
+    /**
+     * Number of classes recorded by the previous run.
+     */
+    public int previousSize() {
+        return previous.size();
+    }
+
+    /**
+     * Returns true if the class at {@code path} is exactly the output of the previous run and none of
+     * the expanders involved changed since. An up-to-date class is carried over to the new state.
+     */
+    public boolean isUpToDate(String path, String currentHash, ExpanderFingerprints fingerprints) {
+        Entry entry = previous.get(path);
+        if (entry == null || !settingsMatch || !entry.outputHash.equals(currentHash)) {
+            return false;
+        }
+        for (Map.Entry<String, String> fp : entry.fingerprints.entrySet()) {
+            if (!fp.getValue().equals(fingerprints.of(fp.getKey()))) {
+                return false;
+            }
+        }
+        current.put(path, entry);
+        return true;
+    }
+
+    /**
+     * Returns the original bytes the class at {@code path} was expanded from, or null if the current
+     * bytes are not a previous expansion output and should be used as input directly.
+     */
+    public byte[] originalInput(String path, String currentHash) throws IOException {
+        Entry entry = previous.get(path);
+        if (entry == null || !entry.outputHash.equals(currentHash) || entry.inputHash.equals(entry.outputHash)) {
+            return null;
+        }
+        try {
+            return Files.readAllBytes(originalPath(entry.inputHash));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Records the result of expanding {@code input} into {@code output} for the class at {@code path}.
+     *
+     * @param fingerprints fingerprints of all annotation types found in the class, with or without an expander
+     */
+    public void record(String path, byte[] input, byte[] output, Map<String, String> fingerprints) throws IOException {
+        String inputHash = hash(input);
+        String outputHash = output == input ? inputHash : hash(output);
+        if (!inputHash.equals(outputHash)) {
+            Path original = originalPath(inputHash);
+            if (!Files.exists(original)) {
+                Files.createDirectories(original.getParent());
+                Path tmp = Files.createTempFile(original.getParent(), inputHash, ".tmp");
+                Files.write(tmp, input);
+                Files.move(tmp, original, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        current.put(path, new Entry(inputHash, outputHash, new TreeMap<>(fingerprints)));
+    }
+
+    /**
+     * Whether {@code currentHash} is the output recorded for the class at {@code path} in this run or
+     * the previous one, i.e. the file was last written by an expansion.
+     */
+    public boolean isRecordedOutput(String path, String currentHash) {
+        Entry entry = current.get(path);
+        if (entry == null) entry = previous.get(path);
+        return entry != null && entry.outputHash.equals(currentHash);
+    }
+
+    /**
+     * Makes the entries recorded so far the baseline of later checks, as saving and loading the state
+     * again would. Used by long-running sessions that expand the same class files repeatedly; must not
+     * run concurrently with other calls.
+     */
+    public void advance() {
+        if (!settingsMatch) {
+            previous.clear();
+            settingsMatch = true;
+        }
+        previous.putAll(current);
+    }
+
+    /**
+     * Paths of the classes that used any of the given annotation types in the previous run, sorted.
+     */
+    public List<String> previousPathsUsing(Set<String> annotationTypes) {
+        List<String> paths = new ArrayList<>();
+        for (Map.Entry<String, Entry> e : previous.entrySet()) {
+            for (String type : e.getValue().fingerprints.keySet()) {
+                if (annotationTypes.contains(type)) {
+                    paths.add(e.getKey());
+                    break;
+                }
+            }
+        }
+        paths.sort(null);
+        return paths;
+    }
+
+    /**
+     * Carries over the previous entries accepted by {@code filter}, for classes this run did not look at
+     * (for example because a candidate index ruled them out). Nothing is carried over if the settings changed.
+     */
+    public void carryOver(Predicate<String> filter) {
+        if (!settingsMatch) {
+            return;
+        }
+        for (Map.Entry<String, Entry> e : previous.entrySet()) {
+            if (!current.containsKey(e.getKey()) && filter.test(e.getKey())) {
+                current.put(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Writes the classes recorded or carried over during this run and drops stored originals that
+     * are no longer referenced.
+     */
+    public void save() throws IOException {
+        Files.createDirectories(directory);
+        Map<String, Entry> sorted = new TreeMap<>(current);
+        Path tmp = Files.createTempFile(directory, STATE_FILE, ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(settingsKey);
+            out.writeInt(sorted.size());
+            for (Map.Entry<String, Entry> e : sorted.entrySet()) {
+                Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeUTF(entry.inputHash);
+                out.writeUTF(entry.outputHash);
+                out.writeInt(entry.fingerprints.size());
+                for (Map.Entry<String, String> fp : entry.fingerprints.entrySet()) {
+                    out.writeUTF(fp.getKey());
+                    out.writeUTF(fp.getValue());
+                }
+            }
+        }
+        Files.move(tmp, directory.resolve(STATE_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        Path originals = directory.resolve(ORIGINALS_DIR);
+        if (Files.isDirectory(originals)) {
+            Set<String> referenced = new HashSet<>();
+            for (Entry entry : sorted.values()) {
+                referenced.add(entry.inputHash + ".class");
+            }
+            try (Stream<Path> files = Files.list(originals)) {
+                for (Path f : (Iterable<Path>) files::iterator) {
+                    if (!referenced.contains(f.getFileName().toString())) {
+                        Files.deleteIfExists(f);
+                    }
+                }
+            }
+        }
+    }
+
+    private Path originalPath(String inputHash) {
+        return directory.resolve(ORIGINALS_DIR).resolve(inputHash + ".class");
+    }
+
+    /**
+     * SHA-256 of the given bytes as a lowercase hex string.
+     */
+    public static String hash(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private record Entry(String inputHash, String outputHash, Map<String, String> fingerprints) {
+    }
+}
@@ -0,0 +1,50 @@
+package dev.relism.jdae.core.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Index of the top-level classes of a compilation that use expander annotations, generated by the
+ * JDAE processor. The expansion only needs to open these classes and their nested classes.
+ * <p>
+ * The file is UTF-8 text with the binary name of one top-level class per line. Lines starting
+ * with {@code #} are comments.
+ */
+public final class CandidateIndex {
+    /** Location of the index inside a classes directory. */
+    public static final String RESOURCE = "META-INF/jdae/candidates.idx";
+
+    private static final String HEADER = "# JDAE candidate index v1";
+
+    private CandidateIndex() {
+    }
+
+    public static Set<String> read(InputStream in) throws IOException {
+        Set<String> classes = new TreeSet<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                classes.add(line);
+            }
+        }
+        return classes;
+    }
+
+    public static void write(Writer out, Collection<String> classes) throws IOException {
+        out.write(HEADER);
+        out.write('\n');
+        for (String name : classes) {
+            out.write(name);
+            out.write('\n');
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package dev.relism.jdae.core.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Index of the expander annotation types declared by a library, generated at compile time by the
+ * JDAE processor. It lets the registry map annotation types to expanders without loading either.
+ * <p>
+ * The file is UTF-8 text with one tab-separated line per annotation type:
+ * {@code annotationClassName expanderClassName keepOriginal id}. Lines starting with {@code #}
+ * are comments.
+ */
+public final class ExpanderIndex {
+    /** Location of the index inside a classes directory or jar. */
+    public static final String RESOURCE = "META-INF/jdae/expanders.idx";
+
+    private static final String HEADER = "# JDAE expander index v1";
+
+    private ExpanderIndex() {
+    }
+
+    /**
+     * @param annotationClassName binary name of the annotation type meta-annotated with {@code @Expander}
+     * @param expanderClassName   binary name of the expander class
+     */
+    public record Entry(String annotationClassName, String expanderClassName, boolean keepOriginal, String id) {
+    }
+
+    /**
+     * Reads an index; malformed lines are skipped.
+     */
+    public static Map<String, Entry> read(InputStream in) throws IOException {
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] parts = line.split("\t", -1);
+            if (parts.length != 4 || parts[0].isEmpty() || parts[1].isEmpty()) continue;
+            entries.put(parts[0], new Entry(parts[0], parts[1], Boolean.parseBoolean(parts[2]), unescape(parts[3])));
+        }
+        return entries;
+    }
+
+    public static void write(Writer out, Collection<Entry> entries) throws IOException {
+        out.write(HEADER);
+        out.write('\n');
+        for (Entry e : entries) {
+            out.write(e.annotationClassName());
+            out.write('\t');
+            out.write(e.expanderClassName());
+            out.write('\t');
+            out.write(Boolean.toString(e.keepOriginal()));
+            out.write('\t');
+            out.write(escape(e.id()));
+            out.write('\n');
+        }
+    }
+
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\' -> sb.append("\\\\");
+                case '\t' -> sb.append("\\t");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                default -> sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String unescape(String s) {
+        if (s.indexOf('\\') < 0) return s;
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                char n = s.charAt(++i);
+                sb.append(switch (n) {
+                    case 't' -> '\t';
+                    case 'n' -> '\n';
+                    case 'r' -> '\r';
+                    default -> n;
+                });
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
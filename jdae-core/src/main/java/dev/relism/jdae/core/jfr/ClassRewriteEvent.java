@@ -0,0 +1,38 @@
+package dev.relism.jdae.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for {@link dev.relism.jdae.core.bytecode.BytecodeExpander#apply(byte[], dev.relism.jdae.core.bytecode.RewritePlan)}.
+ */
+@Name("dev.relism.jdae.ClassRewrite")
+@Label("Class Rewrite")
+@Category("JDAE")
+@Description("Expanded annotations written into a class")
+@StackTrace(false)
+public final class ClassRewriteEvent extends Event {
+    @Label("Class")
+    public String className;
+
+    @Label("Owners")
+    @Description("Class, fields and methods whose annotations changed")
+    public int owners;
+
+    @Label("Backend")
+    @Description("ASM, or RAW when the annotation attributes were spliced into the class file")
+    public String backend;
+
+    @Label("Input Size")
+    @DataAmount
+    public int inputBytes;
+
+    @Label("Output Size")
+    @DataAmount
+    public int outputBytes;
+}
@@ -0,0 +1,35 @@
+package dev.relism.jdae.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for {@link dev.relism.jdae.core.bytecode.ClassScanner#scan}. Like the other JDAE events it
+ * is created and begun unconditionally and filled in only if {@code shouldCommit()}, so without a
+ * recording it costs nothing once compiled.
+ */
+@Name("dev.relism.jdae.ClassScan")
+@Label("Class Scan")
+@Category("JDAE")
+@Description("A class file searched for expander annotations")
+@StackTrace(false)
+public final class ClassScanEvent extends Event {
+    @Label("Class")
+    public String className;
+
+    @Label("Class Size")
+    @DataAmount
+    public int classBytes;
+
+    @Label("Candidates")
+    public int candidates;
+
+    @Label("Rejected by Prefilter")
+    @Description("The constant pool names no expander annotation, so the class was not parsed")
+    public boolean prefiltered;
+}
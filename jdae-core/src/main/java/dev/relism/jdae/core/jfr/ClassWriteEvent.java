@@ -0,0 +1,26 @@
+package dev.relism.jdae.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for a class file written by {@link dev.relism.jdae.core.pipeline.ClassDirectoryExpander}.
+ */
+@Name("dev.relism.jdae.ClassWrite")
+@Label("Class Write")
+@Category("JDAE")
+@Description("An expanded class file written back to disk")
+@StackTrace(false)
+public final class ClassWriteEvent extends Event {
+    @Label("Path")
+    public String path;
+
+    @Label("Size")
+    @DataAmount
+    public int bytes;
+}
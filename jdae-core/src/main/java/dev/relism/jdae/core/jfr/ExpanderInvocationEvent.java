@@ -0,0 +1,36 @@
+package dev.relism.jdae.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one {@code expand} call in {@link dev.relism.jdae.core.expansion.ExpansionEngine}, or one
+ * {@code expandAll} call of a batch expander.
+ */
+@Name("dev.relism.jdae.ExpanderInvocation")
+@Label("Expander Invocation")
+@Category("JDAE")
+@Description("One expand call of an expander, including the creation of the annotation instance or view")
+@StackTrace(false)
+public final class ExpanderInvocationEvent extends Event {
+    @Label("Expander")
+    public String expander;
+
+    @Label("Annotation Type")
+    public String annotationType;
+
+    @Label("Owner")
+    @Description("pkg/Cls for a class, pkg/Cls#field for a field, pkg/Cls#method(desc) for a method; unset for a batch")
+    public String owner;
+
+    @Label("Target Kind")
+    public String targetKind;
+
+    @Label("Occurrences")
+    @Description("Annotations expanded by the call: 1, or the size of a batch")
+    public int occurrences;
+}
@@ -0,0 +1,296 @@
+package dev.relism.jdae.core.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time spent per phase of an expansion run, per expander and per class. Thread-safe, so one
+ * instance collects the measurements of all expansion workers.
+ * <p>
+ * Callers take a timestamp with {@link #start()} and pass it to one of the {@code record} methods.
+ * The {@link #disabled() disabled} instance never reads the clock and records nothing.
+ */
+public final class ExpansionMetrics {
+    private static final ExpansionMetrics DISABLED = new ExpansionMetrics(false, 0);
+
+    /**
+     * Phases of an expansion, in pipeline order. {@link #EXPAND} is the sum of all expanders' {@code expand} calls.
+     */
+    public enum Phase {
+        WALK,
+        READ,
+        STATE,
+        SCAN,
+        ANNOTATION_INSTANCE,
+        EXPAND,
+        REWRITE,
+        WRITE
+    }
+
+    private final boolean enabled;
+    private final int slowestLimit;
+    private final Timer[] phases = new Timer[Phase.values().length];
+    private final Map<String, Timer> expanders = new ConcurrentHashMap<>();
+    private final LongAdder classes = new LongAdder();
+    // min-heap on time, so the fastest of the slowest classes is evicted first
+    private final PriorityQueue<ClassTime> slowest = new PriorityQueue<>(Comparator.comparingLong(ClassTime::nanos));
+
+    private ExpansionMetrics(boolean enabled, int slowestLimit) {
+        this.enabled = enabled;
+        this.slowestLimit = slowestLimit;
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new Timer();
+        }
+    }
+
+    /**
+     * Collects metrics and keeps the {@code slowestLimit} slowest classes.
+     */
+    public static ExpansionMetrics create(int slowestLimit) {
+        return new ExpansionMetrics(true, slowestLimit);
+    }
+
+    public static ExpansionMetrics disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Timestamp to pass to a {@code record} method, or 0 if disabled.
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void record(Phase phase, long start) {
+        if (enabled) {
+            phases[phase.ordinal()].add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records one {@code expand} call of the given expander, also counted in {@link Phase#EXPAND}.
+     */
+    public void recordExpander(String expanderClassName, long start) {
+        if (enabled) {
+            long nanos = System.nanoTime() - start;
+            phases[Phase.EXPAND.ordinal()].add(nanos);
+            expanders.computeIfAbsent(expanderClassName, k -> new Timer()).add(nanos);
+        }
+    }
+
+    /**
+     * Records the total time spent on one class file, from reading it to writing it back.
+     */
+    public void recordClass(String className, long start) {
+        if (!enabled) return;
+        long nanos = System.nanoTime() - start;
+        classes.increment();
+        if (slowestLimit <= 0) return;
+        synchronized (slowest) {
+            if (slowest.size() < slowestLimit) {
+                slowest.add(new ClassTime(className, nanos));
+            } else if (slowest.peek().nanos() < nanos) {
+                slowest.poll();
+                slowest.add(new ClassTime(className, nanos));
+            }
+        }
+    }
+
+    public Timer getPhase(Phase phase) {
+        return phases[phase.ordinal()];
+    }
+
+    /**
+     * Timers of the expanders that were called, by expander class name.
+     */
+    public Map<String, Timer> getExpanders() {
+        return expanders;
+    }
+
+    /**
+     * The slowest classes, slowest first.
+     */
+    public List<ClassTime> getSlowestClasses() {
+        List<ClassTime> out;
+        synchronized (slowest) {
+            out = new ArrayList<>(slowest);
+        }
+        out.sort(Comparator.comparingLong(ClassTime::nanos).reversed());
+        return out;
+    }
+
+    /**
+     * A few lines for the build log: the time per phase and the expanders taking the most time.
+     */
+    public List<String> summary(int topExpanders) {
+        List<String> lines = new ArrayList<>();
+        StringBuilder sb = new StringBuilder("JDAE timings:");
+        for (Phase phase : Phase.values()) {
+            Timer t = getPhase(phase);
+            if (t.getCount() == 0) continue;
+            sb.append(' ').append(phase.name().toLowerCase(Locale.ROOT)).append('=').append(millis(t.getTotalNanos())).append("ms");
+        }
+        lines.add(sb.toString());
+        expanders.entrySet().stream()
+                .sorted(Map.Entry.<String, Timer>comparingByValue(Comparator.comparingLong(Timer::getTotalNanos)).reversed())
+                .limit(topExpanders)
+                .forEach(e -> lines.add("JDAE expander " + e.getKey() + ": " + e.getValue().getCount() + " calls, "
+                        + millis(e.getValue().getTotalNanos()) + "ms, p99 <= " + micros(e.getValue().percentileNanos(0.99)) + "us"));
+        return lines;
+    }
+
+    /**
+     * Writes all metrics as a JSON document.
+     */
+    public void writeJson(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Files.writeString(file, toJson(), StandardCharsets.UTF_8);
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("{\n  \"classes\": ").append(classes.sum()).append(",\n  \"phases\": {");
+        Phase[] values = Phase.values();
+        for (int i = 0; i < values.length; i++) {
+            sb.append(i == 0 ? "\n" : ",\n").append("    \"").append(values[i].name().toLowerCase(Locale.ROOT)).append("\": ");
+            getPhase(values[i]).appendJson(sb, false);
+        }
+        sb.append("\n  },\n  \"expanders\": {");
+        List<Map.Entry<String, Timer>> sorted = expanders.entrySet().stream()
+                .sorted(Map.Entry.<String, Timer>comparingByValue(Comparator.comparingLong(Timer::getTotalNanos)).reversed())
+                .toList();
+        for (int i = 0; i < sorted.size(); i++) {
+            sb.append(i == 0 ? "\n" : ",\n").append("    ");
+            appendString(sb, sorted.get(i).getKey());
+            sb.append(": ");
+            sorted.get(i).getValue().appendJson(sb, true);
+        }
+        sb.append(sorted.isEmpty() ? "},\n" : "\n  },\n").append("  \"slowestClasses\": [");
+        List<ClassTime> slow = getSlowestClasses();
+        for (int i = 0; i < slow.size(); i++) {
+            sb.append(i == 0 ? "\n" : ",\n").append("    {\"class\": ");
+            appendString(sb, slow.get(i).className());
+            sb.append(", \"micros\": ").append(slow.get(i).nanos() / 1000).append('}');
+        }
+        sb.append(slow.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+        return sb.toString();
+    }
+
+    private static void appendString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1e6);
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1000;
+    }
+
+    public record ClassTime(String className, long nanos) {
+    }
+
+    /**
+     * Count, total and a histogram of durations. Bucket {@code i} counts durations below
+     * {@code 2^i} microseconds; the last bucket also counts all longer ones.
+     */
+    public static final class Timer {
+        private static final int BUCKETS = 24; // up to about 8 s
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        void add(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            long micros = nanos / 1000;
+            int bucket = micros == 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+            histogram.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        /**
+         * Upper bound of the bucket holding the given percentile, at most the largest duration recorded.
+         */
+        public long percentileNanos(double percentile) {
+            long total = getCount();
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(percentile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += histogram.get(i);
+                if (seen >= rank) {
+                    return Math.min((1L << i) * 1000, getMaxNanos());
+                }
+            }
+            return getMaxNanos();
+        }
+
+        void appendJson(StringBuilder sb, boolean withHistogram) {
+            long n = getCount();
+            sb.append("{\"count\": ").append(n)
+                    .append(", \"totalMillis\": ").append(millis(getTotalNanos()))
+                    .append(", \"meanMicros\": ").append(n == 0 ? 0 : micros(getTotalNanos() / n))
+                    .append(", \"p50Micros\": ").append(micros(percentileNanos(0.5)))
+                    .append(", \"p99Micros\": ").append(micros(percentileNanos(0.99)))
+                    .append(", \"maxMicros\": ").append(micros(getMaxNanos()));
+            if (withHistogram) {
+                // bucket upper bounds in microseconds, empty buckets left out
+                sb.append(", \"histogram\": {");
+                boolean first = true;
+                for (int i = 0; i < BUCKETS; i++) {
+                    long c = histogram.get(i);
+                    if (c == 0) continue;
+                    sb.append(first ? "" : ", ").append('"').append(i == BUCKETS - 1 ? "inf" : "lt" + (1L << i)).append("\": ").append(c);
+                    first = false;
+                }
+                sb.append('}');
+            }
+            sb.append('}');
+        }
+    }
+}
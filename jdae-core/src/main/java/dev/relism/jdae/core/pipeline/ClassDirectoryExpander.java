@@ -0,0 +1,532 @@
+package dev.relism.jdae.core.pipeline;
+
+import dev.relism.jdae.core.bytecode.AnnotationPrefilter;
+import dev.relism.jdae.core.bytecode.ClassScanner;
+import dev.relism.jdae.core.bytecode.ExpanderCandidate;
+import dev.relism.jdae.core.expansion.ExpanderRegistry;
+import dev.relism.jdae.core.expansion.ExpansionEngine;
+import dev.relism.jdae.core.incremental.ExpanderFingerprints;
+import dev.relism.jdae.core.incremental.ExpansionStateCache;
+import dev.relism.jdae.core.index.CandidateIndex;
+import dev.relism.jdae.core.jfr.ClassWriteEvent;
+import dev.relism.jdae.core.metrics.ExpansionMetrics;
+import dev.relism.jdae.core.metrics.ExpansionMetrics.Phase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Expands class files of a classes directory in place, one file at a time. With an
+ * {@link ExpansionStateCache}, unchanged files are skipped and already expanded files are expanded
+ * again from their original bytes. Thread-safe as long as each file is handled by one thread.
+ * <p>
+ * Reading, scanning, state bookkeeping and writing are timed in the engine's {@link ExpansionMetrics}.
+ */
+public final class ClassDirectoryExpander {
+    private final Path classesDirectory;
+    private final ExpanderRegistry registry;
+    private final ClassScanner scanner;
+    private final ExpansionEngine engine;
+    private final ExpansionStateCache state;
+    private final ExpanderFingerprints fingerprints;
+    private final boolean removeOriginal;
+    private final ExpansionMetrics metrics;
+
+    /**
+     * @param state incremental state, or null to expand every file that has candidates
+     */
+    public ClassDirectoryExpander(Path classesDirectory, ExpanderRegistry registry, ClassScanner scanner,
+                                  ExpansionEngine engine, ExpansionStateCache state,
+                                  ExpanderFingerprints fingerprints, boolean removeOriginal) {
+        this.classesDirectory = classesDirectory;
+        this.registry = registry;
+        this.scanner = scanner;
+        this.engine = engine;
+        this.state = state;
+        this.fingerprints = fingerprints;
+        this.removeOriginal = removeOriginal;
+        this.metrics = engine.getMetrics();
+    }
+
+    public enum Outcome {
+        EXPANDED,
+        SKIPPED,
+        UP_TO_DATE
+    }
+
+    public Path getClassesDirectory() {
+        return classesDirectory;
+    }
+
+    public ExpansionStateCache getState() {
+        return state;
+    }
+
+    public ExpanderRegistry getRegistry() {
+        return registry;
+    }
+
+    public Outcome expand(Path classFile) throws IOException {
+        return expand(classFile, false);
+    }
+
+    /**
+     * Expands one class file, and with incremental state the files expanded with it by a batch expander.
+     *
+     * @param force expand the file even if the state says it is up to date, e.g. after expanders were reloaded
+     */
+    public Outcome expand(Path classFile, boolean force) throws IOException {
+        return expandAll(List.of(classFile), force, 1, Thread.currentThread().getContextClassLoader())[0];
+    }
+
+    /**
+     * Expands one class file, or with {@code deferred} stores it there and returns null if a batch
+     * expander handles some of its annotations.
+     */
+    private Outcome expandFile(Path classFile, boolean force, Deferred[] deferred, int index) throws IOException {
+        long start = metrics.start();
+        byte[] current = Files.readAllBytes(classFile);
+        metrics.record(Phase.READ, start);
+        if (state == null) {
+            start = metrics.start();
+            List<ExpanderCandidate> candidates = scanner.scan(current);
+            metrics.record(Phase.SCAN, start);
+            if (candidates.isEmpty()) {
+                return Outcome.SKIPPED;
+            }
+            if (deferred != null && engine.needsBatch(candidates)) {
+                deferred[index] = new Deferred(classFile, current, current, null, candidates, null, index);
+                return null;
+            }
+            return complete(classFile, current, current, null, candidates, null, ExpansionEngine.Batches.NONE);
+        }
+
+        start = metrics.start();
+        String key = stateKey(classFile);
+        String currentHash = ExpansionStateCache.hash(current);
+        if (!force && state.isUpToDate(key, currentHash, fingerprints)) {
+            metrics.record(Phase.STATE, start);
+            return Outcome.UP_TO_DATE;
+        }
+
+        // an already expanded class must be expanded again from its original bytes
+        byte[] input = state.originalInput(key, currentHash);
+        if (input == null) {
+            input = current;
+        }
+        metrics.record(Phase.STATE, start);
+        start = metrics.start();
+        List<ExpanderCandidate> candidates = scanner.scan(input);
+        metrics.record(Phase.SCAN, start);
+        // every annotation type, so that one gaining an expander later makes the class out of date
+        Map<String, String> used = new TreeMap<>();
+        for (String annotation : AnnotationPrefilter.annotationTypes(input)) {
+            used.put(annotation, fingerprints.of(annotation));
+        }
+        if (deferred != null && !candidates.isEmpty() && engine.needsBatch(candidates)) {
+            deferred[index] = new Deferred(classFile, current, input, key, candidates, used, index);
+            return null;
+        }
+        return complete(classFile, current, input, key, candidates, used, ExpansionEngine.Batches.NONE);
+    }
+
+    /**
+     * Expands the scanned input of a class file, records it in the state if there is one and writes it if it changed.
+     */
+    private Outcome complete(Path classFile, byte[] current, byte[] input, String key, List<ExpanderCandidate> candidates,
+                             Map<String, String> used, ExpansionEngine.Batches batches) throws IOException {
+        if (state == null) {
+            byte[] modified = batches == ExpansionEngine.Batches.NONE
+                    ? engine.expand(current, candidates, removeOriginal)
+                    : engine.expand(current, candidates, removeOriginal, batches);
+            if (modified != current && Arrays.compare(modified, current) != 0) {
+                write(classFile, modified);
+                return Outcome.EXPANDED;
+            }
+            return Outcome.SKIPPED;
+        }
+        byte[] output;
+        if (candidates.isEmpty()) {
+            output = input;
+        } else if (batches == ExpansionEngine.Batches.NONE) {
+            output = engine.expand(input, candidates, removeOriginal);
+        } else {
+            output = engine.expand(input, candidates, removeOriginal, batches);
+        }
+        long start = metrics.start();
+        state.record(key, input, output, used);
+        metrics.record(Phase.STATE, start);
+        if (Arrays.compare(output, current) != 0) {
+            write(classFile, output);
+            return Outcome.EXPANDED;
+        }
+        return Outcome.SKIPPED;
+    }
+
+    private void write(Path classFile, byte[] bytes) throws IOException {
+        ClassWriteEvent event = new ClassWriteEvent();
+        event.begin();
+        long start = metrics.start();
+        Files.write(classFile, bytes);
+        metrics.record(Phase.WRITE, start);
+        if (event.shouldCommit()) {
+            event.path = classFile.toString();
+            event.bytes = bytes.length;
+            event.commit();
+        }
+    }
+
+    /**
+     * Expands the given files, on a work-stealing pool of {@code workers} threads if more than one.
+     * Each outcome is stored at the index of its file, so the result is the same as a sequential run.
+     * <p>
+     * Files with annotations handled by a {@link dev.relism.jdae.api.BatchExpander} are expanded last:
+     * once all files are scanned, each batch expander is called with its occurrences in all of them, in
+     * the order of the files, and then those files are rewritten. With incremental state, the files that used
+     * the annotation type of such an expander in the previous run are expanded again with them, even if they
+     * are up to date or not among the given files, so that the expander always sees all occurrences.
+     *
+     * @param contextLoader context class loader of the worker threads, which the annotation factory
+     *                      falls back to for resolving project classes
+     */
+    public Outcome[] expandAll(List<Path> classFiles, int workers, ClassLoader contextLoader) throws IOException {
+        return expandAll(classFiles, false, workers, contextLoader);
+    }
+
+    /**
+     * As {@link #expandAll(List, int, ClassLoader)}.
+     *
+     * @param force expand the files even if the state says they are up to date
+     */
+    public Outcome[] expandAll(List<Path> classFiles, boolean force, int workers, ClassLoader contextLoader) throws IOException {
+        return expandAll(classFiles, force, workers, contextLoader, null);
+    }
+
+    /**
+     * As {@link #expandAll(List, boolean, int, ClassLoader)}, but a file that cannot be read or expanded is
+     * reported to {@code onFailure} and has no outcome, instead of ending the run.
+     */
+    public Outcome[] expandAll(List<Path> classFiles, boolean force, int workers, ClassLoader contextLoader,
+                               BiConsumer<Path, Exception> onFailure) throws IOException {
+        Outcome[] outcomes = new Outcome[classFiles.size()];
+        Deferred[] deferred = new Deferred[classFiles.size()];
+        ForkJoinPool pool = null;
+        if (workers > 1 && classFiles.size() > 1) {
+            ForkJoinPool.ForkJoinWorkerThreadFactory threadFactory = p -> {
+                ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                t.setName("jdae-expand-" + t.getPoolIndex());
+                t.setContextClassLoader(contextLoader);
+                return t;
+            };
+            pool = new ForkJoinPool(workers, threadFactory, null, false);
+        }
+        try {
+            run(pool, classFiles, onFailure, i -> {
+                long classStart = metrics.start();
+                Outcome outcome = expandFile(classFiles.get(i), force, deferred, i);
+                if (outcome != null) {
+                    if (outcome != Outcome.UP_TO_DATE) {
+                        metrics.recordClass(stateKey(classFiles.get(i)), classStart);
+                    }
+                    outcomes[i] = outcome;
+                } else {
+                    deferred[i].scanNanos = metrics.start() - classStart;
+                }
+            });
+
+            List<Deferred> batched = deferred(deferred);
+            if (batched.isEmpty()) {
+                return outcomes;
+            }
+            if (state != null) {
+                List<Deferred> related = deferRelated(pool, classFiles, deferred, outcomes, onFailure);
+                batched = deferred(deferred);
+                if (!related.isEmpty()) {
+                    batched.addAll(related);
+                    // the expander sees the occurrences in file order, as in a full run
+                    batched.sort(Comparator.comparing(d -> d.classFile));
+                }
+            }
+            List<Deferred> all = batched;
+            List<List<ExpanderCandidate>> candidates = new ArrayList<>(all.size());
+            List<Path> files = new ArrayList<>(all.size());
+            for (Deferred d : all) {
+                candidates.add(d.candidates);
+                files.add(d.classFile);
+            }
+            ExpansionEngine.Batches batches = engine.expandBatches(candidates);
+            run(pool, files, onFailure, j -> {
+                Deferred d = all.get(j);
+                long classStart = metrics.start();
+                Outcome outcome = complete(d.classFile, d.current, d.input, d.key, d.candidates, d.used, batches);
+                metrics.recordClass(stateKey(d.classFile), classStart - d.scanNanos);
+                if (d.index >= 0) {
+                    outcomes[d.index] = outcome;
+                }
+            });
+        } finally {
+            if (pool != null) pool.shutdownNow();
+        }
+        return outcomes;
+    }
+
+    private static List<Deferred> deferred(Deferred[] deferred) {
+        List<Deferred> list = new ArrayList<>();
+        for (Deferred d : deferred) {
+            if (d != null) list.add(d);
+        }
+        return list;
+    }
+
+    /**
+     * Scans again, for the batch, the files that used the annotation type of a batch expander deferred in this
+     * run when they were last expanded, but were up to date or are not among the given files. Files among them
+     * are deferred in place and the others returned; a file that no longer uses such a type is expanded right away.
+     */
+    private List<Deferred> deferRelated(ForkJoinPool pool, List<Path> classFiles, Deferred[] deferred,
+                                        Outcome[] outcomes, BiConsumer<Path, Exception> onFailure) throws IOException {
+        Set<String> batchTypes = new HashSet<>();
+        Set<String> deferredKeys = new HashSet<>();
+        for (Deferred d : deferred) {
+            if (d == null) continue;
+            deferredKeys.add(d.key);
+            for (ExpanderCandidate c : d.candidates) {
+                if (registry.isBatchExpander(c.getAnnotationClassName())) {
+                    batchTypes.add(c.getAnnotationClassName());
+                }
+            }
+        }
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < classFiles.size(); i++) {
+            indexes.put(stateKey(classFiles.get(i)), i);
+        }
+        List<Path> files = new ArrayList<>();
+        List<Integer> fileIndexes = new ArrayList<>();
+        for (String key : state.previousPathsUsing(batchTypes)) {
+            Integer i = indexes.get(key);
+            if (deferredKeys.contains(key) || i != null && outcomes[i] != Outcome.UP_TO_DATE) {
+                continue;
+            }
+            Path file = i != null ? classFiles.get(i) : classesDirectory.resolve(key);
+            if (i != null || Files.isRegularFile(file)) {
+                files.add(file);
+                fileIndexes.add(i == null ? -1 : i);
+            }
+        }
+        Deferred[] others = new Deferred[files.size()];
+        run(pool, files, onFailure, j -> {
+            int i = fileIndexes.get(j);
+            Deferred[] slots = i >= 0 ? deferred : others;
+            int slot = i >= 0 ? i : j;
+            long classStart = metrics.start();
+            Outcome outcome = expandFile(files.get(j), true, slots, slot);
+            if (outcome == null) {
+                slots[slot].scanNanos = metrics.start() - classStart;
+                slots[slot].index = i;
+            } else {
+                metrics.recordClass(stateKey(files.get(j)), classStart);
+                if (i >= 0) outcomes[i] = outcome;
+            }
+        });
+        return deferred(others);
+    }
+
+    /**
+     * Runs the step for each file, on the pool if there is one. Failures go to {@code onFailure} if not null.
+     */
+    private static void run(ForkJoinPool pool, List<Path> classFiles, BiConsumer<Path, Exception> onFailure,
+                            FileStep step) throws IOException {
+        if (onFailure != null) {
+            FileStep unguarded = step;
+            step = i -> {
+                try {
+                    unguarded.run(i);
+                } catch (IOException | RuntimeException e) {
+                    onFailure.accept(classFiles.get(i), e);
+                }
+            };
+        }
+        if (pool == null) {
+            for (int i = 0; i < classFiles.size(); i++) {
+                try {
+                    step.run(i);
+                } catch (IOException e) {
+                    throw failure(classFiles.get(i), e);
+                }
+            }
+            return;
+        }
+        try {
+            pool.invoke(new ExpandTask(classFiles, step, 0, classFiles.size()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static IOException failure(Path classFile, IOException cause) {
+        return new IOException("Failed to expand " + classFile + ": " + cause.getMessage(), cause);
+    }
+
+    /**
+     * Key of a class file in the incremental state: its path relative to the classes directory.
+     */
+    public String stateKey(Path classFile) {
+        return classesDirectory.relativize(classFile).toString().replace('\\', '/');
+    }
+
+    public static List<Path> allClassFiles(Path classesDirectory) throws IOException {
+        try (Stream<Path> paths = Files.walk(classesDirectory)) {
+            // sorted so that work distribution and logging do not depend on the filesystem order
+            return paths
+                    .filter(p -> p.toString().endsWith(".class"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * As {@link #indexedClassFiles(Path)}, or null if the registry has expanders for annotation types the
+     * index does not cover, which makes every class file a possible candidate.
+     */
+    public static List<Path> indexedClassFiles(Path classesDirectory, ExpanderRegistry registry) throws IOException {
+        return registry.hasExpandersWithoutMetaAnnotation() ? null : indexedClassFiles(classesDirectory);
+    }
+
+    /**
+     * Class files of the top-level classes listed in the candidate index and of their nested classes,
+     * or null if the classes directory has no index.
+     */
+    public static List<Path> indexedClassFiles(Path classesDirectory) throws IOException {
+        Path index = classesDirectory.resolve(CandidateIndex.RESOURCE);
+        if (!Files.isRegularFile(index)) {
+            return null;
+        }
+        Set<String> classes;
+        try (InputStream in = Files.newInputStream(index)) {
+            classes = CandidateIndex.read(in);
+        }
+        List<Path> files = new ArrayList<>();
+        for (String name : classes) {
+            Path file = classesDirectory.resolve(name.replace('.', '/') + ".class");
+            if (!Files.isRegularFile(file)) continue;
+            files.add(file);
+            String simpleName = file.getFileName().toString();
+            simpleName = simpleName.substring(0, simpleName.length() - ".class".length());
+            try (DirectoryStream<Path> nested = Files.newDirectoryStream(file.getParent(), simpleName + "$*.class")) {
+                nested.forEach(files::add);
+            }
+        }
+        return files.stream().sorted().toList();
+    }
+
+    /**
+     * Class files of the directory that are not among {@code indexed} but have candidates, e.g. compiled without
+     * {@code jdae-processor}. Reads every class file, so it is meant for diagnostics.
+     */
+    public static List<Path> unindexedCandidates(Path classesDirectory, List<Path> indexed, ClassScanner scanner)
+            throws IOException {
+        Set<Path> listed = new HashSet<>(indexed);
+        List<Path> files = new ArrayList<>();
+        for (Path file : allClassFiles(classesDirectory)) {
+            if (listed.contains(file)) continue;
+            try {
+                if (!scanner.scan(Files.readAllBytes(file)).isEmpty()) {
+                    files.add(file);
+                }
+            } catch (RuntimeException e) {
+                // not a class file ASM can read; the expansion does not open it either
+            }
+        }
+        return files;
+    }
+
+    /**
+     * One step of {@link #expandAll} for the file at an index.
+     */
+    @FunctionalInterface
+    private interface FileStep {
+        void run(int index) throws IOException;
+    }
+
+    /**
+     * A scanned class file whose expansion waits for the batch expanders.
+     */
+    private static final class Deferred {
+        final Path classFile;
+        final byte[] current;
+        final byte[] input;
+        final String key;
+        final List<ExpanderCandidate> candidates;
+        final Map<String, String> used;
+        // index of the file among those passed to expandAll, or -1 if it is only expanded for a batch
+        int index;
+        // time spent before the file was deferred, counted in its class time
+        long scanNanos;
+
+        Deferred(Path classFile, byte[] current, byte[] input, String key, List<ExpanderCandidate> candidates,
+                 Map<String, String> used, int index) {
+            this.classFile = classFile;
+            this.current = current;
+            this.input = input;
+            this.key = key;
+            this.candidates = candidates;
+            this.used = used;
+            this.index = index;
+        }
+    }
+
+    /**
+     * Splits a range of class files in halves until it is small enough to run the step directly.
+     */
+    @SuppressWarnings("serial") // never serialized
+    private static final class ExpandTask extends RecursiveAction {
+        private static final int THRESHOLD = 8;
+
+        private final List<Path> classFiles;
+        private final FileStep step;
+        private final int from;
+        private final int to;
+
+        ExpandTask(List<Path> classFiles, FileStep step, int from, int to) {
+            this.classFiles = classFiles;
+            this.step = step;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    try {
+                        step.run(i);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(failure(classFiles.get(i), e));
+                    }
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ExpandTask(classFiles, step, from, mid),
+                    new ExpandTask(classFiles, step, mid, to));
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package dev.relism.jdae.core.archive;
+
+import dev.relism.jdae.api.AnnotationView;
+import dev.relism.jdae.api.ExpansionContext;
+import dev.relism.jdae.api.ViewExpander;
+import dev.relism.jdae.core.bytecode.ClassScanner;
+import dev.relism.jdae.core.expansion.ExpanderRegistry;
+import dev.relism.jdae.core.expansion.ExpansionEngine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JarExpanderTest {
+    private static final String TARGET = "p/Target.class";
+    private static final FileTime TIME = FileTime.fromMillis(1_700_000_000_000L);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void copiesEveryEntryThatIsNotExpandedAsItIs() throws IOException {
+        Path input = dir.resolve("in.jar");
+        Map<String, byte[]> contents = writeJar(input);
+        Path output = dir.resolve("out.jar");
+
+        JarExpander.Result result = expander().expand(input, output);
+
+        assertEquals(contents.size(), result.entries());
+        assertEquals(2, result.classes());
+        assertEquals(1, result.expanded());
+        try (ZipFile in = new ZipFile(input.toFile()); ZipFile out = new ZipFile(output.toFile())) {
+            assertEquals("archive comment", out.getComment());
+            assertEquals(names(in), names(out));
+            for (ZipEntry e : Collections.list(in.entries())) {
+                ZipEntry copy = out.getEntry(e.getName());
+                assertEquals(e.getComment(), copy.getComment(), e.getName());
+                assertEquals(e.getLastModifiedTime(), copy.getLastModifiedTime(), e.getName());
+                assertArrayEquals(e.getExtra(), copy.getExtra());
+                if (e.getName().equals(TARGET)) {
+                    assertEquals(ZipEntry.DEFLATED, copy.getMethod());
+                    continue;
+                }
+                assertEquals(e.getMethod(), copy.getMethod(), e.getName());
+                assertEquals(e.getCrc(), copy.getCrc(), e.getName());
+                assertArrayEquals(contents.get(e.getName()), read(out, copy));
+            }
+            assertTrue(annotations(read(out, out.getEntry(TARGET))).contains("Lp/Added;"));
+        }
+    }
+
+    @Test
+    void writesLocalHeadersThatStreamingReadersAccept() throws IOException {
+        Path input = dir.resolve("in.jar");
+        Map<String, byte[]> contents = writeJar(input);
+        Path output = dir.resolve("out.jar");
+
+        expander().expand(input, output);
+
+        // streaming readers see only local headers, whose data descriptors the copy drops
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(output))) {
+            for (ZipEntry e; (e = in.getNextEntry()) != null; ) {
+                names.add(e.getName());
+                byte[] data = in.readAllBytes();
+                if (!e.getName().equals(TARGET)) {
+                    assertArrayEquals(contents.get(e.getName()), data);
+                }
+            }
+        }
+        assertEquals(new ArrayList<>(contents.keySet()), names);
+    }
+
+    @Test
+    void expandsInPlace() throws IOException {
+        Path jar = dir.resolve("same.jar");
+        writeJar(jar);
+
+        expander().expand(jar, jar);
+
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            assertTrue(annotations(read(zip, zip.getEntry(TARGET))).contains("Lp/Added;"));
+        }
+        try (var files = Files.list(dir)) {
+            assertFalse(files.anyMatch(p -> p.toString().endsWith(".tmp")));
+        }
+    }
+
+    private static JarExpander expander() {
+        ExpanderRegistry registry = new ExpanderRegistry(JarExpanderTest.class.getClassLoader());
+        registry.register("p.Marker", AddingExpander.class);
+        ExpansionEngine engine = new ExpansionEngine(registry, JarExpanderTest.class.getClassLoader());
+        return new JarExpander(new ClassScanner(registry::hasExpander), engine, true);
+    }
+
+    /**
+     * Writes deflated entries with data descriptors, stored entries without, entry comments, an extra
+     * field, a directory and an archive comment, and returns the contents by name in archive order.
+     */
+    private static Map<String, byte[]> writeJar(Path jar) throws IOException {
+        Map<String, byte[]> contents = new LinkedHashMap<>();
+        contents.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        contents.put(TARGET, classFile("p/Target", "Lp/Marker;"));
+        contents.put("p/Plain.class", classFile("p/Plain", null));
+        contents.put("empty/", new byte[0]);
+        contents.put("data/stored.bin", new byte[]{0, 1, 2, 3, (byte) 0xFF});
+        contents.put("data/text.txt", "compressible ".repeat(500).getBytes(StandardCharsets.US_ASCII));
+        try (OutputStream file = Files.newOutputStream(jar); ZipOutputStream zip = new ZipOutputStream(file)) {
+            zip.setComment("archive comment");
+            for (Map.Entry<String, byte[]> c : contents.entrySet()) {
+                ZipEntry e = new ZipEntry(c.getKey());
+                e.setLastModifiedTime(TIME);
+                if (c.getKey().equals("p/Plain.class") || c.getKey().equals("data/stored.bin") || c.getKey().endsWith("/")) {
+                    CRC32 crc = new CRC32();
+                    crc.update(c.getValue());
+                    e.setMethod(ZipEntry.STORED);
+                    e.setSize(c.getValue().length);
+                    e.setCrc(crc.getValue());
+                }
+                if (c.getKey().startsWith("data/")) {
+                    e.setComment("comment of " + c.getKey());
+                    e.setExtra(new byte[]{(byte) 0xCA, (byte) 0xFE, 2, 0, 7, 9});
+                }
+                zip.putNextEntry(e);
+                zip.write(c.getValue());
+                zip.closeEntry();
+            }
+        }
+        return contents;
+    }
+
+    private static byte[] classFile(String internalName, String annotation) {
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(Opcodes.V21, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, internalName, null, "java/lang/Object", null);
+        if (annotation != null) {
+            cw.visitAnnotation(annotation, true).visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static List<String> names(ZipFile zip) {
+        List<String> names = new ArrayList<>();
+        zip.stream().forEach(e -> names.add(e.getName()));
+        return names;
+    }
+
+    private static byte[] read(ZipFile zip, ZipEntry e) throws IOException {
+        try (InputStream in = zip.getInputStream(e)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static List<String> annotations(byte[] classFile) {
+        ClassNode node = new ClassNode();
+        new ClassReader(classFile).accept(node, 0);
+        List<String> descs = new ArrayList<>();
+        if (node.visibleAnnotations != null) {
+            for (AnnotationNode an : node.visibleAnnotations) descs.add(an.desc);
+        }
+        return descs;
+    }
+
+    public static final class AddingExpander implements ViewExpander<Object> {
+        @Override
+        public void expand(ExpansionContext ctx, AnnotationView annotation) {
+            ctx.addAnnotation("p.Added", b -> b.member("value", "added"));
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package dev.relism.jdae.core.bytecode;
+
+import dev.relism.jdae.api.AnnotationDescriptor;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassTooLargeException;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.lang.annotation.ElementType;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RawAnnotationSplicerTest {
+    private static final String SOURCE = "p.Source";
+
+    @Test
+    void splicesTheSameAnnotationsAsAsm() {
+        byte[] original = annotatedClass(0);
+        RewritePlan plan = plan();
+
+        byte[] raw = new RawAnnotationSplicer().splice(original, plan);
+        byte[] asm = new AnnotationRewriter().rewrite(original, plan);
+
+        assertNotNull(raw);
+        assertEquals(annotations(asm), annotations(raw));
+        assertEquals(code(original), code(raw));
+    }
+
+    @Test
+    void splicesUpToTheConstantPoolLimit() {
+        // room for the new constants of the plan, a few to spare
+        byte[] original = annotatedClass(0xFFFF - 64);
+        RewritePlan plan = plan();
+
+        byte[] raw = new RawAnnotationSplicer().splice(original, plan);
+
+        assertNotNull(raw);
+        assertEquals(annotations(new AnnotationRewriter().rewrite(original, plan)), annotations(raw));
+    }
+
+    @Test
+    void fallsBackToAsmWhenTheConstantPoolOverflows() {
+        byte[] original = annotatedClass(0xFFFF);
+        RewritePlan plan = plan();
+
+        assertNull(new RawAnnotationSplicer().splice(original, plan));
+        // the ASM backend is then used, and fails as it does on its own instead of writing a broken class
+        assertThrows(ClassTooLargeException.class, () -> new BytecodeExpander(RewriteBackend.RAW).apply(original, plan));
+        assertThrows(ClassTooLargeException.class, () -> new BytecodeExpander(RewriteBackend.ASM).apply(original, plan));
+    }
+
+    @Test
+    void leavesTheClassAloneForAnEmptyPlan() {
+        byte[] original = annotatedClass(0);
+        assertArrayEquals(original, new RawAnnotationSplicer().splice(original, new RewritePlan()));
+    }
+
+    private static RewritePlan plan() {
+        AnnotationDescriptor nested = AnnotationDescriptor.builder("p.Nested").member("value", "inner").build();
+        AnnotationDescriptor all = AnnotationDescriptor.builder("p.All")
+                .member("z", true)
+                .member("b", (byte) -3)
+                .member("c", 'q')
+                .member("s", (short) 300)
+                .member("i", 1 << 20)
+                .member("j", 1L << 40)
+                .member("f", 1.5f)
+                .member("d", -0.25)
+                .member("str", "é中\0")
+                .member("type", String.class)
+                .member("prim", int[].class)
+                .member("kind", ElementType.FIELD)
+                .member("nested", nested)
+                .member("ints", new int[]{1, 2, 3})
+                .member("longs", new long[]{Long.MIN_VALUE})
+                .member("chars", new char[0])
+                .member("strings", new String[]{"a", "b"})
+                .member("nesteds", List.of(nested, AnnotationDescriptor.builder("p.Nested").build()))
+                .build();
+        return new RewritePlan()
+                .add("p.Target", List.of(SOURCE), List.of(all))
+                .add("p.Target#field", List.of(), List.of(nested))
+                .add("p.Target#run()V", List.of(SOURCE), List.of(all, nested));
+    }
+
+    /**
+     * A class with a source annotation on itself and its method, a retained annotation on each, and
+     * filler constants up to {@code poolCount} entries if it is not 0.
+     */
+    private static byte[] annotatedClass(int poolCount) {
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(Opcodes.V21, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "p/Target", null, "java/lang/Object", null);
+        annotate(cw.visitAnnotation(descriptor(SOURCE), true));
+        cw.visitAnnotation("Lp/Kept;", false).visitEnd();
+
+        FieldVisitor fv = cw.visitField(Opcodes.ACC_PRIVATE, "field", "I", null, null);
+        fv.visitAnnotation("Lp/Kept;", true).visitEnd();
+        fv.visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "run", "()V", null, null);
+        annotate(mv.visitAnnotation(descriptor(SOURCE), true));
+        mv.visitAnnotation("Lp/Kept;", false).visitEnd();
+        mv.visitCode();
+        mv.visitFieldInsn(Opcodes.GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+        mv.visitLdcInsn("run");
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(2, 1);
+        mv.visitEnd();
+
+        if (poolCount > 0) {
+            // attribute names are otherwise added when the class is written, after the filler
+            cw.newUTF8("RuntimeVisibleAnnotations");
+            cw.newUTF8("RuntimeInvisibleAnnotations");
+            cw.newUTF8("Code");
+            for (int i = 0; cw.newUTF8("filler" + i) < poolCount - 1; i++) {
+                // each call adds one entry
+            }
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void annotate(AnnotationVisitor av) {
+        av.visit("name", "source");
+        av.visitEnd();
+    }
+
+    private static String descriptor(String className) {
+        return "L" + className.replace('.', '/') + ";";
+    }
+
+    /**
+     * The annotations of every owner, in order, with the types of their values.
+     */
+    private static String annotations(byte[] classBytes) {
+        ClassNode node = new ClassNode();
+        new ClassReader(classBytes).accept(node, 0);
+        StringBuilder out = new StringBuilder();
+        owner(out, "class", node.visibleAnnotations, node.invisibleAnnotations);
+        for (FieldNode f : node.fields) {
+            owner(out, f.name, f.visibleAnnotations, f.invisibleAnnotations);
+        }
+        for (MethodNode m : node.methods) {
+            owner(out, m.name + m.desc, m.visibleAnnotations, m.invisibleAnnotations);
+        }
+        return out.toString();
+    }
+
+    private static void owner(StringBuilder out, String owner, List<AnnotationNode> visible, List<AnnotationNode> invisible) {
+        out.append(owner).append(" visible=");
+        annotations(out, visible);
+        out.append(" invisible=");
+        annotations(out, invisible);
+        out.append('\n');
+    }
+
+    private static void annotations(StringBuilder out, List<AnnotationNode> nodes) {
+        out.append('[');
+        if (nodes != null) {
+            for (AnnotationNode an : nodes) {
+                annotation(out, an);
+                out.append(' ');
+            }
+        }
+        out.append(']');
+    }
+
+    private static void annotation(StringBuilder out, AnnotationNode an) {
+        out.append('@').append(an.desc).append('(');
+        if (an.values != null) {
+            for (int i = 0; i < an.values.size(); i += 2) {
+                out.append(an.values.get(i)).append('=');
+                value(out, an.values.get(i + 1));
+                out.append(',');
+            }
+        }
+        out.append(')');
+    }
+
+    private static void value(StringBuilder out, Object value) {
+        if (value instanceof AnnotationNode an) {
+            annotation(out, an);
+        } else if (value instanceof String[] constant) {
+            out.append("enum ").append(constant[0]).append('.').append(constant[1]);
+        } else if (value instanceof List<?> list) {
+            out.append('{');
+            for (Object element : list) {
+                value(out, element);
+                out.append(';');
+            }
+            out.append('}');
+        } else if (value != null && value.getClass().isArray()) {
+            // ClassReader reads arrays of primitives as primitive arrays
+            out.append(value.getClass().getComponentType()).append('{');
+            for (int i = 0; i < Array.getLength(value); i++) {
+                out.append(Array.get(value, i)).append(';');
+            }
+            out.append('}');
+        } else if (value instanceof Type type) {
+            out.append("class ").append(type.getDescriptor());
+        } else {
+            out.append(value).append(':').append(value == null ? null : value.getClass().getSimpleName());
+        }
+    }
+
+    private static List<String> code(byte[] classBytes) {
+        ClassNode node = new ClassNode();
+        new ClassReader(classBytes).accept(node, 0);
+        List<String> code = new ArrayList<>();
+        for (MethodNode m : node.methods) {
+            for (var insn : m.instructions) {
+                code.add(m.name + ":" + insn.getOpcode());
+            }
+            code.add(m.name + " max " + m.maxStack + "/" + m.maxLocals);
+        }
+        return code;
+    }
+}
@@ -0,0 +1,88 @@
+package dev.relism.jdae.core.expansion;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AnnotationNode;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class AnnotationInstanceFactoryTest {
+    private static final String ANNOTATION = "p.MyAnn";
+
+    @Test
+    void implementsAnnotationOfChildLoaderWithoutProxy() throws Exception {
+        ClassLoader child = new ChildLoader(getClass().getClassLoader());
+        Annotation ann = new AnnotationInstanceFactory(child).create(ANNOTATION, node("x"));
+
+        assertFalse(Proxy.isProxyClass(ann.getClass()), ann.getClass().getName());
+        assertSame(child, ann.getClass().getClassLoader());
+        assertEquals(ANNOTATION, ann.annotationType().getName());
+        assertEquals("x", member(ann, "value"));
+        assertEquals(7, member(ann, "size"));
+    }
+
+    @Test
+    void reusesImplementationOfAnotherFactoryOverTheSameLoader() {
+        ClassLoader child = new ChildLoader(getClass().getClassLoader());
+        Annotation first = new AnnotationInstanceFactory(child).create(ANNOTATION, node("a"));
+        Annotation second = new AnnotationInstanceFactory(child).create(ANNOTATION, node("b"));
+
+        assertFalse(Proxy.isProxyClass(second.getClass()));
+        assertSame(first.getClass(), second.getClass());
+        assertEquals(second, new AnnotationInstanceFactory(child).create(ANNOTATION, node("b")));
+    }
+
+    private static Object member(Annotation ann, String name) throws Exception {
+        Method method = ann.annotationType().getMethod(name);
+        return method.invoke(ann);
+    }
+
+    private static AnnotationNode node(String value) {
+        AnnotationNode node = new AnnotationNode("Lp/MyAnn;");
+        node.values = List.of("value", value);
+        return node;
+    }
+
+    /**
+     * Loader of its own unnamed module, as a project class loader below the plugin's.
+     */
+    private static final class ChildLoader extends ClassLoader {
+        ChildLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            if (!name.equals(ANNOTATION)) throw new ClassNotFoundException(name);
+            byte[] bytes = annotationType();
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * {@code public @interface MyAnn { String value(); int size() default 7; }}
+     */
+    private static byte[] annotationType() {
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT | Opcodes.ACC_ANNOTATION,
+                "p/MyAnn", null, "java/lang/Object", new String[]{"java/lang/annotation/Annotation"});
+        cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "value", "()Ljava/lang/String;", null, null).visitEnd();
+        MethodVisitor size = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "size", "()I", null, null);
+        AnnotationVisitor def = size.visitAnnotationDefault();
+        def.visit(null, 7);
+        def.visitEnd();
+        size.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+}
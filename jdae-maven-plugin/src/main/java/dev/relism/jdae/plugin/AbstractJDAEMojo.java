@@ -0,0 +1,140 @@
+package dev.relism.jdae.plugin;
+
+import dev.relism.jdae.core.bytecode.RewriteBackend;
+import dev.relism.jdae.core.expansion.ExpanderRegistry;
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Configuration and class loading shared by the expansion goals.
+ */
+public abstract class AbstractJDAEMojo extends AbstractMojo {
+
+    @Parameter(property = "jdae.removeOriginal", defaultValue = "true")
+    protected boolean removeOriginal;
+
+    /**
+     * How expanded annotations are written back: {@code ASM} streams each class through ASM,
+     * {@code RAW} splices the annotation attributes into the class file bytes directly.
+     */
+    @Parameter(property = "jdae.rewriteBackend", defaultValue = "ASM")
+    protected RewriteBackend rewriteBackend;
+
+    /**
+     * Share one class loader over the dependency jars, and the expanders found in them, between all projects
+     * of the build with the same jars. Classes in jars are then found before those in directories, such as
+     * the project's own classes, so a project must not replace classes of its dependencies. Requires the
+     * plugin to be declared with {@code <extensions>true</extensions>}, which closes the loaders when the
+     * build ends.
+     */
+    @Parameter(property = "jdae.shareClassLoader", defaultValue = "false")
+    protected boolean shareClassLoader;
+
+    @Component(role = AbstractMavenLifecycleParticipant.class, hint = "jdae")
+    private AbstractMavenLifecycleParticipant lifecycleParticipant;
+
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    protected MavenProject project;
+
+    @Parameter(defaultValue = "${session}", readonly = true, required = true)
+    protected MavenSession session;
+
+    // registry of the shared loader that is the parent of the project class loader, if any
+    private ExpanderRegistry sharedRegistry;
+
+    /**
+     * Class loader over {@code classesRoot} (a directory or a jar) followed by the project's compile
+     * and runtime classpath. With {@code shareClassLoader}, the jars of the classpath are in a parent
+     * loader shared for the session, and the returned loader only holds {@code classesRoot} and directories.
+     */
+    protected URLClassLoader createProjectClassLoader(Path classesRoot) throws MojoExecutionException {
+        List<URL> urls = new ArrayList<>();
+        List<Path> jars = new ArrayList<>();
+        ClassLoader parent = getClass().getClassLoader();
+
+        try {
+            urls.add(classesRoot.toUri().toURL());
+            // Include both compile and runtime classpath elements to ensure all application types
+            // referenced from annotation members (e.g., Class<?> values) are resolvable in dev mode.
+            List<String> compileCp = project.getCompileClasspathElements();
+            for (String element : compileCp) {
+                URL url = Paths.get(element).toUri().toURL();
+                if (!urls.contains(url)) {
+                    urls.add(url);
+                }
+            }
+            List<String> runtimeCp = project.getRuntimeClasspathElements();
+            for (String element : runtimeCp) {
+                URL url = Paths.get(element).toUri().toURL();
+                if (!urls.contains(url)) {
+                    urls.add(url);
+                }
+            }
+
+            getLog().debug("JDAE ClassLoader URLs (" + urls.size() + " entries):");
+            if (getLog().isDebugEnabled()) {
+                urls.forEach(url -> getLog().debug("  - " + url));
+            }
+
+            SharedClassLoaders loaders = shareClassLoader && session != null ? sharedClassLoaders() : null;
+            if (loaders != null) {
+                for (int i = urls.size() - 1; i > 0; i--) {
+                    Path entry = Paths.get(urls.get(i).toURI());
+                    if (Files.isRegularFile(entry)) {
+                        jars.add(0, entry);
+                        urls.remove(i);
+                    }
+                }
+                if (!jars.isEmpty()) {
+                    SharedClassLoaders.Shared shared = loaders.get(jars);
+                    parent = shared.loader();
+                    sharedRegistry = shared.registry();
+                }
+            }
+        } catch (DependencyResolutionRequiredException | IOException | URISyntaxException e) {
+            throw new MojoExecutionException("Failed to resolve project dependencies for JDAE", e);
+        }
+
+        return new URLClassLoader(
+                urls.toArray(new URL[0]),
+                parent
+        );
+    }
+
+    /**
+     * The shared loaders of the session, or null if the plugin is not a build extension and they could not be closed.
+     */
+    private SharedClassLoaders sharedClassLoaders() {
+        SharedClassLoaders loaders = lifecycleParticipant instanceof JDAELifecycleParticipant participant
+                ? participant.of(session) : null;
+        if (loaders == null) {
+            getLog().warn("JDAE: shareClassLoader requires <extensions>true</extensions> on the plugin;"
+                    + " the project gets a class loader of its own");
+        }
+        return loaders;
+    }
+
+    /**
+     * Registry of the expanders visible to a loader from {@link #createProjectClassLoader}; those of a
+     * shared loader are discovered once per session.
+     */
+    protected ExpanderRegistry createRegistry(URLClassLoader projectClassLoader) {
+        return new ExpanderRegistry(projectClassLoader, sharedRegistry);
+    }
+}
@@ -0,0 +1,131 @@
+package dev.relism.jdae.plugin;
+
+import dev.relism.jdae.core.archive.ArtifactCache;
+import dev.relism.jdae.core.archive.JarExpander;
+import dev.relism.jdae.core.bytecode.BytecodeExpander;
+import dev.relism.jdae.core.bytecode.ClassScanner;
+import dev.relism.jdae.core.expansion.ExpanderRegistry;
+import dev.relism.jdae.core.expansion.ExpansionEngine;
+import dev.relism.jdae.core.incremental.ExpanderFingerprints;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Expands the annotations of selected dependency jars. Expanded copies are kept in a cache shared by
+ * all builds, and replace the original jars for the rest of the build, so later plugins such as
+ * surefire or the packaging plugins see the expanded classes.
+ */
+@Mojo(
+        name = "expand-dependencies",
+        defaultPhase = LifecyclePhase.PROCESS_CLASSES,
+        requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME,
+        threadSafe = true
+)
+public class JDAEExpandDependenciesMojo extends AbstractJDAEMojo {
+
+    @Parameter(defaultValue = "${project.build.outputDirectory}", required = true, readonly = true)
+    private String classesDirectory;
+
+    /**
+     * Dependencies to expand, as {@code groupId:artifactId}; either part may be {@code *}.
+     */
+    @Parameter(property = "jdae.dependencies")
+    private List<String> dependencies;
+
+    /**
+     * Directory holding the expanded dependency jars.
+     */
+    @Parameter(property = "jdae.dependencyCache", defaultValue = "${user.home}/.jdae/cache")
+    private String dependencyCache;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (dependencies == null || dependencies.isEmpty()) {
+            getLog().debug("JDAE: no dependencies selected for expansion");
+            return;
+        }
+        for (String pattern : dependencies) {
+            if (pattern.trim().split(":").length != 2) {
+                throw new MojoExecutionException("Invalid dependency pattern '" + pattern + "', expected groupId:artifactId");
+            }
+        }
+        List<Artifact> selected = new ArrayList<>();
+        for (Artifact artifact : project.getArtifacts()) {
+            File file = artifact.getFile();
+            if (file != null && file.isFile() && file.getName().endsWith(".jar") && isSelected(artifact)) {
+                selected.add(artifact);
+            }
+        }
+        if (selected.isEmpty()) {
+            getLog().info("JDAE: no resolved dependency matches " + dependencies);
+            return;
+        }
+
+        URLClassLoader projectClassLoader = createProjectClassLoader(Paths.get(classesDirectory));
+
+        Thread currentThread = Thread.currentThread();
+        ClassLoader originalClassLoader = currentThread.getContextClassLoader();
+        currentThread.setContextClassLoader(projectClassLoader);
+
+        int expanded = 0;
+        try {
+            ExpanderRegistry registry = createRegistry(projectClassLoader);
+            ExpansionEngine engine = new ExpansionEngine(registry, projectClassLoader, new BytecodeExpander(rewriteBackend));
+            JarExpander expander = new JarExpander(new ClassScanner(registry::hasExpander), engine, removeOriginal);
+            ExpanderFingerprints fingerprints = new ExpanderFingerprints(projectClassLoader, registry);
+            ArtifactCache cache = new ArtifactCache(Paths.get(dependencyCache),
+                    "removeOriginal=" + removeOriginal + ",rewriteBackend=" + rewriteBackend);
+
+            for (Artifact artifact : selected) {
+                Path jar = artifact.getFile().toPath();
+                Path result;
+                try {
+                    result = cache.expand(artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion(),
+                            jar, expander, fingerprints);
+                } catch (IOException e) {
+                    throw new MojoExecutionException("Failed during JDAE expansion of " + artifact, e);
+                }
+                if (!result.equals(jar)) {
+                    artifact.setFile(result.toFile());
+                    expanded++;
+                    getLog().debug("JDAE: " + artifact + " -> " + result);
+                }
+            }
+        } finally {
+            currentThread.setContextClassLoader(originalClassLoader);
+            try {
+                projectClassLoader.close();
+            } catch (IOException e) {
+                getLog().warn("Failed to close project classloader", e);
+            }
+        }
+
+        getLog().info("JDAE: using expanded copies of " + expanded + " of " + selected.size() + " selected dependencies");
+    }
+
+    private boolean isSelected(Artifact artifact) {
+        for (String pattern : dependencies) {
+            String[] parts = pattern.trim().split(":");
+            if (matches(parts[0], artifact.getGroupId()) && matches(parts[1], artifact.getArtifactId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(String pattern, String value) {
+        return pattern.equals("*") || pattern.equals(value);
+    }
+}
@@ -0,0 +1,107 @@
+package dev.relism.jdae.plugin;
+
+import dev.relism.jdae.core.archive.JarExpander;
+import dev.relism.jdae.core.bytecode.BytecodeExpander;
+import dev.relism.jdae.core.bytecode.ClassScanner;
+import dev.relism.jdae.core.expansion.ExpanderRegistry;
+import dev.relism.jdae.core.expansion.ExpansionEngine;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Expands the annotations of the classes inside a packaged jar. Entries that are not rewritten are
+ * copied without being recompressed, and entry order and timestamps are kept.
+ */
+@Mojo(
+        name = "expand-jar",
+        defaultPhase = LifecyclePhase.PACKAGE,
+        requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME,
+        threadSafe = true
+)
+public class JDAEExpandJarMojo extends AbstractJDAEMojo {
+
+    /**
+     * Jar whose classes are expanded.
+     */
+    @Parameter(property = "jdae.jarFile", defaultValue = "${project.build.directory}/${project.build.finalName}.jar", required = true)
+    private String jarFile;
+
+    /**
+     * Where the expanded jar is written; defaults to replacing {@code jarFile}.
+     */
+    @Parameter(property = "jdae.outputJar", defaultValue = "${project.build.directory}/${project.build.finalName}.jar", required = true)
+    private String outputJar;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        Path input = Paths.get(jarFile);
+        if (!Files.isRegularFile(input)) {
+            getLog().info("Jar does not exist: " + input);
+            return;
+        }
+        Path output = Paths.get(outputJar);
+        Path target = output;
+        try {
+            if (Files.exists(output) && Files.isSameFile(input, output)) {
+                // the project class loader reads the input jar, so it is only replaced once the loader is closed
+                target = Files.createTempFile(output.toAbsolutePath().getParent(), output.getFileName().toString(), ".jdae");
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to prepare " + output, e);
+        }
+
+        URLClassLoader projectClassLoader = createProjectClassLoader(input);
+
+        Thread currentThread = Thread.currentThread();
+        ClassLoader originalClassLoader = currentThread.getContextClassLoader();
+        currentThread.setContextClassLoader(projectClassLoader);
+
+        JarExpander.Result result;
+        try {
+            ExpanderRegistry registry = createRegistry(projectClassLoader);
+            ExpansionEngine engine = new ExpansionEngine(registry, projectClassLoader, new BytecodeExpander(rewriteBackend));
+            JarExpander expander = new JarExpander(new ClassScanner(registry::hasExpander), engine, removeOriginal);
+            result = expander.expand(input, target);
+        } catch (IOException e) {
+            deleteQuietly(target, output);
+            throw new MojoExecutionException("Failed during JDAE expansion of " + input, e);
+        } finally {
+            currentThread.setContextClassLoader(originalClassLoader);
+            try {
+                projectClassLoader.close();
+            } catch (IOException e) {
+                getLog().warn("Failed to close project classloader", e);
+            }
+        }
+
+        if (target != output) {
+            try {
+                Files.move(target, output, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                deleteQuietly(target, output);
+                throw new MojoExecutionException("Failed to replace " + output, e);
+            }
+        }
+
+        getLog().info("JDAE: expanded " + result.expanded() + " of " + result.classes() + " class files in " + output.getFileName());
+    }
+
+    private void deleteQuietly(Path target, Path output) {
+        if (target == output) return;
+        try {
+            Files.deleteIfExists(target);
+        } catch (IOException e) {
+            getLog().warn("Failed to delete " + target, e);
+        }
+    }
+}
@@ -1,27 +1,29 @@
 package dev.relism.jdae.plugin;
 
+import dev.relism.jdae.core.bytecode.BytecodeExpander;
 import dev.relism.jdae.core.bytecode.ClassScanner;
-import dev.relism.jdae.core.bytecode.ExpanderCandidate;
 import dev.relism.jdae.core.expansion.ExpansionEngine;
 import dev.relism.jdae.core.expansion.ExpanderRegistry;
-import org.apache.maven.artifact.DependencyResolutionRequiredException;
-import org.apache.maven.plugin.AbstractMojo;
+import dev.relism.jdae.core.expansion.ExpansionMemo;
+import dev.relism.jdae.core.incremental.ExpanderFingerprints;
+import dev.relism.jdae.core.incremental.ExpansionStateCache;
+import dev.relism.jdae.core.metrics.ExpansionMetrics;
+import dev.relism.jdae.core.pipeline.ClassDirectoryExpander;
+import dev.relism.jdae.core.pipeline.ClassDirectoryExpander.Outcome;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
-import org.apache.maven.project.MavenProject;
 
 import java.io.IOException;
-import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Stream;
+import java.util.HashSet;
+import java.util.Set;
 
 @Mojo(
         name = "expand-annotations",
@@ -29,16 +31,74 @@ import java.util.stream.Stream;
         requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME,
         threadSafe = true
 )
-public class JDAEExpandMojo extends AbstractMojo {
+public class JDAEExpandMojo extends AbstractJDAEMojo {
+    private static final int SLOWEST_CLASSES = 20;
+    private static final int TOP_EXPANDERS = 5;
+    private static final String MEMO_FILE = "expansion-memo.bin";
 
     @Parameter(defaultValue = "${project.build.outputDirectory}", required = true, readonly = true)
     private String classesDirectory;
 
-    @Parameter(property = "jdae.removeOriginal", defaultValue = "true")
-    private boolean removeOriginal;
-
-    @Parameter(defaultValue = "${project}", readonly = true, required = true)
-    private MavenProject project;
+    /**
+     * Number of worker threads used to expand class files. {@code 1} keeps the sequential
+     * behaviour, {@code 0} or a negative value uses one worker per available processor.
+     */
+    @Parameter(property = "jdae.parallelism", defaultValue = "1")
+    private int parallelism;
+
+    /**
+     * Skip class files that are unchanged since the previous run. A class is expanded again when its
+     * bytes, its expanders, their annotation types or {@code removeOriginal} change.
+     */
+    @Parameter(property = "jdae.incremental", defaultValue = "true")
+    private boolean incremental;
+
+    /**
+     * Directory holding the incremental expansion state.
+     */
+    @Parameter(property = "jdae.stateDirectory", defaultValue = "${project.build.directory}/jdae")
+    private String stateDirectory;
+
+    /**
+     * Only open the classes listed in the candidate index written by {@code jdae-processor}, and their
+     * nested classes, instead of every class file. Without an index all class files are scanned.
+     */
+    @Parameter(property = "jdae.useCandidateIndex", defaultValue = "true")
+    private boolean useCandidateIndex;
+
+    /**
+     * Expand equal annotations on equivalent targets once for expanders declared {@code @Pure}, and
+     * reuse the generated annotations.
+     */
+    @Parameter(property = "jdae.memoize", defaultValue = "true")
+    private boolean memoize;
+
+    /**
+     * Largest number of pure expansion results kept in memory.
+     */
+    @Parameter(property = "jdae.memoSize", defaultValue = "10000")
+    private int memoSize;
+
+    /**
+     * Keep pure expansion results in {@code stateDirectory} for the next build. Results are reused only
+     * while the expander and the annotation type are unchanged.
+     */
+    @Parameter(property = "jdae.persistMemo", defaultValue = "false")
+    private boolean persistMemo;
+
+    /**
+     * Time every phase of the expansion and every expander, write the results to {@code metricsReport}
+     * and summarize them in the log.
+     */
+    @Parameter(property = "jdae.metrics", defaultValue = "true")
+    private boolean metrics;
+
+    /**
+     * JSON report of the expansion metrics: time per phase, calls and latency histogram per expander,
+     * and the slowest classes.
+     */
+    @Parameter(property = "jdae.metricsReport", defaultValue = "${project.build.directory}/jdae-metrics.json")
+    private String metricsReport;
 
     @Override
     public void execute() throws MojoExecutionException {
@@ -48,45 +108,105 @@ public class JDAEExpandMojo extends AbstractMojo {
             return;
         }
 
-        URLClassLoader projectClassLoader = createProjectClassLoader();
-
-        ClassScanner scanner = new ClassScanner();
+        URLClassLoader projectClassLoader = createProjectClassLoader(classesDir);
 
         Thread currentThread = Thread.currentThread();
         ClassLoader originalClassLoader = currentThread.getContextClassLoader();
         currentThread.setContextClassLoader(projectClassLoader);
 
         try {
-            ExpansionEngine engine = new ExpansionEngine(new ExpanderRegistry(projectClassLoader));
+            ExpanderRegistry registry = createRegistry(projectClassLoader);
+            ClassScanner scanner = new ClassScanner(registry::hasExpander);
+            ExpansionStateCache state = incremental
+                    ? ExpansionStateCache.load(Paths.get(stateDirectory), "removeOriginal=" + removeOriginal)
+                    : null;
+            ExpansionMetrics expansionMetrics = metrics ? ExpansionMetrics.create(SLOWEST_CLASSES) : ExpansionMetrics.disabled();
+            ExpanderFingerprints fingerprints = new ExpanderFingerprints(projectClassLoader, registry);
+            ExpansionMemo memo = !memoize ? null
+                    : persistMemo ? ExpansionMemo.load(Paths.get(stateDirectory, MEMO_FILE), memoSize, fingerprints::of)
+                    : ExpansionMemo.inMemory(memoSize);
+            ExpansionEngine engine = new ExpansionEngine(registry, projectClassLoader, new BytecodeExpander(rewriteBackend),
+                    expansionMetrics, memo);
+            ClassDirectoryExpander run = new ClassDirectoryExpander(classesDir, registry, scanner, engine, state,
+                    fingerprints, removeOriginal);
+
+            List<Path> classFiles;
+            boolean indexed;
+            long walkStart = expansionMetrics.start();
+            try {
+                classFiles = useCandidateIndex ? ClassDirectoryExpander.indexedClassFiles(classesDir, registry) : null;
+                indexed = classFiles != null;
+                if (!indexed) {
+                    classFiles = ClassDirectoryExpander.allClassFiles(classesDir);
+                }
+            } catch (IOException e) {
+                throw new MojoExecutionException("Failed during JDAE expansion", e);
+            }
+            expansionMetrics.record(ExpansionMetrics.Phase.WALK, walkStart);
+            if (indexed && getLog().isDebugEnabled()) {
+                getLog().debug("JDAE: candidate index lists " + classFiles.size() + " class files");
+                try {
+                    for (Path file : ClassDirectoryExpander.unindexedCandidates(classesDir, classFiles, scanner)) {
+                        getLog().debug("JDAE: " + classesDir.relativize(file)
+                                + " has expander annotations but is not in the candidate index; it is not expanded");
+                    }
+                } catch (IOException e) {
+                    getLog().debug("JDAE: could not check the classes outside the candidate index: " + e);
+                }
+            }
+
+            Outcome[] outcomes;
+            int workers = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+            try {
+                outcomes = run.expandAll(classFiles, workers, projectClassLoader);
+                if (state != null) {
+                    if (indexed) {
+                        // classes outside the index were not looked at, keep what is known about them
+                        Set<String> visited = new HashSet<>();
+                        for (Path p : classFiles) {
+                            visited.add(run.stateKey(p));
+                        }
+                        state.carryOver(key -> !visited.contains(key) && Files.exists(classesDir.resolve(key)));
+                    }
+                    state.save();
+                }
+                if (memo != null && persistMemo) {
+                    memo.save();
+                }
+            } catch (IOException e) {
+                throw new MojoExecutionException("Failed during JDAE expansion", e);
+            }
 
             int expanded = 0;
             int skipped = 0;
-
-            try (Stream<Path> paths = Files.walk(classesDir)) {
-                List<Path> classFiles = paths
-                        .filter(p -> p.toString().endsWith(".class"))
-                        .toList();
-
-                for (Path p : classFiles) {
-                    byte[] original = Files.readAllBytes(p);
-                    List<ExpanderCandidate> candidates = scanner.scan(original);
-                    if (candidates.isEmpty()) {
-                        skipped++;
-                        continue;
-                    }
-                    byte[] modified = engine.expand(original, candidates, removeOriginal);
-                    if (modified != original && java.util.Arrays.compare(modified, original) != 0) {
-                        Files.write(p, modified);
+            int upToDate = 0;
+            for (int i = 0; i < outcomes.length; i++) {
+                switch (outcomes[i]) {
+                    case EXPANDED -> {
                         expanded++;
-                    } else {
-                        skipped++;
+                        getLog().debug("JDAE: expanded " + classesDir.relativize(classFiles.get(i)));
                     }
+                    case UP_TO_DATE -> upToDate++;
+                    case SKIPPED -> skipped++;
                 }
-            } catch (IOException e) {
-                throw new MojoExecutionException("Failed during JDAE expansion", e);
             }
 
-            getLog().info("JDAE: expanded " + expanded + " class files, skipped " + skipped);
+            getLog().info("JDAE: expanded " + expanded + " class files, skipped " + skipped
+                    + (state != null ? ", up to date " + upToDate : "")
+                    + (workers > 1 ? " (" + workers + " workers)" : ""));
+
+            if (memo != null && memo.getHits() > 0) {
+                getLog().info("JDAE: reused " + memo.getHits() + " of " + (memo.getHits() + memo.getMisses())
+                        + " pure expansions");
+            }
+            if (expansionMetrics.isEnabled()) {
+                expansionMetrics.summary(TOP_EXPANDERS).forEach(getLog()::info);
+                try {
+                    expansionMetrics.writeJson(Paths.get(metricsReport));
+                } catch (IOException e) {
+                    getLog().warn("Failed to write JDAE metrics report " + metricsReport, e);
+                }
+            }
 
         } finally {
             currentThread.setContextClassLoader(originalClassLoader);
@@ -97,38 +217,4 @@ public class JDAEExpandMojo extends AbstractMojo {
             }
         }
     }
-
-    private URLClassLoader createProjectClassLoader() throws MojoExecutionException {
-        List<URL> urls = new ArrayList<>();
-
-        try {
-            urls.add(Paths.get(classesDirectory).toUri().toURL());
-            // Include both compile and runtime classpath elements to ensure all application types
-            // referenced from annotation members (e.g., Class<?> values) are resolvable in dev mode.
-            List<String> compileCp = project.getCompileClasspathElements();
-            for (String element : compileCp) {
-                urls.add(Paths.get(element).toUri().toURL());
-            }
-            List<String> runtimeCp = project.getRuntimeClasspathElements();
-            for (String element : runtimeCp) {
-                URL url = Paths.get(element).toUri().toURL();
-                if (!urls.contains(url)) {
-                    urls.add(url);
-                }
-            }
-
-            getLog().debug("JDAE ClassLoader URLs (" + urls.size() + " entries):");
-            if (getLog().isDebugEnabled()) {
-                urls.forEach(url -> getLog().debug("  - " + url));
-            }
-
-        } catch (DependencyResolutionRequiredException | IOException e) {
-            throw new MojoExecutionException("Failed to resolve project dependencies for JDAE", e);
-        }
-
-        return new URLClassLoader(
-                urls.toArray(new URL[0]),
-                getClass().getClassLoader()
-        );
-    }
-}
\ No newline at end of file
+}
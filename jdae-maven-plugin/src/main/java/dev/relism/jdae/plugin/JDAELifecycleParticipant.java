@@ -0,0 +1,54 @@
+package dev.relism.jdae.plugin;
+
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.MavenExecutionException;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Owns the {@link SharedClassLoaders} of each running Maven session and closes them when the session ends.
+ * Maven only calls it when the plugin is declared with {@code <extensions>true</extensions>}; without that,
+ * the goals do not share class loaders, as nothing would close them.
+ */
+@Named("jdae")
+@Singleton
+public class JDAELifecycleParticipant extends AbstractMavenLifecycleParticipant {
+    // keyed by request: the goals of a parallel build see clones of the session, which share it
+    private final Map<MavenExecutionRequest, SharedClassLoaders> sessions = new IdentityHashMap<>();
+
+    @Override
+    public void afterProjectsRead(MavenSession session) {
+        synchronized (sessions) {
+            sessions.put(session.getRequest(), new SharedClassLoaders(getClass().getClassLoader()));
+        }
+    }
+
+    @Override
+    public void afterSessionEnd(MavenSession session) throws MavenExecutionException {
+        SharedClassLoaders loaders;
+        synchronized (sessions) {
+            loaders = sessions.remove(session.getRequest());
+        }
+        if (loaders == null) return;
+        try {
+            loaders.close();
+        } catch (IOException e) {
+            throw new MavenExecutionException("Failed to close the shared JDAE class loaders", e);
+        }
+    }
+
+    /**
+     * The shared loaders of the session, or null if Maven does not call this participant.
+     */
+    SharedClassLoaders of(MavenSession session) {
+        synchronized (sessions) {
+            return sessions.get(session.getRequest());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package dev.relism.jdae.plugin;
+
+import dev.relism.jdae.core.archive.ArtifactCache;
+import dev.relism.jdae.core.expansion.ExpanderRegistry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class loaders over dependency jars and the expanders discovered in them, shared by the expansion goals
+ * of all projects of a Maven session, so that a reactor loads each set of jars and reads its expander
+ * indexes and service files once. Safe for the concurrent goals of a parallel build.
+ * <p>
+ * Loaders are keyed by the paths and content hashes of their jars, so a jar rebuilt during the session
+ * gets a new loader. Directories, such as the output directories of the reactor's projects, change
+ * during the build and are left to each project's own loader.
+ * <p>
+ * The {@link JDAELifecycleParticipant} creates them when a session starts and closes them when it ends.
+ */
+final class SharedClassLoaders implements Closeable {
+    private final ClassLoader parent;
+    private final Map<List<Jar>, Shared> loaders = new ConcurrentHashMap<>();
+    private final Map<Stamp, String> hashes = new ConcurrentHashMap<>();
+
+    /**
+     * @param parent parent of the loaders, the plugin's class loader
+     */
+    SharedClassLoaders(ClassLoader parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * A loader over some jars and the registry of the expanders found in them.
+     */
+    record Shared(URLClassLoader loader, ExpanderRegistry registry) {
+    }
+
+    /**
+     * The loader over the given jars, in this order, created on first use.
+     */
+    Shared get(List<Path> jars) throws IOException {
+        List<Jar> key = new ArrayList<>(jars.size());
+        for (Path jar : jars) {
+            key.add(new Jar(jar, hash(jar)));
+        }
+        try {
+            // concurrent goals with the same jars wait for the first one instead of creating their own
+            return loaders.computeIfAbsent(key, this::create);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Shared create(List<Jar> jars) {
+        URL[] urls = new URL[jars.size()];
+        try {
+            for (int i = 0; i < urls.length; i++) {
+                urls[i] = jars.get(i).path.toUri().toURL();
+            }
+        } catch (MalformedURLException e) {
+            throw new UncheckedIOException(e);
+        }
+        URLClassLoader loader = new URLClassLoader(urls, parent);
+        return new Shared(loader, new ExpanderRegistry(loader));
+    }
+
+    /**
+     * Closes every loader, which releases their jar files. Goals must not use them afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Shared shared : loaders.values()) {
+            try {
+                shared.loader().close();
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+                else failure.addSuppressed(e);
+            }
+        }
+        loaders.clear();
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Content hash of a jar, computed once per size and modification time.
+     */
+    private String hash(Path jar) throws IOException {
+        Stamp stamp = new Stamp(jar, Files.size(jar), Files.getLastModifiedTime(jar).toMillis());
+        try {
+            return hashes.computeIfAbsent(stamp, s -> {
+                try {
+                    return ArtifactCache.hash(s.path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private record Jar(Path path, String hash) {
+    }
+
+    private record Stamp(Path path, long size, long lastModified) {
+    }
+}
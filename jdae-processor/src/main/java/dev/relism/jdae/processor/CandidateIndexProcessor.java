@@ -0,0 +1,122 @@
+package dev.relism.jdae.processor;
+
+import dev.relism.jdae.core.index.CandidateIndex;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Writes {@link CandidateIndex#RESOURCE} with the top-level classes whose declarations (or those of
+ * their members and nested types) carry an annotation meta-annotated with {@code @Expander}.
+ * Entries of an existing index are kept for classes that are not part of this compilation, which
+ * keeps the index complete across incremental compilations.
+ * <p>
+ * Annotations inside method bodies, such as on local or anonymous classes, are not seen by
+ * annotation processing and do not make their enclosing class a candidate.
+ */
+@SupportedAnnotationTypes("*")
+public class CandidateIndexProcessor extends AbstractProcessor {
+    private final Set<String> candidates = new TreeSet<>();
+    private final Set<String> compiled = new HashSet<>();
+    private final Map<TypeElement, Boolean> expanderAnnotations = new HashMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeIndex();
+            return false;
+        }
+        for (Element e : roundEnv.getRootElements()) {
+            if (e instanceof TypeElement type) {
+                compiled.add(binaryName(type));
+            }
+        }
+        for (TypeElement annotation : annotations) {
+            if (!expanderAnnotations.computeIfAbsent(annotation, CandidateIndexProcessor::isExpanderAnnotation)) {
+                continue;
+            }
+            for (Element e : roundEnv.getElementsAnnotatedWith(annotation)) {
+                TypeElement top = topLevelType(e);
+                if (top != null) {
+                    candidates.add(binaryName(top));
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isExpanderAnnotation(TypeElement annotation) {
+        for (AnnotationMirror mirror : annotation.getAnnotationMirrors()) {
+            TypeElement type = (TypeElement) mirror.getAnnotationType().asElement();
+            if (type.getQualifiedName().contentEquals(ExpanderIndexProcessor.EXPANDER)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static TypeElement topLevelType(Element e) {
+        TypeElement top = null;
+        for (Element cur = e; cur != null; cur = cur.getEnclosingElement()) {
+            if (cur instanceof TypeElement type) {
+                top = type;
+            }
+        }
+        return top;
+    }
+
+    private String binaryName(TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName(type).toString();
+    }
+
+    private void writeIndex() {
+        Filer filer = processingEnv.getFiler();
+        boolean existed = false;
+        try {
+            FileObject previous = filer.getResource(StandardLocation.CLASS_OUTPUT, "", CandidateIndex.RESOURCE);
+            try (InputStream in = previous.openInputStream()) {
+                existed = true;
+                for (String name : CandidateIndex.read(in)) {
+                    // classes not recompiled keep their entry while they still exist
+                    if (!compiled.contains(name)
+                            && processingEnv.getElementUtils().getTypeElement(name.replace('$', '.')) != null) {
+                        candidates.add(name);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // no previous index
+        }
+        if (candidates.isEmpty() && !existed) {
+            return;
+        }
+        try {
+            FileObject index = filer.createResource(StandardLocation.CLASS_OUTPUT, "", CandidateIndex.RESOURCE);
+            try (Writer out = index.openWriter()) {
+                CandidateIndex.write(out, candidates);
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "JDAE: failed to write " + CandidateIndex.RESOURCE + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package dev.relism.jdae.processor;
+
+import dev.relism.jdae.core.index.ExpanderIndex;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Writes {@link ExpanderIndex#RESOURCE} for the annotation types meta-annotated with {@code @Expander}
+ * in the sources being compiled, so that the registry does not need to load them to find their expanders.
+ * Entries of an existing index are kept while their annotation type still declares {@code @Expander},
+ * which keeps the index complete across incremental compilations.
+ */
+@SupportedAnnotationTypes(ExpanderIndexProcessor.EXPANDER)
+public class ExpanderIndexProcessor extends AbstractProcessor {
+    static final String EXPANDER = "dev.relism.jdae.api.annotations.Expander";
+
+    private final Map<String, ExpanderIndex.Entry> entries = new TreeMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeIndex();
+            return false;
+        }
+        for (TypeElement annotation : annotations) {
+            for (Element e : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (e.getKind() == ElementKind.ANNOTATION_TYPE) {
+                    ExpanderIndex.Entry entry = entryFor((TypeElement) e);
+                    if (entry != null) {
+                        entries.put(entry.annotationClassName(), entry);
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private ExpanderIndex.Entry entryFor(TypeElement annotationType) {
+        for (AnnotationMirror mirror : annotationType.getAnnotationMirrors()) {
+            TypeElement type = (TypeElement) mirror.getAnnotationType().asElement();
+            if (!type.getQualifiedName().contentEquals(EXPANDER)) continue;
+
+            TypeMirror expander = null;
+            boolean keepOriginal = true;
+            String id = "";
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> v
+                    : processingEnv.getElementUtils().getElementValuesWithDefaults(mirror).entrySet()) {
+                Object value = v.getValue().getValue();
+                switch (v.getKey().getSimpleName().toString()) {
+                    case "value" -> expander = value instanceof TypeMirror tm ? tm : null;
+                    case "keepOriginal" -> keepOriginal = Boolean.TRUE.equals(value);
+                    case "id" -> id = String.valueOf(value);
+                    default -> {
+                    }
+                }
+            }
+            if (expander == null || expander.getKind() != TypeKind.DECLARED) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        "JDAE: cannot resolve the expander of " + annotationType.getQualifiedName() + ", it is not indexed",
+                        annotationType);
+                return null;
+            }
+            TypeElement expanderType = (TypeElement) ((DeclaredType) expander).asElement();
+            return new ExpanderIndex.Entry(
+                    processingEnv.getElementUtils().getBinaryName(annotationType).toString(),
+                    processingEnv.getElementUtils().getBinaryName(expanderType).toString(),
+                    keepOriginal, id);
+        }
+        return null;
+    }
+
+    private void writeIndex() {
+        Filer filer = processingEnv.getFiler();
+        boolean existed = false;
+        try {
+            FileObject previous = filer.getResource(StandardLocation.CLASS_OUTPUT, "", ExpanderIndex.RESOURCE);
+            try (InputStream in = previous.openInputStream()) {
+                existed = true;
+                for (ExpanderIndex.Entry old : ExpanderIndex.read(in).values()) {
+                    if (entries.containsKey(old.annotationClassName())) continue;
+                    // annotation types not recompiled are resolved from the output directory
+                    TypeElement type = processingEnv.getElementUtils()
+                            .getTypeElement(old.annotationClassName().replace('$', '.'));
+                    ExpanderIndex.Entry current = type != null ? entryFor(type) : null;
+                    if (current != null) {
+                        entries.put(current.annotationClassName(), current);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // no previous index
+        }
+        if (entries.isEmpty() && !existed) {
+            return;
+        }
+        try {
+            FileObject index = filer.createResource(StandardLocation.CLASS_OUTPUT, "", ExpanderIndex.RESOURCE);
+            try (Writer out = index.openWriter()) {
+                ExpanderIndex.write(out, entries.values());
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "JDAE: failed to write " + ExpanderIndex.RESOURCE + ": " + e.getMessage());
+        }
+    }
+}